@@ -0,0 +1,94 @@
+package com.workday.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.utils.AppUtilities;
+import com.workday.http.HttpTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the GitHub and Twitter search payloads into the model classes, and serializing of the summaries.
+ * decodeGitSearchBuffered reads the whole body into a String first, like the app did before the responses were decoded
+ * while they are read (the old AppUtilities.readResponse), for comparison with decodeGitSearch.
+ * With adapters=generated the models go through the hand written adapters of the app (see ModelTypeAdapterFactory),
+ * with adapters=reflective through the reflective adapters of a plain Gson, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"generated", "reflective"})
+    public String adapters;
+
+    private Gson gson;
+    private Gson prettyGson;
+    private GitSearchResultModel summary;
+
+    @Setup
+    public void setup() throws IOException {
+        GsonBuilder builder = "reflective".equals(adapters) ? new GsonBuilder() : AppUtilities.gsonBuilder();
+        gson = builder.create();
+        prettyGson = builder.setPrettyPrinting().create();
+        summary = HttpTransport.decode(new ByteArrayInputStream(Fixtures.GIT_SEARCH), gson, GitSearchResultModel.class);
+        TweetsSearchResultModel tweets = HttpTransport.decode(new ByteArrayInputStream(Fixtures.TWEETS_SEARCH), gson, TweetsSearchResultModel.class);
+        for (GitProjectModel project : summary.getItems()) {
+            project.setTweets(tweets.getTweets());
+        }
+    }
+
+    @Benchmark
+    public GitSearchResultModel decodeGitSearch() throws IOException {
+        return HttpTransport.decode(new ByteArrayInputStream(Fixtures.GIT_SEARCH), gson, GitSearchResultModel.class);
+    }
+
+    @Benchmark
+    public GitSearchResultModel decodeGitSearchBuffered() throws IOException {
+        StringBuilder body = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(Fixtures.GIT_SEARCH), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                body.append(line);
+            }
+        }
+        return gson.fromJson(body.toString(), GitSearchResultModel.class);
+    }
+
+    @Benchmark
+    public TweetsSearchResultModel decodeTweetsSearch() throws IOException {
+        return HttpTransport.decode(new ByteArrayInputStream(Fixtures.TWEETS_SEARCH), gson, TweetsSearchResultModel.class);
+    }
+
+    @Benchmark
+    public String serializeSummary() {
+        return prettyGson.toJson(summary);
+    }
+
+    @Benchmark
+    public String serializeSummaryCompact() {
+        return gson.toJson(summary);
+    }
+}
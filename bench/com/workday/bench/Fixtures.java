@@ -0,0 +1,28 @@
+package com.workday.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * The payloads the benchmarks decode and serve. They are the recorded fixtures of the stub server (see StubUpstreamServer):
+ * a page of 30 repositories from the GitHub search API and a page of 5 statuses with their users from the Twitter search API.
+ */
+final class Fixtures {
+
+    private static final String FIXTURES_DIR = "resources/stub/";
+
+    static final byte[] GIT_SEARCH = read("git-search.json");
+    static final byte[] TWEETS_SEARCH = read("tweets-search.json");
+
+    private Fixtures() {}
+
+    private static byte[] read(String name) {
+        try {
+            return Files.readAllBytes(Paths.get(FIXTURES_DIR + name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
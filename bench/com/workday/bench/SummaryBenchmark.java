@@ -0,0 +1,75 @@
+package com.workday.bench;
+
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.MashupAppException;
+import com.workday.app.SummaryFormat;
+import com.workday.app.utils.AppUtilities;
+import com.workday.stub.StubUpstreamServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end summaries against in-process stub upstreams: the stub server (see StubUpstreamServer) answers the GitHub search,
+ * the Twitter token and the Twitter searches with the recorded fixtures. With cached=false every summary makes its 11 calls, so this measures
+ * the transport, decoding, fan-out and serializing. With cached=true it measures the summary built from the caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SummaryBenchmark {
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private StubUpstreamServer stub;
+    private GitTwitterMashupApp app;
+
+    @Setup
+    public void setup() throws IOException, MashupAppException {
+        Properties properties = AppUtilities.readProperties();
+        stub = new StubUpstreamServer(properties);
+        stub.start(0);
+        properties.setProperty("GITHUB_BASE_URL", stub.getBaseUrl());
+        properties.setProperty("TWITTER_BASE_URL", stub.getBaseUrl());
+        properties.setProperty("TWITTER_TOKEN_CACHE_FILE", "");
+        if (!cached) {
+            properties.setProperty("CACHE_GIT_MAX_ENTRIES", "0");
+            properties.setProperty("CACHE_TWEETS_MAX_ENTRIES", "0");
+        }
+        app = new GitTwitterMashupApp(properties);
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    public String summary() throws MashupAppException {
+        return app.getGitProjectsSummary("reactive");
+    }
+
+    @Benchmark
+    public void summaryNdjson() throws MashupAppException {
+        app.getGitProjectsSummary("reactive", Writer.nullWriter(), SummaryFormat.NDJSON);
+    }
+}
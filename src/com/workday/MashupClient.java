@@ -1,18 +1,74 @@
 package com.workday;
 
+import com.google.gson.Gson;
 import com.workday.app.GitTwitterMashupApp;
 import com.workday.app.MashupAppException;
+import com.workday.app.utils.AppUtilities;
+import com.workday.batch.BatchStats;
+import com.workday.batch.MashupBatchJob;
+import com.workday.load.LoadGenerator;
+import com.workday.load.LoadReport;
+import com.workday.server.MashupServer;
+import com.workday.stub.StubUpstreamServer;
+import com.workday.watch.SummaryWatcher;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 
 /**
  * This is just a client accessing the GitTwitterMashupApp
  * This can be easily replaced by a web client or anyother client.
  *
+ * Usage:
+ *   MashupClient [searchTerm]      prints the summary for the search term ("reactive" by default)
+ *   MashupClient --serve [port]    serves the summaries over HTTP (see MashupServer) on the port (8080 by default)
+ *   MashupClient --batch input|- output.ndjson
+ *                                  summarizes the terms of the input file (or stdin) into the output file (see MashupBatchJob)
+ *   MashupClient --stub [port]     serves the GitHub and Twitter endpoints from recorded fixtures (see StubUpstreamServer) on the port (8090 by default)
+ *   MashupClient --load rate seconds [searchTerm...]
+ *                                  drives the app at rate summaries a second against an in-process stub server and prints the
+ *                                  throughput and latency percentiles (see LoadGenerator). LOAD_USE_STUB=false uses the real APIs
+ *   MashupClient --watch searchTerm...
+ *                                  watches the search terms and prints their changes as NDJSON, one event a line, as they are
+ *                                  found (see SummaryWatcher)
+ *
  * Created by hari.sathappan on 4/3/18.
  */
 public class MashupClient {
 
+    private static final String DEFAULT_SEARCH_TERM = "reactive";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_STUB_PORT = 8090;
+
     public static void main(String[] args) {
-        String searchTerm = "reactive";
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            serve(args);
+            return;
+        }
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            batch(args);
+            return;
+        }
+        if (args.length > 0 && "--stub".equals(args[0])) {
+            stub(args);
+            return;
+        }
+        if (args.length > 0 && "--load".equals(args[0])) {
+            load(args);
+            return;
+        }
+        if (args.length > 0 && "--watch".equals(args[0])) {
+            watch(args);
+            return;
+        }
+        String searchTerm = args.length > 0 ? String.join(" ", args) : DEFAULT_SEARCH_TERM;
         try {
             GitTwitterMashupApp app = new GitTwitterMashupApp();
             String json = app.getGitProjectsSummary(searchTerm);
@@ -21,4 +77,133 @@ public class MashupClient {
             System.out.println(m.getMessage());
         }
     }
+
+    // helper method to run a batch job on the terms of a file or stdin
+    private static void batch(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: MashupClient --batch input|- output.ndjson");
+            return;
+        }
+        GitTwitterMashupApp app = null;
+        try {
+            app = new GitTwitterMashupApp();
+            MashupBatchJob job = new MashupBatchJob(app, AppUtilities.readProperties());
+            Path output = Paths.get(args[2]);
+            BatchStats stats = "-".equals(args[1])
+                    ? job.run(new InputStreamReader(System.in, StandardCharsets.UTF_8), output)
+                    : job.run(Paths.get(args[1]), output);
+            System.out.println(stats);
+        } catch (MashupAppException | IOException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+    }
+
+    // helper method to run the stub server until the JVM is stopped
+    private static void stub(String[] args) {
+        try {
+            StubUpstreamServer stub = new StubUpstreamServer(AppUtilities.readProperties());
+            stub.start(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STUB_PORT);
+            Runtime.getRuntime().addShutdownHook(new Thread(stub::stop, "stub-server-shutdown"));
+            System.out.println("Serving the stub GitHub and Twitter APIs on " + stub.getBaseUrl());
+            // the server threads are daemons, so wait here until the JVM is stopped
+            Thread.currentThread().join();
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid port " + args[1]);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // helper method to run the load generator, against an in-process stub server unless LOAD_USE_STUB is false
+    private static void load(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: MashupClient --load rate seconds [searchTerm...]");
+            return;
+        }
+        Properties properties = AppUtilities.readProperties();
+        StubUpstreamServer stub = null;
+        GitTwitterMashupApp app = null;
+        try {
+            int rate = Integer.parseInt(args[1]);
+            int seconds = Integer.parseInt(args[2]);
+            List<String> terms = args.length > 3 ? Arrays.asList(args).subList(3, args.length) : Collections.singletonList(DEFAULT_SEARCH_TERM);
+            if (Boolean.parseBoolean(properties.getProperty("LOAD_USE_STUB", "true").trim())) {
+                stub = new StubUpstreamServer(properties);
+                stub.start(0);
+                properties.setProperty("GITHUB_BASE_URL", stub.getBaseUrl());
+                properties.setProperty("TWITTER_BASE_URL", stub.getBaseUrl());
+                // the stub token is not worth keeping
+                properties.setProperty("TWITTER_TOKEN_CACHE_FILE", "");
+            }
+            app = new GitTwitterMashupApp(properties);
+            LoadReport report = new LoadGenerator(app).run(terms, rate, seconds, 30);
+            System.out.println(report);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid rate or duration. " + e.getMessage());
+        } catch (MashupAppException | IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (stub != null) {
+                stub.stop();
+            }
+        }
+    }
+
+    // helper method to watch the terms and print their changes until the JVM is stopped
+    private static void watch(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: MashupClient --watch searchTerm...");
+            return;
+        }
+        try {
+            GitTwitterMashupApp app = new GitTwitterMashupApp();
+            SummaryWatcher watcher = new SummaryWatcher(app, AppUtilities.readProperties());
+            Gson gson = AppUtilities.gsonBuilder().create();
+            for (String searchTerm : Arrays.asList(args).subList(1, args.length)) {
+                watcher.subscribe(searchTerm, event -> System.out.println(gson.toJson(event)));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                watcher.close();
+                app.close();
+            }, "mashup-watch-shutdown"));
+            // the watcher threads are daemons, so wait here until the JVM is stopped
+            Thread.currentThread().join();
+        } catch (MashupAppException e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // helper method to run the HTTP server until the JVM is stopped
+    private static void serve(String[] args) {
+        int port = DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid port " + args[1]);
+                return;
+            }
+        }
+        try {
+            MashupServer server = new MashupServer(new GitTwitterMashupApp(), AppUtilities.readProperties());
+            server.start(port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "mashup-server-shutdown"));
+            System.out.println("Serving the mashup on http://localhost:" + server.getPort() + "/summary?q=reactive");
+        } catch (MashupAppException | IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
 }
@@ -1,27 +1,50 @@
 package com.workday.app;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.workday.app.cache.CacheStats;
+import com.workday.app.cache.ResultCache;
+import com.workday.app.cache.SingleFlight;
 import com.workday.app.model.GitProjectModel;
 import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.ModelPool;
 import com.workday.app.model.TweetsModel;
-import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.model.TweetsStatus;
 import com.workday.app.utils.AppUtilities;
 import com.workday.git.GitAPILib;
+import com.workday.http.Deadline;
+import com.workday.http.HttpTransport;
 import com.workday.twitter.TwitterAPILib;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Application which queries Git for projects first
  * and then for each project, searches twitter for tweets based on the project name.
- * We have throttled the number of projects to 10 (which is in the properties file) so we don't hit Twitter API rate limit issues.
+ * The number of projects (10, in the properties file) is a choice of how much to show.
  * The most recent tweets are returned for a max of 5 tweets per project.
  * We can use hash tag project name for more relevant results, but for now just using project name for better results
  * since using # does not have any recent tweets.
+ * The API calls are asynchronous, and their results are cached and shared by the summaries running at the same time.
  *
  * This can easily be hosted on a webapp to be a service.
  * It can also be easily enhanced to return output in XML or any other format apart from Json
@@ -32,22 +55,62 @@ public class GitTwitterMashupApp {
 
     private static final String TWITTER_CONSUMER_KEY = "TWITTER_CONSUMER_KEY";
     private static final String TWITTER_CONSUMER_SECRET = "TWITTER_CONSUMER_SECRET";
+    private static final String TWITTER_TOKEN_CACHE_FILE = "TWITTER_TOKEN_CACHE_FILE";
+    private static final String GITHUB_BASE_URL = "GITHUB_BASE_URL";
+    private static final String TWITTER_BASE_URL = "TWITTER_BASE_URL";
+    private static final String DEFAULT_GITHUB_BASE_URL = "https://api.github.com";
+    private static final String DEFAULT_TWITTER_BASE_URL = "https://api.twitter.com";
     private static final String PROJECT_RESULTS_COUNT = "PROJECT_RESULTS_COUNT";
+    private static final String GIT_SEARCH_SORT = "GIT_SEARCH_SORT";
+    private static final String GIT_SEARCH_ORDER = "GIT_SEARCH_ORDER";
+    private static final String TWEETS_FETCH_PARALLELISM = "TWEETS_FETCH_PARALLELISM";
+    private static final String TWEETS_BATCH_QUERIES = "TWEETS_BATCH_QUERIES";
+    private static final String APP_WORKER_THREADS = "APP_WORKER_THREADS";
+    private static final String SUMMARY_TIME_BUDGET_MS = "SUMMARY_TIME_BUDGET_MS";
+    private static final String CACHE_GIT_MAX_ENTRIES = "CACHE_GIT_MAX_ENTRIES";
+    private static final String CACHE_GIT_TTL_S = "CACHE_GIT_TTL_S";
+    private static final String CACHE_GIT_STALE_S = "CACHE_GIT_STALE_S";
+    private static final String CACHE_TWEETS_MAX_ENTRIES = "CACHE_TWEETS_MAX_ENTRIES";
+    private static final String CACHE_TWEETS_TTL_S = "CACHE_TWEETS_TTL_S";
+    private static final String CACHE_TWEETS_STALE_S = "CACHE_TWEETS_STALE_S";
+    private static final String CACHE_NEGATIVE_TTL_S = "CACHE_NEGATIVE_TTL_S";
+
+    private static Logger log = LogManager.getLogger(GitTwitterMashupApp.class);
 
     private final Gson gson;
     private final Properties properties;
+    private final ExecutorService executor;
+    private final ResultCache<String, List<GitProjectModel>> projectsCache;
+    private final ResultCache<String, List<TweetsModel>> tweetsCache;
+    private final SingleFlight<List<GitProjectModel>> projectsFlight = new SingleFlight<>("git-search");
+    private final SingleFlight<List<TweetsModel>> tweetsFlight = new SingleFlight<>("twitter-search");
+    private final ModelPool projectsPool = new ModelPool();
+    private final ModelPool tweetsPool = new ModelPool();
     private GitAPILib gitLib;
     private TwitterAPILib twitterLib;
 
     public GitTwitterMashupApp() throws MashupAppException {
-        this.properties = AppUtilities.readProperties();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.gitLib = new GitAPILib();
-        try {
-            this.twitterLib = new TwitterAPILib(this.properties.getProperty(TWITTER_CONSUMER_KEY), this.properties.getProperty(TWITTER_CONSUMER_SECRET), this.gson);
-        } catch (IOException e) {
-            throw new MashupAppException("Error creating twitter library", e);
-        }
+        this(AppUtilities.readProperties());
+    }
+
+    /**
+     * Creates the app with the GitHub and Twitter libraries set up from the properties,
+     * including the base urls of the APIs (GITHUB_BASE_URL, TWITTER_BASE_URL), which can point to a stub server
+     * @param properties
+     * @throws MashupAppException
+     */
+    public GitTwitterMashupApp(Properties properties) throws MashupAppException {
+        this.properties = properties;
+        this.gson = AppUtilities.gsonBuilder().setPrettyPrinting().create();
+        HttpTransport transport = new HttpTransport(this.properties);
+        this.gitLib = new GitAPILib(transport, this.gson, this.properties.getProperty(GITHUB_BASE_URL, DEFAULT_GITHUB_BASE_URL).trim());
+        String tokenCacheFile = this.properties.getProperty(TWITTER_TOKEN_CACHE_FILE);
+        this.twitterLib = new TwitterAPILib(this.properties.getProperty(TWITTER_CONSUMER_KEY), this.properties.getProperty(TWITTER_CONSUMER_SECRET), this.gson, transport,
+                tokenCacheFile == null || tokenCacheFile.trim().isEmpty() ? null : Paths.get(tokenCacheFile.trim()),
+                this.properties.getProperty(TWITTER_BASE_URL, DEFAULT_TWITTER_BASE_URL).trim());
+        this.executor = createExecutor(this.properties);
+        this.projectsCache = createCache("git-search", this.properties, CACHE_GIT_MAX_ENTRIES, CACHE_GIT_TTL_S, CACHE_GIT_STALE_S);
+        this.tweetsCache = createCache("twitter-search", this.properties, CACHE_TWEETS_MAX_ENTRIES, CACHE_TWEETS_TTL_S, CACHE_TWEETS_STALE_S);
     }
 
     public GitTwitterMashupApp(GitAPILib gitLib, TwitterAPILib twitterLib, Properties properties, Gson gson) {
@@ -55,6 +118,48 @@ public class GitTwitterMashupApp {
         this.gson = gson;
         this.gitLib = gitLib;
         this.twitterLib = twitterLib;
+        this.executor = createExecutor(properties);
+        this.projectsCache = createCache("git-search", properties, CACHE_GIT_MAX_ENTRIES, CACHE_GIT_TTL_S, CACHE_GIT_STALE_S);
+        this.tweetsCache = createCache("twitter-search", properties, CACHE_TWEETS_MAX_ENTRIES, CACHE_TWEETS_TTL_S, CACHE_TWEETS_STALE_S);
+    }
+
+    /**
+     * Stops the worker threads of the app. The app cannot be used to get summaries after this.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the GitHub search cache
+     * @return
+     */
+    public CacheStats getProjectsCacheStats() {
+        return projectsCache.stats();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the Twitter search cache
+     * @return
+     */
+    public CacheStats getTweetsCacheStats() {
+        return tweetsCache.stats();
+    }
+
+    /**
+     * Returns the coalescing of the GitHub searches, with the number of searches asked for and coalesced
+     * @return
+     */
+    public SingleFlight<List<GitProjectModel>> getProjectsFlight() {
+        return projectsFlight;
+    }
+
+    /**
+     * Returns the coalescing of the Twitter searches, with the number of searches asked for and coalesced
+     * @return
+     */
+    public SingleFlight<List<TweetsModel>> getTweetsFlight() {
+        return tweetsFlight;
     }
 
     /**
@@ -64,44 +169,404 @@ public class GitTwitterMashupApp {
      * @throws MashupAppException
      */
     public String getGitProjectsSummary(String searchTerm) throws MashupAppException {
+        return getGitProjectsSummary(searchTerm, newDeadline());
+    }
+
+    /**
+     * Returns a summary of the projects from GitHub and their tweets, with what is fetched before the deadline
+     * (see getGitProjectsSummaryAsync(String, Deadline))
+     * @param searchTerm
+     * @param deadline
+     * @return
+     * @throws MashupAppException
+     */
+    public String getGitProjectsSummary(String searchTerm, Deadline deadline) throws MashupAppException {
+        CompletableFuture<String> summary = getGitProjectsSummaryAsync(searchTerm, deadline);
+        try {
+            return summary.get();
+        } catch (InterruptedException e) {
+            summary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new MashupAppException("Interrupted while getting the projects summary", e);
+        } catch (ExecutionException e) {
+            throw asMashupAppException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns a summary of the projects from GitHub and their tweets (5 or less most recent tweets) based on project name
+     * without blocking the calling thread, within the time budget of the properties file (SUMMARY_TIME_BUDGET_MS)
+     * @param searchTerm
+     * @return a future with the summary json. It completes exceptionally with a MashupAppException on errors
+     */
+    public CompletableFuture<String> getGitProjectsSummaryAsync(String searchTerm) {
+        return getGitProjectsSummaryAsync(searchTerm, newDeadline());
+    }
+
+    /**
+     * Returns a summary of the projects from GitHub and their tweets without blocking the calling thread, with what is fetched
+     * before the deadline. The projects whose tweets did not arrive in time are marked TIMED_OUT.
+     * The projects keep their GitHub ranking order, and a failed lookup for one project only leaves that project without
+     * tweets, marked as unavailable. Only a GitHub search that fails or does not finish in time fails the summary.
+     * The tweet lookups are fanned out with at most TWEETS_FETCH_PARALLELISM in flight, or searched several projects per
+     * OR query with TWEETS_BATCH_QUERIES, and the summary is built on the small APP_WORKER_THREADS pool.
+     * The summary is timed (see SummaryTimer) and logged with the correlation id in the log context of the caller, or a new one
+     * (see AppUtilities.REQUEST_ID).
+     * @param searchTerm
+     * @param deadline
+     * @return a future with the summary json. It completes exceptionally with a MashupAppException on errors,
+     * or if the GitHub search does not finish before the deadline
+     */
+    public CompletableFuture<String> getGitProjectsSummaryAsync(String searchTerm, Deadline deadline) {
         if (searchTerm == null || searchTerm.length() == 0) {
-            throw new MashupAppException("Search term cannot be null or empty. Please try again with a valid search term");
+            return CompletableFuture.failedFuture(new MashupAppException("Search term cannot be null or empty. Please try again with a valid search term"));
         }
 
+        String requestId = AppUtilities.currentRequestId();
+        SummaryTimer timer = new SummaryTimer(searchTerm, requestId);
+        CompletableFuture<String> summary = AppUtilities.withRequestId(requestId, () -> getProjects(searchTerm, deadline))
+                .thenCompose(projectsList -> AppUtilities.withRequestId(requestId, () -> {
+                    timer.projectsFetched();
+                    return CompletableFuture.allOf(fetchTweetsForProjects(projectsList, deadline, requestId).toArray(new CompletableFuture<?>[0]))
+                            .thenApplyAsync(ignored -> {
+                                timer.tweetsFetched();
+                                long start = System.nanoTime();
+                                GitSearchResultModel searchResultModel = new GitSearchResultModel();
+                                searchResultModel.setItems(projectsList);
+                                String json = gson.toJson(searchResultModel);
+                                timer.serialized(System.nanoTime() - start);
+                                return json;
+                            }, executor);
+                }));
+        summary.whenComplete(timer::finish);
+        return withMashupAppException(summary);
+    }
+
+    /**
+     * Writes a summary of the projects from GitHub and their tweets to the output stream, as UTF-8.
+     * Each project is written as soon as its tweets are resolved (see getGitProjectsSummaryAsync(String, Appendable, SummaryFormat)).
+     * The output stream is flushed but not closed.
+     * @param searchTerm
+     * @param out
+     * @param format
+     * @throws MashupAppException
+     */
+    public void getGitProjectsSummary(String searchTerm, OutputStream out, SummaryFormat format) throws MashupAppException {
+        getGitProjectsSummary(searchTerm, out, format, newDeadline());
+    }
+
+    /**
+     * Writes a summary of the projects from GitHub and their tweets to the output stream, as UTF-8, with what is fetched
+     * before the deadline (see getGitProjectsSummaryAsync(String, Appendable, SummaryFormat, Deadline)).
+     * The output stream is flushed but not closed.
+     * @param searchTerm
+     * @param out
+     * @param format
+     * @param deadline
+     * @throws MashupAppException
+     */
+    public void getGitProjectsSummary(String searchTerm, OutputStream out, SummaryFormat format, Deadline deadline) throws MashupAppException {
+        getGitProjectsSummary(searchTerm, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), format, deadline);
+    }
+
+    /**
+     * Writes a summary of the projects from GitHub and their tweets to the output.
+     * Each project is written as soon as its tweets are resolved (see getGitProjectsSummaryAsync(String, Appendable, SummaryFormat)).
+     * @param searchTerm
+     * @param out
+     * @param format
+     * @throws MashupAppException
+     */
+    public void getGitProjectsSummary(String searchTerm, Appendable out, SummaryFormat format) throws MashupAppException {
+        getGitProjectsSummary(searchTerm, out, format, newDeadline());
+    }
+
+    /**
+     * Writes a summary of the projects from GitHub and their tweets to the output, with what is fetched before the deadline
+     * (see getGitProjectsSummaryAsync(String, Appendable, SummaryFormat, Deadline)).
+     * @param searchTerm
+     * @param out
+     * @param format
+     * @param deadline
+     * @throws MashupAppException
+     */
+    public void getGitProjectsSummary(String searchTerm, Appendable out, SummaryFormat format, Deadline deadline) throws MashupAppException {
+        CompletableFuture<Void> summary = getGitProjectsSummaryAsync(searchTerm, out, format, deadline);
         try {
-            List<GitProjectModel> projectsList = getProjects(searchTerm);
-            fetchTweetsForProjects(projectsList);
-            GitSearchResultModel searchResultModel = new GitSearchResultModel();
-            searchResultModel.setItems(projectsList);
-            return gson.toJson(searchResultModel);
-        } catch (IOException e) {
-            throw new MashupAppException("Error calling API end point. " + e.getMessage(), e);
+            summary.get();
+        } catch (InterruptedException e) {
+            summary.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new MashupAppException("Interrupted while writing the projects summary", e);
+        } catch (ExecutionException e) {
+            throw asMashupAppException(e.getCause());
         }
     }
 
-    // helper method to get projects from GitHub
-    private List<GitProjectModel> getProjects(String searchTerm) throws IOException {
-        String projectsJson = gitLib.search(searchTerm);
+    /**
+     * Writes a summary of the projects from GitHub and their tweets to the output, in compact JSON or NDJSON,
+     * without building the whole summary first. The projects are written in ranking order by the worker pool,
+     * each one as soon as its tweets and the tweets of the projects ranked above it are resolved, and flushed.
+     * Nothing is written if the GitHub search fails. If writing to the output fails, the output is left incomplete.
+     * @param searchTerm
+     * @param out
+     * @param format
+     * @return a future that completes once the summary is written. It completes exceptionally with a MashupAppException on errors
+     */
+    public CompletableFuture<Void> getGitProjectsSummaryAsync(String searchTerm, Appendable out, SummaryFormat format) {
+        return getGitProjectsSummaryAsync(searchTerm, out, format, newDeadline());
+    }
 
-        GitSearchResultModel searchResults = gson.fromJson(projectsJson, GitSearchResultModel.class);
-        List<GitProjectModel> projectsList = searchResults.getItems();
-        if (projectsList == null || projectsList.isEmpty()) {
-            return Collections.EMPTY_LIST;
+    /**
+     * Writes a summary of the projects from GitHub and their tweets to the output like
+     * getGitProjectsSummaryAsync(String, Appendable, SummaryFormat), with what is fetched before the deadline.
+     * Once the deadline is reached the projects still waiting for their tweets are written right away, marked TIMED_OUT.
+     * @param searchTerm
+     * @param out
+     * @param format
+     * @param deadline
+     * @return a future that completes once the summary is written. It completes exceptionally with a MashupAppException on errors,
+     * or if the GitHub search does not finish before the deadline
+     */
+    public CompletableFuture<Void> getGitProjectsSummaryAsync(String searchTerm, Appendable out, SummaryFormat format, Deadline deadline) {
+        if (searchTerm == null || searchTerm.length() == 0) {
+            return CompletableFuture.failedFuture(new MashupAppException("Search term cannot be null or empty. Please try again with a valid search term"));
         }
-        return projectsList.subList(0, Math.min(Integer.valueOf(this.properties.getProperty(PROJECT_RESULTS_COUNT)), projectsList.size()));
+        SummaryWriter writer = new SummaryWriter(gson, out, format);
+        String requestId = AppUtilities.currentRequestId();
+        SummaryTimer timer = new SummaryTimer(searchTerm, requestId);
+
+        CompletableFuture<List<GitProjectModel>> projects = AppUtilities.withRequestId(requestId, () -> getProjects(searchTerm, deadline));
+        CompletableFuture<Void> summary = projects.thenCompose(projectsList -> AppUtilities.withRequestId(requestId, () -> {
+            timer.projectsFetched();
+            List<CompletableFuture<GitProjectModel>> resolved = fetchTweetsForProjects(projectsList, deadline, requestId);
+            CompletableFuture.allOf(resolved.toArray(new CompletableFuture<?>[0])).thenRun(timer::tweetsFetched);
+            CompletableFuture<Void> written = CompletableFuture.runAsync(() -> write(timer, writer::begin), executor);
+            for (CompletableFuture<GitProjectModel> project : resolved) {
+                written = written.thenCombineAsync(project, (ignored, resolvedProject) -> {
+                    write(timer, () -> writer.write(resolvedProject));
+                    return null;
+                }, executor);
+            }
+            return written.thenRunAsync(() -> write(timer, writer::end), executor);
+        }));
+        summary.whenComplete(timer::finish);
+        return withMashupAppException(summary);
     }
 
-    // helper method to get tweets from Twitter
-    private void fetchTweetsForProjects(List<GitProjectModel> projectsList) throws IOException {
+    /**
+     * Returns the projects from GitHub for the search term, without their tweets. The projects are copies the caller can change.
+     * @param searchTerm
+     * @return a future with the projects in ranking order. It completes exceptionally with a MashupAppException on errors
+     */
+    public CompletableFuture<List<GitProjectModel>> getProjectsAsync(String searchTerm) {
+        if (searchTerm == null || searchTerm.length() == 0) {
+            return CompletableFuture.failedFuture(new MashupAppException("Search term cannot be null or empty. Please try again with a valid search term"));
+        }
+        return withMashupAppException(AppUtilities.withRequestId(AppUtilities.currentRequestId(), () -> getProjects(searchTerm, Deadline.none())));
+    }
+
+    /**
+     * Returns the most recent tweets (5 or less) for the project name, through the same cache and coalescing as the summaries
+     * @param projectName
+     * @return a future with the tweets. It completes exceptionally with a MashupAppException on errors
+     */
+    public CompletableFuture<List<TweetsModel>> getTweetsAsync(String projectName) {
+        return withMashupAppException(AppUtilities.withRequestId(AppUtilities.currentRequestId(), () -> getTweets(projectName)));
+    }
+
+    /**
+     * Returns the tweets for the project name that are newer than the given status id, straight from Twitter.
+     * The since_id differs per caller, so the search is not cached or coalesced with the other lookups.
+     * @param projectName
+     * @param sinceId the id of the most recent tweet the caller has, or 0 for the most recent tweets
+     * @return a future with the new tweets (5 or less), most recent first. It completes exceptionally with a MashupAppException on errors
+     */
+    public CompletableFuture<List<TweetsModel>> getNewTweetsAsync(String projectName, long sinceId) {
+        return withMashupAppException(AppUtilities.withRequestId(AppUtilities.currentRequestId(), () -> twitterLib.searchTweetsSinceAsync(projectName, sinceId, Deadline.none())
+                .thenApply(searchResults -> tweetsPool.compactTweets(searchResults == null ? null : searchResults.getTweets()))));
+    }
+
+    // helper method to get projects from GitHub. The results are cached by search term (see ResultCache) and concurrent
+    // identical searches share one call (see SingleFlight). The projects are read out of the compact cached list (see ModelPool),
+    // which gives new projects, since the summary sets their tweets. The search is shared by the callers and cached, so it is held to the
+    // time budget of the properties file rather than to the deadline of the caller that started it, and each caller only
+    // waits for it until its own deadline.
+    private CompletableFuture<List<GitProjectModel>> getProjects(String searchTerm, Deadline deadline) {
+        CompletableFuture<List<GitProjectModel>> projects = projectsCache.get(SingleFlight.normalize(searchTerm),
+                key -> projectsFlight.execute(searchTerm, term -> searchProjects(term, newDeadline())));
+        return deadline.bound(projects, "GitHub search for " + searchTerm).thenApply(cachedProjects -> {
+            int count = Math.min(Integer.valueOf(this.properties.getProperty(PROJECT_RESULTS_COUNT)), cachedProjects.size());
+            return new ArrayList<>(cachedProjects.subList(0, count));
+        });
+    }
+
+    // one page of the default size is a single conditional request. More projects, or a GIT_SEARCH_SORT/GIT_SEARCH_ORDER, need
+    // the paginated search, which fetches the pages in parallel, paced by the GitHub rate limit (see RateLimiter).
+    private CompletableFuture<List<GitProjectModel>> searchProjects(String searchTerm, Deadline deadline) {
+        int count = AppUtilities.getIntProperty(this.properties, PROJECT_RESULTS_COUNT, GitAPILib.DEFAULT_PER_PAGE);
+        String sort = this.properties.getProperty(GIT_SEARCH_SORT, "").trim();
+        String order = this.properties.getProperty(GIT_SEARCH_ORDER, "").trim();
+        if (count > GitAPILib.DEFAULT_PER_PAGE || !sort.isEmpty() || !order.isEmpty()) {
+            return gitLib.searchProjectsAsync(searchTerm, sort, order, count, null, deadline).thenApply(projectsPool::compactProjects);
+        }
+        return gitLib.searchResultAsync(searchTerm, deadline)
+                .thenApply(searchResults -> projectsPool.compactProjects(searchResults == null ? null : searchResults.getItems()));
+    }
+
+    // helper method to get tweets from Twitter, with at most TWEETS_FETCH_PARALLELISM lookups in flight.
+    // Each lane picks the next project in ranking order once its previous lookup is done.
+    // Returns a future per project, in ranking order, that completes once the tweets of that project are resolved.
+    private List<CompletableFuture<GitProjectModel>> fetchTweetsForProjects(List<GitProjectModel> projectsList, Deadline deadline, String requestId) {
+        if (Boolean.parseBoolean(this.properties.getProperty(TWEETS_BATCH_QUERIES, "false").trim())) {
+            return fetchTweetsInBatch(projectsList, deadline, requestId);
+        }
+        int parallelism = Math.max(1, AppUtilities.getIntProperty(this.properties, TWEETS_FETCH_PARALLELISM, 1));
+        List<CompletableFuture<GitProjectModel>> resolved = new ArrayList<>(projectsList.size());
+        for (int i = 0; i < projectsList.size(); i++) {
+            resolved.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        int lanes = Math.min(parallelism, projectsList.size());
+        for (int i = 0; i < lanes; i++) {
+            fetchTweetsForNextProject(projectsList, resolved, next, deadline, requestId);
+        }
+        return resolved;
+    }
+
+    private CompletableFuture<Void> fetchTweetsForNextProject(List<GitProjectModel> projectsList, List<CompletableFuture<GitProjectModel>> resolved,
+                                                              AtomicInteger next, Deadline deadline, String requestId) {
+        int index = next.getAndIncrement();
+        if (index >= projectsList.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        GitProjectModel project = projectsList.get(index);
+        return fetchTweetsForProject(project, deadline, requestId).thenCompose(ignored -> AppUtilities.withRequestId(requestId, () -> {
+            resolved.get(index).complete(project);
+            return fetchTweetsForNextProject(projectsList, resolved, next, deadline, requestId);
+        }));
+    }
+
+    // helper method to get tweets from Twitter with batched OR queries (see TwitterAPILib.searchTweetsBatchAsync).
+    // The names that are not cached or already being searched are collected while the projects ask for their tweets,
+    // and searched together once all the projects have asked.
+    private List<CompletableFuture<GitProjectModel>> fetchTweetsInBatch(List<GitProjectModel> projectsList, Deadline deadline, String requestId) {
+        Map<String, CompletableFuture<List<TweetsModel>>> pending = new LinkedHashMap<>();
+        List<CompletableFuture<GitProjectModel>> resolved = new ArrayList<>(projectsList.size());
         for (GitProjectModel project : projectsList) {
-            String tweetsJson = twitterLib.searchTweets(project.getName());
-            TweetsSearchResultModel searchResults = gson.fromJson(tweetsJson, TweetsSearchResultModel.class);
-            List<TweetsModel> tweets = searchResults.getTweets();
-            if (tweets == null || tweets.isEmpty()) {
-                project.setTweets(Collections.EMPTY_LIST);
+            CompletableFuture<List<TweetsModel>> tweets = tweetsCache.get(SingleFlight.normalize(project.getName()),
+                    key -> tweetsFlight.execute(project.getName(), name -> pending.computeIfAbsent(name, ignored -> new CompletableFuture<>())));
+            resolved.add(setTweets(project, deadline.bound(tweets, "Tweets of " + project.getName()), requestId).thenApply(ignored -> project));
+        }
+        if (!pending.isEmpty()) {
+            Map<String, CompletableFuture<List<TweetsModel>>> searched = twitterLib.searchTweetsBatchAsync(pending.keySet(), newDeadline());
+            pending.forEach((name, tweets) -> searched.get(name).whenComplete((value, e) -> {
+                if (e != null) {
+                    tweets.completeExceptionally(e);
+                } else {
+                    tweets.complete(tweetsPool.compactTweets(value));
+                }
+            }));
+        }
+        return resolved;
+    }
+
+    // fetches the tweets for a single project, waiting for them until the deadline
+    private CompletableFuture<Void> fetchTweetsForProject(GitProjectModel project, Deadline deadline, String requestId) {
+        return setTweets(project, deadline.bound(getTweets(project.getName()), "Tweets of " + project.getName()), requestId);
+    }
+
+    // sets the tweets of the project once they are resolved. A failed lookup (or an open Twitter circuit) leaves the project
+    // with no tweets, marked as unavailable, or as timed out if the deadline of the summary was reached first.
+    private static CompletableFuture<Void> setTweets(GitProjectModel project, CompletableFuture<List<TweetsModel>> projectTweets, String requestId) {
+        return projectTweets.handle((tweets, e) -> AppUtilities.withRequestId(requestId, () -> {
+            if (e != null && AppUtilities.unwrap(e) instanceof Deadline.DeadlineExceededException) {
+                log.warn("**Tweets not fetched before the deadline for project** {}", project.getName());
+                project.setTweets(Collections.emptyList());
+                project.setTweetsStatus(TweetsStatus.TIMED_OUT);
+                return null;
+            }
+            if (e != null) {
+                log.warn("**Error fetching tweets for project** {} {}", project.getName(), AppUtilities.unwrap(e).getMessage());
+                project.setTweets(Collections.emptyList());
+                project.setTweetsStatus(TweetsStatus.UNAVAILABLE);
+                return null;
             }
             project.setTweets(tweets);
+            return null;
+        }));
+    }
+
+    // the lookup is shared and cached like the GitHub search, so it is held to the time budget of the properties file too
+    private CompletableFuture<List<TweetsModel>> getTweets(String projectName) {
+        return tweetsCache.get(SingleFlight.normalize(projectName), key -> tweetsFlight.execute(projectName, name -> searchTweets(name, newDeadline())));
+    }
+
+    private CompletableFuture<List<TweetsModel>> searchTweets(String projectName, Deadline deadline) {
+        return twitterLib.searchTweetsResultAsync(projectName, deadline)
+                .thenApply(searchResults -> tweetsPool.compactTweets(searchResults == null ? null : searchResults.getTweets()));
+    }
+
+    // helper method to run a write of the summary writer inside a future, timed as serialization of the summary
+    private static void write(SummaryTimer timer, WriteAction action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new CompletionException(new MashupAppException("Error writing the projects summary. " + e.getMessage(), e));
+        } finally {
+            timer.serialized(System.nanoTime() - start);
+        }
+    }
+
+    private interface WriteAction {
+        void run() throws IOException;
+    }
+
+    // completes the returned future like the summary future, with its failure converted into a MashupAppException
+    private static <T> CompletableFuture<T> withMashupAppException(CompletableFuture<T> summary) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        summary.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(asMashupAppException(e));
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    // converts the failure of a summary future into the MashupAppException reported to the callers
+    private static MashupAppException asMashupAppException(Throwable throwable) {
+        Throwable cause = AppUtilities.unwrap(throwable);
+        if (cause instanceof MashupAppException) {
+            return (MashupAppException) cause;
         }
+        return new MashupAppException("Error calling API end point. " + cause.getMessage(), cause);
+    }
+
+    // the deadline of a summary the caller gave no deadline for, and of the calls shared by the summaries,
+    // from the time budget in the properties file
+    private Deadline newDeadline() {
+        return Deadline.after(AppUtilities.getIntProperty(this.properties, SUMMARY_TIME_BUDGET_MS, 0));
+    }
+
+    // creates the worker pool used to build and serialize the summaries
+    private static ExecutorService createExecutor(Properties properties) {
+        int threads = Math.max(1, AppUtilities.getIntProperty(properties, APP_WORKER_THREADS, 2));
+        return Executors.newFixedThreadPool(threads, AppUtilities.daemonThreadFactory("mashup-worker"));
+    }
+
+    // creates a result cache with the size and ttls from the properties file. Empty results and failures share the negative ttl.
+    private static <V> ResultCache<String, List<V>> createCache(String name, Properties properties, String maxEntriesKey, String ttlKey, String staleKey) {
+        return new ResultCache<>(name,
+                AppUtilities.getIntProperty(properties, maxEntriesKey, 0),
+                AppUtilities.getIntProperty(properties, ttlKey, 0) * 1000L,
+                AppUtilities.getIntProperty(properties, staleKey, 0) * 1000L,
+                AppUtilities.getIntProperty(properties, CACHE_NEGATIVE_TTL_S, 0) * 1000L,
+                List::isEmpty,
+                failure -> !(AppUtilities.unwrap(failure) instanceof Deadline.DeadlineExceededException),
+                Clock.systemUTC());
     }
 
 }
@@ -0,0 +1,11 @@
+package com.workday.app;
+
+/**
+ * The formats the summaries can be written in, one project at a time.
+ * JSON is the same document as the summary String, {"items":[...]}, without the pretty printing.
+ * NDJSON is one project per line, so a reader can use each line as soon as it is written.
+ */
+public enum SummaryFormat {
+    JSON,
+    NDJSON
+}
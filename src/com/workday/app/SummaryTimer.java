@@ -0,0 +1,92 @@
+package com.workday.app;
+
+import com.workday.metrics.LatencyHistogram;
+import com.workday.app.utils.AppUtilities;
+import com.workday.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing breakdown of one summary: the GitHub search, the tweet lookups of its projects, the serialization and the total.
+ * The stages are recorded in the summary latency histograms of the MetricsRegistry once the summary is done, and logged
+ * for the summary at debug level. The stages overlap when the summary is streamed, since the projects are written
+ * while the tweets of the projects ranked below them are still being fetched.
+ */
+class SummaryTimer {
+
+    static final String GIT = "git";
+    static final String TWEETS = "tweets";
+    static final String SERIALIZE = "serialize";
+    static final String TOTAL = "total";
+
+    private static Logger log = LogManager.getLogger(SummaryTimer.class);
+
+    private static final LatencyHistogram gitLatency = MetricsRegistry.shared().summaryStage(GIT);
+    private static final LatencyHistogram tweetsLatency = MetricsRegistry.shared().summaryStage(TWEETS);
+    private static final LatencyHistogram serializeLatency = MetricsRegistry.shared().summaryStage(SERIALIZE);
+    private static final LatencyHistogram totalLatency = MetricsRegistry.shared().summaryStage(TOTAL);
+
+    private final String searchTerm;
+    private final String requestId;
+    // the stages are kept as the time since the start, which unlike nanoTime itself is never negative
+    private static final long NOT_REACHED = -1;
+
+    private final long startedAt = System.nanoTime();
+    private final AtomicLong projectsFetchedAfter = new AtomicLong(NOT_REACHED);
+    private final AtomicLong tweetsFetchedAfter = new AtomicLong(NOT_REACHED);
+    private final AtomicLong serializeNanos = new AtomicLong();
+
+    SummaryTimer(String searchTerm, String requestId) {
+        this.searchTerm = searchTerm;
+        this.requestId = requestId;
+    }
+
+    void projectsFetched() {
+        projectsFetchedAfter.compareAndSet(NOT_REACHED, System.nanoTime() - startedAt);
+    }
+
+    void tweetsFetched() {
+        tweetsFetchedAfter.compareAndSet(NOT_REACHED, System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Adds the time spent serializing a part of the summary
+     * @param nanos
+     */
+    void serialized(long nanos) {
+        serializeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records the stages of the summary that were reached, once it is done
+     * @param value
+     * @param failure the failure of the summary, or null
+     */
+    void finish(Object value, Throwable failure) {
+        long totalNanos = System.nanoTime() - startedAt;
+        long projectsAfter = projectsFetchedAfter.get();
+        long tweetsAfter = tweetsFetchedAfter.get();
+        if (projectsAfter != NOT_REACHED) {
+            gitLatency.recordNanos(projectsAfter);
+            if (tweetsAfter != NOT_REACHED) {
+                tweetsLatency.recordNanos(tweetsAfter - projectsAfter);
+            }
+        }
+        if (failure == null) {
+            serializeLatency.recordNanos(serializeNanos.get());
+        }
+        totalLatency.recordNanos(totalNanos);
+        if (log.isDebugEnabled()) {
+            AppUtilities.runWithRequestId(requestId, () -> log.debug("{} **Summary timings** git={}ms tweets={}ms serialize={}ms total={}ms{}",
+                    searchTerm, millis(0, projectsAfter), millis(projectsAfter, tweetsAfter), serializeNanos.get() / 1000000,
+                    totalNanos / 1000000, failure == null ? "" : " failed"));
+        }
+    }
+
+    // helper method
+    private static String millis(long from, long to) {
+        return from == NOT_REACHED || to == NOT_REACHED ? "-" : String.valueOf((to - from) / 1000000);
+    }
+}
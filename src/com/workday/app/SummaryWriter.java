@@ -0,0 +1,106 @@
+package com.workday.app;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.workday.app.model.GitProjectModel;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writes a summary one project at a time, in compact JSON or NDJSON (see SummaryFormat).
+ * Every project is flushed once it is written, so the reader gets it without waiting for the rest of the summary.
+ * The writer does not close the output, which belongs to the caller.
+ */
+class SummaryWriter {
+
+    private final Gson gson;
+    private final SummaryFormat format;
+    private final Writer out;
+    private JsonWriter jsonWriter;
+
+    SummaryWriter(Gson gson, Appendable out, SummaryFormat format) {
+        this.gson = gson;
+        this.format = format;
+        this.out = out instanceof Writer ? (Writer) out : new AppendableWriter(out);
+    }
+
+    /**
+     * Writes the start of the summary, before the first project
+     * @throws IOException
+     */
+    void begin() throws IOException {
+        if (format == SummaryFormat.JSON) {
+            jsonWriter = new JsonWriter(out);
+            jsonWriter.beginObject();
+            jsonWriter.name("items");
+            jsonWriter.beginArray();
+        }
+    }
+
+    /**
+     * Writes a project and flushes it to the output
+     * @param project
+     * @throws IOException
+     */
+    void write(GitProjectModel project) throws IOException {
+        if (format == SummaryFormat.JSON) {
+            gson.toJson(project, GitProjectModel.class, jsonWriter);
+        } else {
+            // a new writer for every line, since a json writer only takes one top level value
+            gson.toJson(project, GitProjectModel.class, new JsonWriter(out));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the end of the summary, after the last project
+     * @throws IOException
+     */
+    void end() throws IOException {
+        if (format == SummaryFormat.JSON) {
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+        }
+        out.flush();
+    }
+
+    // helper class to write to an Appendable that is not a Writer, like a StringBuilder
+    private static class AppendableWriter extends Writer {
+
+        private final Appendable appendable;
+
+        AppendableWriter(Appendable appendable) {
+            this.appendable = appendable;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            appendable.append(CharBuffer.wrap(chars, offset, length));
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            appendable.append((char) c);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) throws IOException {
+            appendable.append(str, offset, offset + length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (appendable instanceof Flushable) {
+                ((Flushable) appendable).flush();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.workday.app.cache;
+
+/**
+ * Snapshot of the counts of a ResultCache, used to tune the cache sizes and ttls.
+ */
+public class CacheStats {
+
+    private final String name;
+    private final int size;
+    private final long hits;
+    private final long staleHits;
+    private final long negativeHits;
+    private final long misses;
+    private final long evictions;
+    private final long loadFailures;
+
+    public CacheStats(String name, int size, long hits, long staleHits, long negativeHits, long misses, long evictions, long loadFailures) {
+        this.name = name;
+        this.size = size;
+        this.hits = hits;
+        this.staleHits = staleHits;
+        this.negativeHits = negativeHits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.loadFailures = loadFailures;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getStaleHits() {
+        return staleHits;
+    }
+
+    public long getNegativeHits() {
+        return negativeHits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+
+    /**
+     * Returns the share of the lookups served from the cache, fresh, stale or negative
+     * @return
+     */
+    public double getHitRate() {
+        long served = hits + staleHits + negativeHits;
+        long total = served + misses;
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": size=" + size + " hits=" + hits + " staleHits=" + staleHits + " negativeHits=" + negativeHits
+                + " misses=" + misses + " evictions=" + evictions + " loadFailures=" + loadFailures;
+    }
+}
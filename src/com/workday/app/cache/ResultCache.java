@@ -0,0 +1,196 @@
+package com.workday.app.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-memory cache for the results of the API calls, evicting the least recently used entry when it is full.
+ * An entry is fresh for the ttl. After that it is still served for the stale window while it is refreshed in the background
+ * (stale-while-revalidate), so hot keys never wait on the API. Empty results and failed lookups are kept as negative entries
+ * for a shorter ttl, so a failing or empty key is not looked up again on every call. Failures that only tell about the
+ * caller (like a lookup that ran out of its time budget) can be left out of the cache.
+ */
+public class ResultCache<K, V> {
+
+    private static Logger log = LogManager.getLogger(ResultCache.class);
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final long staleMs;
+    private final long negativeTtlMs;
+    private final Predicate<V> isEmpty;
+    private final Predicate<Throwable> keepFailure;
+    private final Clock clock;
+    private final Map<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+
+    /**
+     * @param name name of the cache used in the logs and stats
+     * @param maxEntries the max number of entries, 0 disables the cache
+     * @param ttlMs how long an entry is fresh
+     * @param staleMs how long after the ttl an entry is still served while it is refreshed
+     * @param negativeTtlMs how long an empty result or a failure is kept
+     * @param isEmpty tells if a value is an empty result
+     * @param clock
+     */
+    public ResultCache(String name, int maxEntries, long ttlMs, long staleMs, long negativeTtlMs, Predicate<V> isEmpty, Clock clock) {
+        this(name, maxEntries, ttlMs, staleMs, negativeTtlMs, isEmpty, failure -> true, clock);
+    }
+
+    /**
+     * @param name name of the cache used in the logs and stats
+     * @param maxEntries the max number of entries, 0 disables the cache
+     * @param ttlMs how long an entry is fresh
+     * @param staleMs how long after the ttl an entry is still served while it is refreshed
+     * @param negativeTtlMs how long an empty result or a failure is kept
+     * @param isEmpty tells if a value is an empty result
+     * @param keepFailure tells if a failed lookup is kept as a negative entry
+     * @param clock
+     */
+    public ResultCache(String name, int maxEntries, long ttlMs, long staleMs, long negativeTtlMs, Predicate<V> isEmpty,
+                       Predicate<Throwable> keepFailure, Clock clock) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.staleMs = staleMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.isEmpty = isEmpty;
+        this.keepFailure = keepFailure;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key, or loads it with the loader if it is missing or expired.
+     * A stale value is returned right away and refreshed in the background.
+     * @param key
+     * @param loader
+     * @return
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        if (maxEntries <= 0) {
+            return loader.apply(key);
+        }
+
+        long now = clock.millis();
+        Entry<V> entry;
+        boolean refresh = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && now >= entry.staleUntil) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null && now >= entry.freshUntil && !entry.refreshing) {
+                entry.refreshing = true;
+                refresh = true;
+            }
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return load(key, loader, null);
+        }
+        if (entry.failure != null || isEmpty.test(entry.value)) {
+            negativeHits.increment();
+        } else if (now >= entry.freshUntil) {
+            staleHits.increment();
+        } else {
+            hits.increment();
+        }
+        if (refresh) {
+            log.debug("{} **refreshing stale entry** {}", name, key);
+            load(key, loader, entry);
+        }
+        return entry.failure != null ? CompletableFuture.failedFuture(entry.failure) : CompletableFuture.completedFuture(entry.value);
+    }
+
+    // loads the value and stores it. A failed refresh keeps serving the stale entry it was refreshing until it runs out.
+    private CompletableFuture<V> load(K key, Function<K, CompletableFuture<V>> loader, Entry<V> stale) {
+        return loader.apply(key).whenComplete((value, e) -> {
+            long now = clock.millis();
+            Entry<V> entry;
+            if (e != null && stale != null) {
+                loadFailures.increment();
+                log.warn("{} **failed to refresh stale entry** {} {}", name, key, e.getMessage());
+                synchronized (entries) {
+                    stale.refreshing = false;
+                }
+                return;
+            } else if (e != null) {
+                loadFailures.increment();
+                if (!keepFailure.test(e)) {
+                    return;
+                }
+                entry = new Entry<>(null, e, now + negativeTtlMs, now + negativeTtlMs);
+            } else if (value == null || isEmpty.test(value)) {
+                entry = new Entry<>(value, null, now + negativeTtlMs, now + negativeTtlMs);
+            } else {
+                entry = new Entry<>(value, null, now + ttlMs, now + ttlMs + staleMs);
+            }
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        });
+    }
+
+    /**
+     * Removes all the entries of the cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counts of the cache
+     * @return
+     */
+    public CacheStats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(name, size, hits.sum(), staleHits.sum(), negativeHits.sum(), misses.sum(), evictions.sum(), loadFailures.sum());
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final Throwable failure;
+        private final long freshUntil;
+        private final long staleUntil;
+        private boolean refreshing;
+
+        private Entry(V value, Throwable failure, long freshUntil, long staleUntil) {
+            this.value = value;
+            this.failure = failure;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.workday.app.cache;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent identical calls to an API end point.
+ * While a call for a search term is in flight, other callers for the same (normalized) term get the result of
+ * that call instead of making their own. The term is trimmed and lower cased, since both search APIs ignore the case.
+ */
+public class SingleFlight<V> {
+
+    private final String name;
+    private final ConcurrentMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the result of the call in flight for the term, or makes the call if there is none
+     * @param term
+     * @param call
+     * @return
+     */
+    public CompletableFuture<V> execute(String term, Function<String, CompletableFuture<V>> call) {
+        calls.increment();
+        String key = normalize(term);
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            // a dependent future, so a caller cancelling its copy does not cancel the call for the others
+            return existing.thenApply(Function.identity());
+        }
+
+        CompletableFuture<V> result;
+        try {
+            result = call.apply(term);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((value, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.completeExceptionally(e);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * Normalizes a search term the way the keys of the calls in flight are compared
+     * @param term
+     * @return
+     */
+    public static String normalize(String term) {
+        return term.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of calls asked for, coalesced or not
+     * @return
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of calls that shared the result of a call already in flight
+     * @return
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the number of calls in flight right now
+     * @return
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": calls=" + getCalls() + " coalesced=" + getCoalesced() + " inFlight=" + getInFlight();
+    }
+}
@@ -0,0 +1,75 @@
+package com.workday.app.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read only list of projects stored a column per field (see ModelPool). Reading an element builds a new GitProjectModel,
+ * without tweets. The full name and the html url are not stored when they are the ones GitHub derives from the owner
+ * and the name of the project, which they almost always are.
+ */
+final class CompactProjectList extends AbstractList<GitProjectModel> implements RandomAccess {
+
+    private static final String HTML_URL_PREFIX = "https://github.com/";
+    private static final byte DERIVED_FULL_NAME = 1;
+    private static final byte DERIVED_HTML_URL = 2;
+
+    private final String[] names;
+    private final String[] fullNames;
+    private final GitProjectOwnerModel[] owners;
+    private final String[] htmlUrls;
+    private final byte[][] descriptions;
+    private final byte[] derived;
+
+    CompactProjectList(List<GitProjectModel> projects, ModelPool pool) {
+        int size = projects.size();
+        this.names = new String[size];
+        this.fullNames = new String[size];
+        this.owners = new GitProjectOwnerModel[size];
+        this.htmlUrls = new String[size];
+        this.descriptions = new byte[size][];
+        this.derived = new byte[size];
+        for (int i = 0; i < size; i++) {
+            GitProjectModel project = projects.get(i);
+            names[i] = pool.share(project.getName());
+            owners[i] = pool.share(project.getOwner());
+            descriptions[i] = ModelPool.encode(project.getDescription());
+            String fullName = project.getFullName();
+            if (isDerivedFullName(fullName, owners[i], names[i])) {
+                derived[i] |= DERIVED_FULL_NAME;
+            } else {
+                fullNames[i] = fullName;
+            }
+            String htmlUrl = project.getHtmlUrl();
+            if (fullName != null && htmlUrl != null && htmlUrl.length() == HTML_URL_PREFIX.length() + fullName.length()
+                    && htmlUrl.startsWith(HTML_URL_PREFIX) && htmlUrl.endsWith(fullName)) {
+                derived[i] |= DERIVED_HTML_URL;
+            } else {
+                htmlUrls[i] = htmlUrl;
+            }
+        }
+    }
+
+    @Override
+    public GitProjectModel get(int index) {
+        String fullName = (derived[index] & DERIVED_FULL_NAME) != 0 ? owners[index].getLogin() + "/" + names[index] : fullNames[index];
+        String htmlUrl = (derived[index] & DERIVED_HTML_URL) != 0 ? HTML_URL_PREFIX + fullName : htmlUrls[index];
+        return new GitProjectModel(names[index], fullName, owners[index], htmlUrl, ModelPool.decode(descriptions[index]));
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    // helper method to tell if the full name is owner/name
+    private static boolean isDerivedFullName(String fullName, GitProjectOwnerModel owner, String name) {
+        if (fullName == null || name == null || owner == null || owner.getLogin() == null) {
+            return false;
+        }
+        String login = owner.getLogin();
+        return fullName.length() == login.length() + 1 + name.length() && fullName.startsWith(login)
+                && fullName.charAt(login.length()) == '/' && fullName.endsWith(name);
+    }
+}
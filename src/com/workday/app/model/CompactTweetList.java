@@ -0,0 +1,65 @@
+package com.workday.app.model;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read only list of tweets stored a column per field (see ModelPool). Reading an element builds a new TweetsModel.
+ * The id_str of a tweet is only kept when it is not the id in decimal, which it always is for the Twitter API.
+ */
+final class CompactTweetList extends AbstractList<TweetsModel> implements RandomAccess {
+
+    private static final byte TRUNCATED = 1;
+    private static final byte DERIVED_ID_STR = 2;
+
+    private final long[] ids;
+    private final String[] idStrs;
+    private final byte[][] texts;
+    private final byte[] flags;
+    private final String[] sources;
+    private final TwitterUser[] users;
+    private final int[] retweetCounts;
+    private final int[] favoriteCounts;
+
+    CompactTweetList(List<TweetsModel> tweets, ModelPool pool) {
+        int size = tweets.size();
+        this.ids = new long[size];
+        this.idStrs = new String[size];
+        this.texts = new byte[size][];
+        this.flags = new byte[size];
+        this.sources = new String[size];
+        this.users = new TwitterUser[size];
+        this.retweetCounts = new int[size];
+        this.favoriteCounts = new int[size];
+        for (int i = 0; i < size; i++) {
+            TweetsModel tweet = tweets.get(i);
+            ids[i] = tweet.getId();
+            if (tweet.getIdStr() != null && tweet.getIdStr().equals(Long.toString(tweet.getId()))) {
+                flags[i] |= DERIVED_ID_STR;
+            } else {
+                idStrs[i] = tweet.getIdStr();
+            }
+            texts[i] = ModelPool.encode(tweet.getText());
+            if (tweet.isTruncated()) {
+                flags[i] |= TRUNCATED;
+            }
+            sources[i] = pool.share(tweet.getSource());
+            users[i] = pool.share(tweet.getUser());
+            retweetCounts[i] = tweet.getRetweetCount();
+            favoriteCounts[i] = tweet.getFavoriteCount();
+        }
+    }
+
+    @Override
+    public TweetsModel get(int index) {
+        String idStr = (flags[index] & DERIVED_ID_STR) != 0 ? Long.toString(ids[index]) : idStrs[index];
+        return new TweetsModel(ids[index], idStr, ModelPool.decode(texts[index]), (flags[index] & TRUNCATED) != 0, sources[index], users[index],
+                retweetCounts[index], favoriteCounts[index]);
+    }
+
+    @Override
+    public int size() {
+        return texts.length;
+    }
+}
@@ -26,10 +26,20 @@ public class GitProjectModel {
 
     private List<TweetsModel> tweets;
 
+    private TweetsStatus tweetsStatus;
+
     public GitProjectModel() {
 
     }
 
+    public GitProjectModel(String name, String fullName, GitProjectOwnerModel owner, String htmlUrl, String description) {
+        this.name = name;
+        this.fullName = fullName;
+        this.owner = owner;
+        this.htmlUrl = htmlUrl;
+        this.description = description;
+    }
+
     public String getName() {
         return name;
     }
@@ -57,4 +67,12 @@ public class GitProjectModel {
     public void setTweets(List<TweetsModel> tweets) {
         this.tweets = tweets;
     }
+
+    public TweetsStatus getTweetsStatus() {
+        return tweetsStatus;
+    }
+
+    public void setTweetsStatus(TweetsStatus tweetsStatus) {
+        this.tweetsStatus = tweetsStatus;
+    }
 }
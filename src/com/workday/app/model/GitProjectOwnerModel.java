@@ -2,7 +2,11 @@ package com.workday.app.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Objects;
+
 /**
+ * The owner of a GitHub project. Owners are compared by value, so the cache can keep one copy of an owner (see ModelPool).
+ *
  * Created by hari.sathappan on 4/3/18.
  */
 public class GitProjectOwnerModel {
@@ -19,6 +23,17 @@ public class GitProjectOwnerModel {
     @SerializedName("type")
     private String type;
 
+    public GitProjectOwnerModel() {
+
+    }
+
+    GitProjectOwnerModel(String login, String avatarUrl, String organizationsUrl, String type) {
+        this.login = login;
+        this.avatarUrl = avatarUrl;
+        this.organizationsUrl = organizationsUrl;
+        this.type = type;
+    }
+
     public String getLogin() {
         return login;
     }
@@ -34,4 +49,22 @@ public class GitProjectOwnerModel {
     public String getType() {
         return type;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        GitProjectOwnerModel owner = (GitProjectOwnerModel) o;
+        return Objects.equals(login, owner.login) && Objects.equals(avatarUrl, owner.avatarUrl)
+                && Objects.equals(organizationsUrl, owner.organizationsUrl) && Objects.equals(type, owner.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(login, avatarUrl, organizationsUrl, type);
+    }
 }
@@ -1,5 +1,7 @@
 package com.workday.app.model;
 
+import com.google.gson.annotations.SerializedName;
+
 import java.util.List;
 
 /**
@@ -7,8 +9,28 @@ import java.util.List;
  */
 public class GitSearchResultModel {
 
+    @SerializedName("total_count")
+    private Integer totalCount;
+
     private List<GitProjectModel> items;
 
+    public GitSearchResultModel() {
+
+    }
+
+    GitSearchResultModel(Integer totalCount, List<GitProjectModel> items) {
+        this.totalCount = totalCount;
+        this.items = items;
+    }
+
+    /**
+     * Returns the number of repositories matching the search on GitHub, or null if it is not known
+     * @return
+     */
+    public Integer getTotalCount() {
+        return totalCount;
+    }
+
     public List<GitProjectModel> getItems() {
         return items;
     }
@@ -0,0 +1,105 @@
+package com.workday.app.model;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compact storage for the models kept by a cache. The same owners, users, names and tweet sources come back in many results,
+ * so the pool keeps one copy of each (compared by value) and the compact lists point to that copy. The text of a tweet and the
+ * description of a project are rarely repeated, so they are kept as UTF-8 bytes instead, which saves the String object around
+ * them. For the characters the size depends on the text: a String keeps Latin-1 text in a byte per character, and any other
+ * text in two bytes per character. UTF-8 takes one byte for ASCII, two for the rest of Latin-1 and most other alphabets,
+ * three for CJK and most Indic scripts and four for emoji (as many as the two chars of an emoji in a String). So a mostly
+ * ASCII text with a few emoji or symbols, which is most of the tweets, takes about half, while CJK text takes half as much again.
+ *
+ * The compact lists are read only, and give a new model for every element read, so a summary can set the tweets of its
+ * projects without changing the cache. The pool only holds its copies weakly: a copy is dropped once no cached list uses it.
+ * One pool is used per cache.
+ */
+public class ModelPool {
+
+    private final Map<Object, WeakReference<Object>> copies = new WeakHashMap<>();
+
+    /**
+     * Returns the projects in a compact, read only list that shares its repeated values with the other lists of the pool
+     * @param projects
+     * @return
+     */
+    public List<GitProjectModel> compactProjects(List<GitProjectModel> projects) {
+        if (projects == null || projects.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (projects instanceof CompactProjectList) {
+            // already compact and read only, so it is kept as it is rather than copied
+            return projects;
+        }
+        return new CompactProjectList(projects, this);
+    }
+
+    /**
+     * Returns the search results with their projects in a compact, read only list (see compactProjects)
+     * @param result
+     * @return
+     */
+    public GitSearchResultModel compactResult(GitSearchResultModel result) {
+        if (result == null) {
+            return null;
+        }
+        return new GitSearchResultModel(result.getTotalCount(), compactProjects(result.getItems()));
+    }
+
+    /**
+     * Returns the tweets in a compact, read only list that shares its repeated values with the other lists of the pool
+     * @param tweets
+     * @return
+     */
+    public List<TweetsModel> compactTweets(List<TweetsModel> tweets) {
+        if (tweets == null || tweets.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new CompactTweetList(tweets, this);
+    }
+
+    /**
+     * Returns the number of distinct values the pool holds a copy of
+     * @return
+     */
+    public synchronized int size() {
+        return copies.size();
+    }
+
+    /**
+     * Returns the copy of the value kept by the pool, which is the value itself the first time it is seen
+     * @param value
+     * @param <T>
+     * @return
+     */
+    synchronized <T> T share(T value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<Object> copy = copies.get(value);
+        Object shared = copy == null ? null : copy.get();
+        if (shared == null) {
+            copies.put(value, new WeakReference<>(value));
+            return value;
+        }
+        @SuppressWarnings("unchecked")
+        T sharedValue = (T) shared;
+        return sharedValue;
+    }
+
+    // helper method
+    static byte[] encode(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // helper method
+    static String decode(byte[] text) {
+        return text == null ? null : new String(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,426 @@
+package com.workday.app.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand written Gson adapters for the model classes, so the GitHub and Twitter responses are decoded and the summaries are
+ * written without reflection. A field is read by switching on its name, the fields the app does not use (most of a GitHub
+ * repository or a tweet) are skipped without being decoded, and the fields are written in the order the reflective adapters
+ * of Gson write them, with the same names, so the JSON is the same either way.
+ * Registered on the Gson of the app by AppUtilities.gsonBuilder(); a field added to a model has to be added here too.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    private static final TypeAdapter<GitProjectOwnerModel> OWNER = new OwnerAdapter().nullSafe();
+    private static final TypeAdapter<TwitterUser> USER = new UserAdapter().nullSafe();
+    private static final TypeAdapter<TweetsModel> TWEET = new TweetAdapter().nullSafe();
+    private static final TypeAdapter<GitProjectModel> PROJECT = new ProjectAdapter().nullSafe();
+    private static final TypeAdapter<GitSearchResultModel> GIT_SEARCH_RESULT = new GitSearchResultAdapter().nullSafe();
+    private static final TypeAdapter<TweetsSearchResultModel> TWEETS_SEARCH_RESULT = new TweetsSearchResultAdapter().nullSafe();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == GitProjectModel.class) {
+            return (TypeAdapter<T>) PROJECT;
+        }
+        if (rawType == TweetsModel.class) {
+            return (TypeAdapter<T>) TWEET;
+        }
+        if (rawType == GitProjectOwnerModel.class) {
+            return (TypeAdapter<T>) OWNER;
+        }
+        if (rawType == TwitterUser.class) {
+            return (TypeAdapter<T>) USER;
+        }
+        if (rawType == GitSearchResultModel.class) {
+            return (TypeAdapter<T>) GIT_SEARCH_RESULT;
+        }
+        if (rawType == TweetsSearchResultModel.class) {
+            return (TypeAdapter<T>) TWEETS_SEARCH_RESULT;
+        }
+        return null;
+    }
+
+    private static class OwnerAdapter extends TypeAdapter<GitProjectOwnerModel> {
+
+        @Override
+        public void write(JsonWriter out, GitProjectOwnerModel owner) throws IOException {
+            out.beginObject();
+            out.name("login").value(owner.getLogin());
+            out.name("avatar_url").value(owner.getAvatarUrl());
+            out.name("organizations_url").value(owner.getOrganizationsUrl());
+            out.name("type").value(owner.getType());
+            out.endObject();
+        }
+
+        @Override
+        public GitProjectOwnerModel read(JsonReader in) throws IOException {
+            String login = null;
+            String avatarUrl = null;
+            String organizationsUrl = null;
+            String type = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "login":
+                        login = readString(in);
+                        break;
+                    case "avatar_url":
+                        avatarUrl = readString(in);
+                        break;
+                    case "organizations_url":
+                        organizationsUrl = readString(in);
+                        break;
+                    case "type":
+                        type = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new GitProjectOwnerModel(login, avatarUrl, organizationsUrl, type);
+        }
+    }
+
+    private static class UserAdapter extends TypeAdapter<TwitterUser> {
+
+        @Override
+        public void write(JsonWriter out, TwitterUser user) throws IOException {
+            out.beginObject();
+            out.name("name").value(user.getName());
+            out.name("screen_name").value(user.getScreenName());
+            out.name("description").value(user.getDescription());
+            out.name("url").value(user.getUrl());
+            out.name("profile_image_url").value(user.getProfileImageUrl());
+            out.endObject();
+        }
+
+        @Override
+        public TwitterUser read(JsonReader in) throws IOException {
+            String name = null;
+            String screenName = null;
+            String description = null;
+            String url = null;
+            String profileImageUrl = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        name = readString(in);
+                        break;
+                    case "screen_name":
+                        screenName = readString(in);
+                        break;
+                    case "description":
+                        description = readString(in);
+                        break;
+                    case "url":
+                        url = readString(in);
+                        break;
+                    case "profile_image_url":
+                        profileImageUrl = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TwitterUser(name, screenName, description, url, profileImageUrl);
+        }
+    }
+
+    private static class TweetAdapter extends TypeAdapter<TweetsModel> {
+
+        @Override
+        public void write(JsonWriter out, TweetsModel tweet) throws IOException {
+            out.beginObject();
+            out.name("id").value(tweet.getId());
+            out.name("id_str").value(tweet.getIdStr());
+            out.name("text").value(tweet.getText());
+            out.name("truncated").value(tweet.isTruncated());
+            out.name("source").value(tweet.getSource());
+            out.name("user");
+            USER.write(out, tweet.getUser());
+            out.name("retweet_count").value(tweet.getRetweetCount());
+            out.name("favorite_count").value(tweet.getFavoriteCount());
+            out.endObject();
+        }
+
+        @Override
+        public TweetsModel read(JsonReader in) throws IOException {
+            long id = 0;
+            String idStr = null;
+            String text = null;
+            boolean truncated = false;
+            String source = null;
+            TwitterUser user = null;
+            int retweetCount = 0;
+            int favoriteCount = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = readLong(in, id);
+                        break;
+                    case "id_str":
+                        idStr = readString(in);
+                        break;
+                    case "text":
+                        text = readString(in);
+                        break;
+                    case "truncated":
+                        truncated = readBoolean(in, truncated);
+                        break;
+                    case "source":
+                        source = readString(in);
+                        break;
+                    case "user":
+                        user = USER.read(in);
+                        break;
+                    case "retweet_count":
+                        retweetCount = readInt(in, retweetCount);
+                        break;
+                    case "favorite_count":
+                        favoriteCount = readInt(in, favoriteCount);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TweetsModel(id, idStr, text, truncated, source, user, retweetCount, favoriteCount);
+        }
+    }
+
+    private static class ProjectAdapter extends TypeAdapter<GitProjectModel> {
+
+        @Override
+        public void write(JsonWriter out, GitProjectModel project) throws IOException {
+            out.beginObject();
+            out.name("name").value(project.getName());
+            out.name("full_name").value(project.getFullName());
+            out.name("owner");
+            OWNER.write(out, project.getOwner());
+            out.name("html_url").value(project.getHtmlUrl());
+            out.name("description").value(project.getDescription());
+            out.name("tweets");
+            writeList(out, project.getTweets(), TWEET);
+            out.name("tweetsStatus").value(project.getTweetsStatus() == null ? null : project.getTweetsStatus().name());
+            out.endObject();
+        }
+
+        @Override
+        public GitProjectModel read(JsonReader in) throws IOException {
+            String name = null;
+            String fullName = null;
+            GitProjectOwnerModel owner = null;
+            String htmlUrl = null;
+            String description = null;
+            List<TweetsModel> tweets = null;
+            TweetsStatus tweetsStatus = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        name = readString(in);
+                        break;
+                    case "full_name":
+                        fullName = readString(in);
+                        break;
+                    case "owner":
+                        owner = OWNER.read(in);
+                        break;
+                    case "html_url":
+                        htmlUrl = readString(in);
+                        break;
+                    case "description":
+                        description = readString(in);
+                        break;
+                    case "tweets":
+                        tweets = readList(in, TWEET);
+                        break;
+                    case "tweetsStatus":
+                        tweetsStatus = readTweetsStatus(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            GitProjectModel project = new GitProjectModel(name, fullName, owner, htmlUrl, description);
+            project.setTweets(tweets);
+            project.setTweetsStatus(tweetsStatus);
+            return project;
+        }
+    }
+
+    private static class GitSearchResultAdapter extends TypeAdapter<GitSearchResultModel> {
+
+        @Override
+        public void write(JsonWriter out, GitSearchResultModel result) throws IOException {
+            out.beginObject();
+            out.name("total_count").value(result.getTotalCount());
+            out.name("items");
+            writeList(out, result.getItems(), PROJECT);
+            out.endObject();
+        }
+
+        @Override
+        public GitSearchResultModel read(JsonReader in) throws IOException {
+            Integer totalCount = null;
+            List<GitProjectModel> items = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "total_count":
+                        totalCount = readInteger(in);
+                        break;
+                    case "items":
+                        items = readList(in, PROJECT);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new GitSearchResultModel(totalCount, items);
+        }
+    }
+
+    private static class TweetsSearchResultAdapter extends TypeAdapter<TweetsSearchResultModel> {
+
+        @Override
+        public void write(JsonWriter out, TweetsSearchResultModel result) throws IOException {
+            out.beginObject();
+            out.name("statuses");
+            writeList(out, result.getTweets(), TWEET);
+            out.endObject();
+        }
+
+        @Override
+        public TweetsSearchResultModel read(JsonReader in) throws IOException {
+            List<TweetsModel> tweets = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("statuses".equals(in.nextName())) {
+                    tweets = readList(in, TWEET);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TweetsSearchResultModel(tweets);
+        }
+    }
+
+    // helper method to read a string like Gson does, which takes numbers and booleans as strings too
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    // helper method. A null leaves the primitive field as it was, like the reflective adapters do.
+    private static boolean readBoolean(JsonReader in, boolean current) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    // helper method. A null leaves the primitive field as it was, like the reflective adapters do.
+    private static int readInt(JsonReader in, int current) throws IOException {
+        Integer value = readInteger(in);
+        return value == null ? current : value;
+    }
+
+    // helper method. A null leaves the primitive field as it was, like the reflective adapters do.
+    private static long readLong(JsonReader in, long current) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return current;
+        }
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    // helper method
+    private static Integer readInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    // helper method. An unknown status is read as null, like the enum adapter of Gson does.
+    private static TweetsStatus readTweetsStatus(JsonReader in) throws IOException {
+        String name = readString(in);
+        for (TweetsStatus status : TweetsStatus.values()) {
+            if (status.name().equals(name)) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    // helper method
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> elementAdapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(elementAdapter.read(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    // helper method
+    private static <T> void writeList(JsonWriter out, List<T> list, TypeAdapter<T> elementAdapter) throws IOException {
+        if (list == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (int i = 0, size = list.size(); i < size; i++) {
+            elementAdapter.write(out, list.get(i));
+        }
+        out.endArray();
+    }
+}
@@ -7,6 +7,11 @@ import com.google.gson.annotations.SerializedName;
  */
 public class TweetsModel {
 
+    private long id;
+
+    @SerializedName("id_str")
+    private String idStr;
+
     private String text;
     private boolean truncated;
     private String source;
@@ -18,6 +23,38 @@ public class TweetsModel {
     @SerializedName("favorite_count")
     private int favoriteCount;
 
+    public TweetsModel() {
+
+    }
+
+    public TweetsModel(String text, boolean truncated, String source, TwitterUser user, int retweetCount, int favoriteCount) {
+        this(0, null, text, truncated, source, user, retweetCount, favoriteCount);
+    }
+
+    public TweetsModel(long id, String idStr, String text, boolean truncated, String source, TwitterUser user, int retweetCount, int favoriteCount) {
+        this.id = id;
+        this.idStr = idStr;
+        this.text = text;
+        this.truncated = truncated;
+        this.source = source;
+        this.user = user;
+        this.retweetCount = retweetCount;
+        this.favoriteCount = favoriteCount;
+    }
+
+    /**
+     * Returns the status id, which grows with time, so it orders the tweets and is the since_id of the next search.
+     * 0 if the status had no id.
+     * @return
+     */
+    public long getId() {
+        return id;
+    }
+
+    public String getIdStr() {
+        return idStr;
+    }
+
     public String getText() {
         return text;
     }
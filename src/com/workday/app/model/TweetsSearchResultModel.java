@@ -12,6 +12,14 @@ public class TweetsSearchResultModel {
     @SerializedName("statuses")
     private List<TweetsModel> tweets;
 
+    public TweetsSearchResultModel() {
+
+    }
+
+    TweetsSearchResultModel(List<TweetsModel> tweets) {
+        this.tweets = tweets;
+    }
+
     public List<TweetsModel> getTweets() {
         return tweets;
     }
@@ -0,0 +1,18 @@
+package com.workday.app.model;
+
+/**
+ * Tells why a project in a summary has no tweets even though it may have some on Twitter.
+ * It is left out of the summary when the tweets of the project were fetched.
+ */
+public enum TweetsStatus {
+
+    /**
+     * Twitter could not be reached, or its circuit is open, so the tweets could not be fetched
+     */
+    UNAVAILABLE,
+
+    /**
+     * The tweets were not fetched before the deadline of the summary
+     */
+    TIMED_OUT
+}
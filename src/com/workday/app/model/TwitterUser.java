@@ -2,7 +2,11 @@ package com.workday.app.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Objects;
+
 /**
+ * The author of a tweet. Users are compared by value, so the cache can keep one copy of a user (see ModelPool).
+ *
  * Created by hari.sathappan on 4/3/18.
  */
 public class TwitterUser {
@@ -15,6 +19,18 @@ public class TwitterUser {
     @SerializedName("profile_image_url")
     private String profileImageUrl;
 
+    public TwitterUser() {
+
+    }
+
+    TwitterUser(String name, String screenName, String description, String url, String profileImageUrl) {
+        this.name = name;
+        this.screenName = screenName;
+        this.description = description;
+        this.url = url;
+        this.profileImageUrl = profileImageUrl;
+    }
+
     public String getName() {
         return name;
     }
@@ -34,4 +50,22 @@ public class TwitterUser {
     public String getProfileImageUrl() {
         return profileImageUrl;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TwitterUser user = (TwitterUser) o;
+        return Objects.equals(name, user.name) && Objects.equals(screenName, user.screenName) && Objects.equals(description, user.description)
+                && Objects.equals(url, user.url) && Objects.equals(profileImageUrl, user.profileImageUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, screenName, description, url, profileImageUrl);
+    }
 }
@@ -1,13 +1,21 @@
 package com.workday.app.utils;
 
+import com.google.gson.GsonBuilder;
+import com.workday.app.model.ModelTypeAdapterFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
 
-import javax.net.ssl.HttpsURLConnection;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Utilities file for the GitTwitterMashup App
@@ -16,36 +24,19 @@ import java.util.Properties;
  */
 public class AppUtilities {
 
-    private static final int RETRY_DELAY_MS =  30000; //30 sec delay (30 * 1000)
-    private static final int RETRIES = 3;
     private static final String APP_PROPERTIES = "resources/app.properties";
 
+    /**
+     * The key of the correlation id of a request in the log context. It is logged with every line logged for the request.
+     * It is kept to this app and not sent to the APIs.
+     */
+    public static final String REQUEST_ID = "requestId";
+
     private static Logger log = LogManager.getLogger(AppUtilities.class);
 
 
     private AppUtilities() {}
 
-    /**
-     * Reads a response for a given connection and returns it as a string.
-     * @param connection
-     * @return
-     */
-    public static String readResponse(HttpsURLConnection connection) {
-        try {
-            connection.connect();
-            int statusCode = connection.getResponseCode();
-            StringBuilder str = new StringBuilder();
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line = "";
-            while((line = br.readLine()) != null) {
-                str.append(line + System.getProperty("line.separator"));
-            }
-            return str.toString();
-        }
-        catch (IOException e) { return new String(); }
-    }
-
     /**
      * Reads the App properties file and returns it as a Properties object
      * @return
@@ -71,30 +62,150 @@ public class AppUtilities {
     }
 
     /**
-     * Helper method to inspect the responseCode
-     * @param responseCode
-     * @param endpoint
+     * Returns the correlation id of the request the current thread works for, or a new one if there is none
+     * @return
+     */
+    public static String currentRequestId() {
+        String requestId = ThreadContext.get(REQUEST_ID);
+        return requestId != null ? requestId : newRequestId();
+    }
+
+    /**
+     * Returns a new correlation id: 16 random hex digits, cheaper to make than a UUID
      * @return
-     * @throws IOException
      */
-    public static final boolean retryConnection(int responseCode, URL endpoint) throws IOException {
+    public static String newRequestId() {
+        // the top bit is set so the id always has 16 digits
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    }
 
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            log.info(endpoint + " **OK**");
-            return false;
+    /**
+     * Runs a step of a request with its correlation id in the log context of the current thread.
+     * The steps of a request run on different threads as its calls complete, so each step sets the id again. The log context
+     * map is the garbage free one (see log4j2.component.properties), so setting the id does not allocate.
+     * @param requestId the correlation id, or null to run the step as it is
+     * @param step
+     * @param <T>
+     * @return
+     */
+    public static <T> T withRequestId(String requestId, Supplier<T> step) {
+        String previous = ThreadContext.get(REQUEST_ID);
+        if (requestId == null || requestId.equals(previous)) {
+            return step.get();
         }
-        else if (responseCode >= 400 & responseCode < 500) {
-            log.error(endpoint + " **Client exception response code**. " + responseCode);
-            throw new IOException(endpoint + " Client exception response code: " + responseCode);
+        ThreadContext.put(REQUEST_ID, requestId);
+        try {
+            return step.get();
+        } finally {
+            if (previous == null) {
+                ThreadContext.remove(REQUEST_ID);
+            } else {
+                ThreadContext.put(REQUEST_ID, previous);
+            }
         }
-        else if (responseCode >= 500) {
-            log.warn(endpoint + " **Server exception response code**. " + responseCode);
+    }
+
+    /**
+     * Runs a step of a request with its correlation id in the log context of the current thread, like withRequestId
+     * @param requestId the correlation id, or null to run the step as it is
+     * @param step
+     */
+    public static void runWithRequestId(String requestId, Runnable step) {
+        withRequestId(requestId, () -> {
+            step.run();
+            return null;
+        });
+    }
+
+    /**
+     * Reads an int property, falling back to the default if it is missing or not a number
+     * @param properties
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public static int getIntProperty(Properties properties, String key, int defaultValue) {
+        String value = properties == null ? null : properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
         }
-        else {
-            log.error(endpoint + " **unknown response code**." + responseCode);
-            throw new IOException(endpoint + " Unknown exception response code: " + responseCode);
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("{} **is not a valid number** {}. Using {}", key, value, defaultValue);
+            return defaultValue;
         }
+    }
+
+    /**
+     * Creates a Gson builder with the adapters of the model classes registered (see ModelTypeAdapterFactory),
+     * so the models are read and written without reflection. Every Gson of the app is built from it.
+     * @return
+     */
+    public static GsonBuilder gsonBuilder() {
+        return new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory());
+    }
 
-        return true;
+    /**
+     * Creates a thread factory for daemon threads named with the given prefix,
+     * so the app's worker pools never keep the JVM alive.
+     * @param namePrefix
+     * @return
+     */
+    public static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Waits for the future to complete and unwraps its failure into an IOException.
+     * Used by the synchronous wrappers around the async API calls.
+     * @param future
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the API response");
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("API call was cancelled");
+        }
+    }
+
+    /**
+     * Unwraps the CompletionException layers added by CompletableFuture and returns the cause as an IOException
+     * @param throwable
+     * @return
+     */
+    public static IOException asIOException(Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause.getMessage(), cause);
+    }
+
+    /**
+     * Strips the CompletionException / ExecutionException wrappers from a failure of a CompletableFuture
+     * @param throwable
+     * @return
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
     }
 }
@@ -0,0 +1,77 @@
+package com.workday.batch;
+
+/**
+ * Immutable snapshot of the counts of a batch job run
+ */
+public class BatchStats {
+
+    private final long termsRead;
+    private final long termsSkipped;
+    private final long termsWritten;
+    private final long termsFailed;
+    private final long tweetLookups;
+    private final long tweetLookupsShared;
+
+    public BatchStats(long termsRead, long termsSkipped, long termsWritten, long termsFailed, long tweetLookups, long tweetLookupsShared) {
+        this.termsRead = termsRead;
+        this.termsSkipped = termsSkipped;
+        this.termsWritten = termsWritten;
+        this.termsFailed = termsFailed;
+        this.tweetLookups = tweetLookups;
+        this.tweetLookupsShared = tweetLookupsShared;
+    }
+
+    /**
+     * Returns the number of terms read from the input
+     * @return
+     */
+    public long getTermsRead() {
+        return termsRead;
+    }
+
+    /**
+     * Returns the number of terms skipped, since they were already in the output or repeated in the input
+     * @return
+     */
+    public long getTermsSkipped() {
+        return termsSkipped;
+    }
+
+    /**
+     * Returns the number of terms written to the output
+     * @return
+     */
+    public long getTermsWritten() {
+        return termsWritten;
+    }
+
+    /**
+     * Returns the number of terms whose GitHub search failed. They are not written, so the next run retries them.
+     * @return
+     */
+    public long getTermsFailed() {
+        return termsFailed;
+    }
+
+    /**
+     * Returns the number of distinct project names looked up on Twitter
+     * @return
+     */
+    public long getTweetLookups() {
+        return tweetLookups;
+    }
+
+    /**
+     * Returns the number of projects that reused the lookup of a project with the same name from another term
+     * @return
+     */
+    public long getTweetLookupsShared() {
+        return tweetLookupsShared;
+    }
+
+    @Override
+    public String toString() {
+        return "terms read=" + termsRead + " skipped=" + termsSkipped + " written=" + termsWritten + " failed=" + termsFailed
+                + ", tweet lookups=" + tweetLookups + " shared=" + tweetLookupsShared;
+    }
+}
@@ -0,0 +1,378 @@
+package com.workday.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.cache.SingleFlight;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.TweetsModel;
+import com.workday.app.model.TweetsStatus;
+import com.workday.app.utils.AppUtilities;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Summarizes a list of search terms into an NDJSON file, one line per term: {"term":"...","items":[...]}.
+ *
+ * The terms go through a pipeline of stages with bounded queues (BATCH_QUEUE_SIZE) between them,
+ * so a slow stage holds back the stages before it instead of piling up work:
+ *   reader -> GitHub search (BATCH_SEARCH_THREADS) -> project dedupe -> Twitter lookup (BATCH_TWEET_THREADS)
+ *                                                                   \-> writer
+ * The dedupe stage looks up each project name on Twitter once per batch, however many terms return the project,
+ * and the writer waits for the lookups of a term before writing its line.
+ * The terms already in the output file are skipped, so running the job again on the same input resumes it.
+ * A term whose GitHub search fails is not written, so the next run retries it. A failed Twitter lookup leaves
+ * the project without tweets, marked as unavailable, like the summaries of the app.
+ */
+public class MashupBatchJob {
+
+    private static final String BATCH_SEARCH_THREADS = "BATCH_SEARCH_THREADS";
+    private static final String BATCH_TWEET_THREADS = "BATCH_TWEET_THREADS";
+    private static final String BATCH_QUEUE_SIZE = "BATCH_QUEUE_SIZE";
+
+    private static final TermProjects END_OF_TERMS = new TermProjects(null);
+    private static final TweetLookup END_OF_LOOKUPS = new TweetLookup(null);
+
+    private static Logger log = LogManager.getLogger(MashupBatchJob.class);
+
+    private final GitTwitterMashupApp app;
+    private final Properties properties;
+    private final Gson gson = AppUtilities.gsonBuilder().create();
+
+    public MashupBatchJob(GitTwitterMashupApp app, Properties properties) {
+        this.app = app;
+        this.properties = properties;
+    }
+
+    /**
+     * Summarizes the terms of the input file, one term per line, into the output file
+     * @param input
+     * @param output
+     * @return the counts of the run
+     * @throws IOException if the input cannot be read or the output cannot be written
+     */
+    public BatchStats run(Path input, Path output) throws IOException {
+        try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return run(reader, output);
+        }
+    }
+
+    /**
+     * Summarizes the terms of the input, one term per line, into the output file. Blank lines are ignored.
+     * The terms already in the output file and the terms repeated in the input are skipped.
+     * @param input
+     * @param output
+     * @return the counts of the run
+     * @throws IOException if the input cannot be read or the output cannot be written
+     */
+    public BatchStats run(Reader input, Path output) throws IOException {
+        Set<String> finishedTerms = readFinishedTerms(output);
+        int queueSize = Math.max(1, AppUtilities.getIntProperty(properties, BATCH_QUEUE_SIZE, 100));
+        Pipeline pipeline = new Pipeline(queueSize);
+        log.info("**Batch starting, terms already in the output** {}", finishedTerms.size());
+
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            pipeline.startStage("batch-reader", 1, null, null, ignored -> readTerms(input, finishedTerms, pipeline), () -> pipeline.terms.put(END_OF_TERMS));
+            pipeline.startStage("batch-search", AppUtilities.getIntProperty(properties, BATCH_SEARCH_THREADS, 4), pipeline.terms, END_OF_TERMS,
+                    term -> searchProjects(term, pipeline), () -> pipeline.searched.put(END_OF_TERMS));
+            pipeline.startStage("batch-dedupe", 1, pipeline.searched, END_OF_TERMS, term -> dedupeProjects(term, pipeline), () -> {
+                pipeline.lookups.put(END_OF_LOOKUPS);
+                pipeline.results.put(END_OF_TERMS);
+            });
+            pipeline.startStage("batch-tweets", AppUtilities.getIntProperty(properties, BATCH_TWEET_THREADS, 4), pipeline.lookups, END_OF_LOOKUPS,
+                    this::lookupTweets, () -> { });
+            pipeline.startStage("batch-writer", 1, pipeline.results, END_OF_TERMS, term -> writeTerm(term, writer, pipeline), () -> { });
+            pipeline.await();
+        }
+        BatchStats stats = pipeline.stats();
+        log.info("**Batch finished** {}", stats);
+        return stats;
+    }
+
+    // reader stage: queues the terms that are not finished yet
+    private void readTerms(Reader input, Set<String> finishedTerms, Pipeline pipeline) throws IOException, InterruptedException {
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String term = line.trim();
+            if (term.isEmpty()) {
+                continue;
+            }
+            pipeline.termsRead.incrementAndGet();
+            if (!finishedTerms.add(SingleFlight.normalize(term))) {
+                pipeline.termsSkipped.incrementAndGet();
+                continue;
+            }
+            pipeline.terms.put(new TermProjects(term));
+        }
+    }
+
+    // search stage: gets the projects of the term from GitHub
+    private void searchProjects(TermProjects term, Pipeline pipeline) throws InterruptedException {
+        try {
+            term.projects = app.getProjectsAsync(term.term).get();
+        } catch (ExecutionException e) {
+            log.warn("batch **Error searching projects for term** {} {}", term.term, AppUtilities.unwrap(e).getMessage());
+            pipeline.termsFailed.incrementAndGet();
+            return;
+        }
+        pipeline.searched.put(term);
+    }
+
+    // dedupe stage: queues a Twitter lookup for the project names not seen before in this batch and hands the term to the writer.
+    // The lookups of a term are queued before the term, so the writer never waits on a lookup that is not queued.
+    private void dedupeProjects(TermProjects term, Pipeline pipeline) throws InterruptedException {
+        term.tweets = new ArrayList<>(term.projects.size());
+        for (GitProjectModel project : term.projects) {
+            String name = SingleFlight.normalize(project.getName());
+            TweetLookup lookup = pipeline.lookupsByName.get(name);
+            if (lookup == null) {
+                lookup = new TweetLookup(project.getName());
+                pipeline.lookupsByName.put(name, lookup);
+                pipeline.tweetLookups.incrementAndGet();
+                pipeline.lookups.put(lookup);
+            } else {
+                pipeline.tweetLookupsShared.incrementAndGet();
+            }
+            term.tweets.add(lookup.tweets);
+        }
+        pipeline.results.put(term);
+    }
+
+    // tweet lookup stage: gets the tweets of a project name from Twitter
+    private void lookupTweets(TweetLookup lookup) throws InterruptedException {
+        try {
+            lookup.tweets.complete(app.getTweetsAsync(lookup.projectName).get());
+        } catch (ExecutionException e) {
+            log.warn("batch **Error fetching tweets for project** {} {}", lookup.projectName, AppUtilities.unwrap(e).getMessage());
+            lookup.tweets.completeExceptionally(AppUtilities.unwrap(e));
+        }
+    }
+
+    // writer stage: waits for the tweets of the projects of the term and writes its line
+    private void writeTerm(TermProjects term, Writer writer, Pipeline pipeline) throws IOException, InterruptedException {
+        for (int i = 0; i < term.projects.size(); i++) {
+            GitProjectModel project = term.projects.get(i);
+            try {
+                project.setTweets(term.tweets.get(i).get());
+            } catch (ExecutionException e) {
+                project.setTweets(Collections.emptyList());
+                project.setTweetsStatus(TweetsStatus.UNAVAILABLE);
+            }
+        }
+        writer.write(gson.toJson(new TermSummaryModel(term.term, term.projects)));
+        writer.write('\n');
+        writer.flush();
+        pipeline.termsWritten.incrementAndGet();
+    }
+
+    // helper method to read the terms already in the output file. A last line cut short by an interrupted run is removed.
+    private Set<String> readFinishedTerms(Path output) throws IOException {
+        Set<String> finishedTerms = new HashSet<>();
+        if (!Files.exists(output)) {
+            return finishedTerms;
+        }
+        truncateToLastLine(output);
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String term = readTerm(line);
+                if (term != null) {
+                    finishedTerms.add(SingleFlight.normalize(term));
+                }
+            }
+        }
+        return finishedTerms;
+    }
+
+    // reads only the term of an output line, which is written first, without decoding its projects
+    private static String readTerm(String line) {
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.beginObject();
+            return reader.hasNext() && "term".equals(reader.nextName()) ? reader.nextString() : null;
+        } catch (IOException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static void truncateToLastLine(Path output) throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer b = ByteBuffer.allocate(1);
+            while (end > 0) {
+                b.clear();
+                channel.read(b, end - 1);
+                if (b.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < channel.size()) {
+                log.warn("batch **Removing the incomplete last line of** {}", output);
+                channel.truncate(end);
+            }
+        }
+    }
+
+    // a term with its projects and, once deduped, the tweet lookups of its projects in the same order
+    private static class TermProjects {
+        private final String term;
+        private List<GitProjectModel> projects;
+        private List<CompletableFuture<List<TweetsModel>>> tweets;
+
+        TermProjects(String term) {
+            this.term = term;
+        }
+    }
+
+    // a Twitter lookup of a project name, shared by all the terms with a project of that name
+    private static class TweetLookup {
+        private final String projectName;
+        private final CompletableFuture<List<TweetsModel>> tweets = new CompletableFuture<>();
+
+        TweetLookup(String projectName) {
+            this.projectName = projectName;
+        }
+    }
+
+    // the line written for a term
+    private static class TermSummaryModel {
+        private final String term;
+        private final List<GitProjectModel> items;
+
+        TermSummaryModel(String term, List<GitProjectModel> items) {
+            this.term = term;
+            this.items = items;
+        }
+    }
+
+    private interface StageWork<T> {
+        void process(T item) throws IOException, InterruptedException;
+    }
+
+    private interface StageEnd {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * The queues, threads and counts of one run. Each stage passes an end marker down once all its threads are done.
+     * An error in a stage stops the whole pipeline, since the stages before it would block on its queue.
+     */
+    private static class Pipeline {
+
+        private final BlockingQueue<TermProjects> terms;
+        private final BlockingQueue<TermProjects> searched;
+        private final BlockingQueue<TweetLookup> lookups;
+        private final BlockingQueue<TermProjects> results;
+        // only used by the single dedupe thread. It holds the lookups for the whole batch, so names are looked up once.
+        private final Map<String, TweetLookup> lookupsByName = new HashMap<>();
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final AtomicLong termsRead = new AtomicLong();
+        private final AtomicLong termsSkipped = new AtomicLong();
+        private final AtomicLong termsWritten = new AtomicLong();
+        private final AtomicLong termsFailed = new AtomicLong();
+        private final AtomicLong tweetLookups = new AtomicLong();
+        private final AtomicLong tweetLookupsShared = new AtomicLong();
+
+        Pipeline(int queueSize) {
+            this.terms = new ArrayBlockingQueue<>(queueSize);
+            this.searched = new ArrayBlockingQueue<>(queueSize);
+            this.lookups = new ArrayBlockingQueue<>(queueSize);
+            this.results = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        // starts the threads of a stage taking from the queue until the end marker. A stage without a queue runs its work once.
+        <T> void startStage(String name, int threadCount, BlockingQueue<T> in, T end, StageWork<T> work, StageEnd onEnd) {
+            int count = Math.max(1, threadCount);
+            AtomicInteger running = new AtomicInteger(count);
+            for (int i = 0; i < count; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        if (in == null) {
+                            work.process(null);
+                        } else {
+                            T item;
+                            while ((item = in.take()) != end) {
+                                work.process(item);
+                            }
+                            // leaves the marker for the other threads of the stage
+                            in.put(end);
+                        }
+                        if (running.decrementAndGet() == 0) {
+                            onEnd.run();
+                        }
+                    } catch (InterruptedException e) {
+                        // stopped by an error in another stage
+                    } catch (IOException | RuntimeException e) {
+                        abort(e);
+                    }
+                }, name + "-" + (i + 1));
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+                if (failure.get() != null) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        private void abort(Exception e) {
+            if (failure.compareAndSet(null, e)) {
+                log.warn("batch **Stopping the batch after an error** {}", e.getMessage());
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        // waits for all the stages to finish and rethrows the error that stopped them, if any
+        void await() throws IOException {
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                abort(new InterruptedIOException("Interrupted while running the batch"));
+                Thread.currentThread().interrupt();
+            }
+            Exception e = failure.get();
+            if (e != null) {
+                throw AppUtilities.asIOException(e);
+            }
+        }
+
+        BatchStats stats() {
+            return new BatchStats(termsRead.get(), termsSkipped.get(), termsWritten.get(), termsFailed.get(), tweetLookups.get(), tweetLookupsShared.get());
+        }
+    }
+}
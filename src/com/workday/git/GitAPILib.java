@@ -1,77 +1,394 @@
 package com.workday.git;
 
+import com.google.gson.Gson;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.ModelPool;
 import com.workday.app.utils.AppUtilities;
+import com.workday.http.Deadline;
+import com.workday.http.HttpTransport;
+import com.workday.http.Upstream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.HttpURLConnection;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Git API library
  * Currently the only API available is the Search API
  * This can be easily replaced with a 3rd party library or can be enhanced to include other API calls.
  * If the API returns a 500 error, then there is a 3 time retry to see if the server is available and the API can get the desired data.
+ * The calls are non-blocking and go through the shared HttpTransport, which pools the connections and does the retries.
+ * The ETag of the last search results is kept per search term and sent back as If-None-Match. GitHub answers a
+ * conditional request with a cheap 304 that does not count against the rate limit, and the results decoded before are reused.
+ * The results kept for that are compact (see ModelPool), and are the same list the cache of the app keeps.
+ * Searches for more than one page of results (see searchProjectsAsync) set per_page and fetch the pages in parallel.
  *
  * Created by hari.sathappan on 4/3/18.
  */
 public class GitAPILib {
 
-    private static final int RETRY_DELAY_MS =  30000; //30 sec delay (30 * 1000)
-    private static final int RETRIES = 3;
-    private static final String END_POINT_URL = "https://api.github.com/search/repositories?q=";
-    private static Logger log = LogManager.getLogger(AppUtilities.class);
+    private static final String DEFAULT_BASE_URL = "https://api.github.com";
+    private static final String SEARCH_PATH = "/search/repositories?q=";
+    private static final int MAX_VALIDATORS = 1000;
+    // GitHub returns 30 results per page by default, at most 100 results per page and only the first 1000 results of a search
+    public static final int DEFAULT_PER_PAGE = 30;
+    public static final int MAX_PER_PAGE = 100;
+    private static final int MAX_SEARCH_RESULTS = 1000;
+    private static final Pattern LINK = Pattern.compile("<([^>]*)>\\s*;\\s*rel=\"([^\"]*)\"");
+    private static final Pattern PAGE = Pattern.compile("[?&]page=(\\d+)");
+    private static Logger log = LogManager.getLogger(GitAPILib.class);
 
-    public GitAPILib() {}
+    private final HttpTransport transport;
+    private final Upstream upstream;
+    private final String endPointUrl;
+    private final Gson gson;
+    private final ModelPool resultsPool = new ModelPool();
+    private final Map<String, Validator> validators = new LinkedHashMap<String, Validator>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Validator> eldest) {
+            return size() > MAX_VALIDATORS;
+        }
+    };
+
+    public GitAPILib() {
+        this(HttpTransport.shared(), AppUtilities.gsonBuilder().create());
+    }
+
+    public GitAPILib(HttpTransport transport, Gson gson) {
+        this(transport, gson, DEFAULT_BASE_URL);
+    }
 
+    public GitAPILib(HttpTransport transport, Gson gson, String baseUrl) {
+        this.transport = transport;
+        this.upstream = transport.upstream("github");
+        this.gson = gson;
+        this.endPointUrl = baseUrl + SEARCH_PATH;
+    }
+
+    /**
+     * Returns the GitHub upstream, with the state of its rate limit, circuit breaker and bulkhead
+     * @return
+     */
+    public Upstream getUpstream() {
+        return upstream;
+    }
+
+    /**
+     * Searches GitHub repositories for the given search term and blocks until the response is available
+     * @param searchTerm
+     * @return
+     * @throws IOException
+     */
     public String search(String searchTerm) throws IOException {
-        HttpsURLConnection connection = null;
+        return AppUtilities.await(searchAsync(searchTerm));
+    }
+
+    /**
+     * Searches GitHub repositories for the given search term
+     * @param searchTerm
+     * @return a future with the search response json. It completes exceptionally with an IOException on errors
+     */
+    public CompletableFuture<String> searchAsync(String searchTerm) {
+        try {
+            return transport.sendAsync(upstream, searchRequestBuilder(searchTerm, Deadline.none()).build());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Searches GitHub repositories for the given search term and decodes the results while they are read from the connection.
+     * If GitHub reports the results as not modified since the last search, the results decoded then are returned.
+     * The projects of results with an ETag are in a compact, read only list.
+     * @param searchTerm
+     * @return a future with the search results. It completes exceptionally with an IOException on errors
+     */
+    public CompletableFuture<GitSearchResultModel> searchResultAsync(String searchTerm) {
+        return searchResultAsync(searchTerm, Deadline.none());
+    }
+
+    /**
+     * Searches GitHub repositories for the given search term like searchResultAsync(String), within the deadline
+     * @param searchTerm
+     * @param deadline
+     * @return a future with the search results. It completes exceptionally with an IOException on errors,
+     * and with a DeadlineExceededException if the deadline is reached first
+     */
+    public CompletableFuture<GitSearchResultModel> searchResultAsync(String searchTerm, Deadline deadline) {
+        Validator validator;
+        synchronized (validators) {
+            validator = validators.get(searchTerm);
+        }
+
+        HttpRequest request;
         try {
-            connection = setupConnection(searchTerm);
-            return AppUtilities.readResponse(connection);
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
+            HttpRequest.Builder builder = searchRequestBuilder(searchTerm, deadline);
+            if (validator != null) {
+                builder.header("If-None-Match", validator.etag);
             }
+            request = builder.build();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
         }
+
+        return transport.sendAsync(upstream, request, HttpResponse.BodyHandlers.ofInputStream(), deadline).thenCompose(response -> {
+            if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED && validator != null) {
+                HttpTransport.discard(response);
+                return CompletableFuture.completedFuture(validator.result);
+            }
+            Optional<String> etag = response.headers().firstValue("ETag");
+            return transport.decodeAsync(upstream, response, gson, GitSearchResultModel.class).thenApply(result -> {
+                if (etag.isPresent() && result != null) {
+                    // only the compact results are kept, and handed out, so the cache of the app keeps the same list
+                    GitSearchResultModel compactResult = resultsPool.compactResult(result);
+                    synchronized (validators) {
+                        validators.put(searchTerm, new Validator(etag.get(), compactResult));
+                    }
+                    return compactResult;
+                }
+                return result;
+            });
+        });
+    }
+
+    /**
+     * Searches GitHub repositories for the given search term over as many pages as needed for maxResults projects.
+     * The first page gives the total count and the Link header of the last page, then the other pages are fetched in parallel,
+     * paced by the GitHub rate limit of the transport. Without a total count or a last page the next links are followed one by one.
+     * The projects are handed to the listener page by page, in ranking order, as soon as the pages before them have arrived.
+     * @param searchTerm
+     * @param sort stars, forks, help-wanted-issues or updated. Null for the best match
+     * @param order desc or asc. Null for the default order of the sort
+     * @param maxResults the number of projects wanted. GitHub only returns the first 1000 results of a search
+     * @param listener gets the projects of each page, in ranking order. Can be null
+     * @return a future with all the projects in ranking order. It completes exceptionally with an IOException if any page fails
+     */
+    public CompletableFuture<List<GitProjectModel>> searchProjectsAsync(String searchTerm, String sort, String order, int maxResults,
+                                                                        Consumer<List<GitProjectModel>> listener) {
+        return searchProjectsAsync(searchTerm, sort, order, maxResults, listener, Deadline.none());
     }
 
-    private HttpsURLConnection setupConnection(String searchTerm) throws IOException {
-        URL url = null;
+    /**
+     * Searches GitHub repositories over as many pages as needed for maxResults projects, like
+     * searchProjectsAsync(String, String, String, int, Consumer), with every page fetched within the deadline
+     * @param searchTerm
+     * @param sort
+     * @param order
+     * @param maxResults
+     * @param listener
+     * @param deadline
+     * @return a future with all the projects in ranking order. It completes exceptionally with an IOException if any page fails,
+     * or with a DeadlineExceededException if the deadline is reached first
+     */
+    public CompletableFuture<List<GitProjectModel>> searchProjectsAsync(String searchTerm, String sort, String order, int maxResults,
+                                                                        Consumer<List<GitProjectModel>> listener, Deadline deadline) {
+        int limit = Math.min(maxResults, MAX_SEARCH_RESULTS);
+        if (limit <= 0) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        int perPage = Math.min(limit, MAX_PER_PAGE);
+        PageCollector collector = new PageCollector(limit, listener);
+        URI firstPage;
         try {
-            url = new URL( END_POINT_URL + URLEncoder.encode(searchTerm, "UTF-8"));
-        } catch (MalformedURLException e) {
-            log.error(url + " **Invalid endpoint URL specified.** " + e.getMessage());
-            throw new IOException(url.toString() + " Invalid endpoint URL specified. " + e.getMessage(), e);
-        }
-
-        HttpsURLConnection connection = null;
-        int responseCode = -1;
-        int retry = 0;
-        boolean delay = false;
-        do {
-            if (delay) {
-                try {
-                    Thread.sleep(retry * RETRY_DELAY_MS);
-                } catch (InterruptedException ie) {
-                    // do nothing
+            firstPage = searchUri(searchTerm, sort, order, perPage, 1);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return fetchPage(firstPage, deadline).thenCompose(page -> {
+            collector.add(1, page.projects());
+            int lastPage = lastPage(page, limit, perPage);
+            if (lastPage > 1) {
+                List<CompletableFuture<Void>> pages = new ArrayList<>(lastPage - 1);
+                for (int pageNumber = 2; pageNumber <= lastPage; pageNumber++) {
+                    int number = pageNumber;
+                    try {
+                        pages.add(fetchPage(searchUri(searchTerm, sort, order, perPage, number), deadline).thenAccept(next -> collector.add(number, next.projects())));
+                    } catch (IOException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
                 }
+                return CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0]));
             }
-            connection = (HttpsURLConnection)url.openConnection();
-            connection.connect();
-            responseCode = connection.getResponseCode();
-            boolean retryConnection = AppUtilities.retryConnection(responseCode, url);
-            if (!retryConnection) {
-                return connection;
+            if (lastPage < 0 && page.links.containsKey("next")) {
+                return followNextPages(page, 2, collector, deadline);
             }
-            connection.disconnect();
-            delay = true;
-            retry++;
-        } while (retry <= RETRIES);
+            return CompletableFuture.completedFuture(null);
+        }).thenApply(ignored -> collector.projects());
+    }
+
+    // helper method to follow the next links one page at a time, when the number of pages is not known up front
+    private CompletableFuture<Void> followNextPages(Page page, int pageNumber, PageCollector collector, Deadline deadline) {
+        URI next = page.links.get("next");
+        if (next == null || collector.isFull()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return fetchPage(next, deadline).thenCompose(nextPage -> {
+            collector.add(pageNumber, nextPage.projects());
+            return followNextPages(nextPage, pageNumber + 1, collector, deadline);
+        });
+    }
+
+    private CompletableFuture<Page> fetchPage(URI uri, Deadline deadline) {
+        return transport.sendAsync(upstream, transport.newRequest(uri, deadline).GET().build(), HttpResponse.BodyHandlers.ofInputStream(), deadline).thenCompose(response -> {
+            Map<String, URI> links = parseLinks(response.headers().firstValue("Link").orElse(null));
+            return transport.decodeAsync(upstream, response, gson, GitSearchResultModel.class).thenApply(result -> new Page(result, links));
+        });
+    }
+
+    // the number of pages to fetch from the total count and the last link of the first page, or -1 if neither is known
+    private static int lastPage(Page page, int limit, int perPage) {
+        int lastPage = -1;
+        Integer totalCount = page.result == null ? null : page.result.getTotalCount();
+        if (totalCount != null) {
+            lastPage = (Math.min(limit, totalCount) + perPage - 1) / perPage;
+        }
+        URI last = page.links.get("last");
+        Matcher matcher = last == null ? null : PAGE.matcher(last.getRawQuery() == null ? "" : "?" + last.getRawQuery());
+        if (matcher != null && matcher.find()) {
+            int linkedLastPage = Math.min(Integer.parseInt(matcher.group(1)), (limit + perPage - 1) / perPage);
+            lastPage = lastPage < 0 ? linkedLastPage : Math.min(lastPage, linkedLastPage);
+        } else if (totalCount != null && !page.links.containsKey("next")) {
+            // no more pages, whatever the total count says
+            lastPage = 1;
+        }
+        return lastPage;
+    }
 
-        throw new IOException(url + " Server exception response code: " + responseCode);
+    /**
+     * Parses a Link header, like {@code <https://api.github.com/...&page=2>; rel="next", <...&page=34>; rel="last"}, into the links by rel
+     * @param header
+     * @return
+     */
+    static Map<String, URI> parseLinks(String header) {
+        Map<String, URI> links = new HashMap<>();
+        if (header == null) {
+            return links;
+        }
+        Matcher matcher = LINK.matcher(header);
+        while (matcher.find()) {
+            try {
+                links.put(matcher.group(2), URI.create(matcher.group(1)));
+            } catch (IllegalArgumentException e) {
+                log.warn("Link **Ignoring invalid link** {}", matcher.group(1));
+            }
+        }
+        return links;
+    }
+
+    private HttpRequest.Builder searchRequestBuilder(String searchTerm, Deadline deadline) throws IOException {
+        return transport.newRequest(searchUri(searchTerm, null, null, 0, 0), deadline)
+                .GET();
+    }
+
+    // builds the search url. The sort, order, per_page and page are left out when they are null or 0
+    private URI searchUri(String searchTerm, String sort, String order, int perPage, int page) throws IOException {
+        try {
+            StringBuilder url = new StringBuilder(endPointUrl).append(URLEncoder.encode(searchTerm, "UTF-8"));
+            if (sort != null && !sort.isEmpty()) {
+                url.append("&sort=").append(URLEncoder.encode(sort, "UTF-8"));
+            }
+            if (order != null && !order.isEmpty()) {
+                url.append("&order=").append(URLEncoder.encode(order, "UTF-8"));
+            }
+            if (perPage > 0) {
+                url.append("&per_page=").append(perPage);
+            }
+            if (page > 0) {
+                url.append("&page=").append(page);
+            }
+            return URI.create(url.toString());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            log.error("{} **Invalid endpoint URL specified.** {}", endPointUrl, e.getMessage());
+            throw new IOException(endPointUrl + " Invalid endpoint URL specified. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A page of search results and the links of its Link header
+     */
+    private static final class Page {
+        private final GitSearchResultModel result;
+        private final Map<String, URI> links;
+
+        private Page(GitSearchResultModel result, Map<String, URI> links) {
+            this.result = result;
+            this.links = links;
+        }
+
+        private List<GitProjectModel> projects() {
+            return result == null || result.getItems() == null ? Collections.emptyList() : result.getItems();
+        }
+    }
+
+    /**
+     * Puts the pages back in ranking order as they arrive, and hands them to the listener once the pages before them are in
+     */
+    private static final class PageCollector {
+        private final int limit;
+        private final Consumer<List<GitProjectModel>> listener;
+        private final Map<Integer, List<GitProjectModel>> waiting = new HashMap<>();
+        private final List<GitProjectModel> projects = new ArrayList<>();
+        private int nextPage = 1;
+
+        private PageCollector(int limit, Consumer<List<GitProjectModel>> listener) {
+            this.limit = limit;
+            this.listener = listener;
+        }
+
+        private synchronized void add(int pageNumber, List<GitProjectModel> pageProjects) {
+            waiting.put(pageNumber, pageProjects);
+            List<GitProjectModel> page;
+            while ((page = waiting.remove(nextPage)) != null) {
+                nextPage++;
+                List<GitProjectModel> added = page.subList(0, Math.max(0, Math.min(page.size(), limit - projects.size())));
+                if (added.isEmpty()) {
+                    continue;
+                }
+                projects.addAll(added);
+                if (listener != null) {
+                    listener.accept(Collections.unmodifiableList(new ArrayList<>(added)));
+                }
+            }
+        }
+
+        private synchronized boolean isFull() {
+            return projects.size() >= limit;
+        }
+
+        private synchronized List<GitProjectModel> projects() {
+            return new ArrayList<>(projects);
+        }
+    }
+
+    /**
+     * The ETag of the search results for a search term and the compact results decoded from that response
+     */
+    private static final class Validator {
+        private final String etag;
+        private final GitSearchResultModel result;
+
+        private Validator(String etag, GitSearchResultModel result) {
+            this.etag = etag;
+            this.result = result;
+        }
     }
 }
@@ -0,0 +1,95 @@
+package com.workday.http;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Limits the number of concurrent calls to one upstream, so a slow upstream cannot take all the connections and threads.
+ * The calls over the limit wait in a bounded queue, and the calls over the queue are refused right away.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int active;
+
+    public Bulkhead(String name, int maxConcurrent, int maxQueued) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    /**
+     * Takes a slot for a call. The future completes when the call can be made, or fails if the bulkhead is full.
+     * Every acquired slot has to be given back with release.
+     * @return
+     */
+    public synchronized CompletableFuture<Void> acquire() {
+        if (active < maxConcurrent) {
+            active++;
+            return CompletableFuture.completedFuture(null);
+        }
+        if (waiters.size() >= maxQueued) {
+            return CompletableFuture.failedFuture(new BulkheadFullException(name + " too many concurrent calls: " + active + " active, " + waiters.size() + " queued"));
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // a call cancelled while it waits (by its deadline) leaves the queue, so it does not keep other calls out
+        waiter.whenComplete((ignored, e) -> {
+            if (e != null) {
+                remove(waiter);
+            }
+        });
+        return waiter;
+    }
+
+    // helper method
+    private synchronized void remove(CompletableFuture<Void> waiter) {
+        waiters.remove(waiter);
+    }
+
+    /**
+     * Gives back the slot of a call and hands it to the next waiting call
+     */
+    public void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            do {
+                next = waiters.poll();
+            } while (next != null && next.isDone());
+            if (next == null) {
+                active = Math.max(0, active - 1);
+                return;
+            }
+        }
+        // the slot passes to the waiting call, which is completed outside the lock since its callback makes the call
+        if (!next.complete(null)) {
+            release();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * The exception for a call refused because the bulkhead of its upstream is full
+     */
+    public static class BulkheadFullException extends IOException {
+        public BulkheadFullException(String message) {
+            super(message);
+        }
+    }
+}
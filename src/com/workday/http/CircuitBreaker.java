@@ -0,0 +1,192 @@
+package com.workday.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.Clock;
+
+/**
+ * Circuit breaker for the calls to one upstream.
+ * It keeps the outcome of the last calls in a sliding window. When the share of failed calls or of slow calls in the window
+ * reaches its threshold, the circuit opens and the calls fail right away without reaching the upstream. After the open
+ * duration the circuit is half open and lets a few trial calls through: if they all succeed it closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static Logger log = LogManager.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final int failureRatePercent;
+    private final int slowCallRatePercent;
+    private final long slowCallMs;
+    private final int minimumCalls;
+    private final long openMs;
+    private final int halfOpenCalls;
+    private final Clock clock;
+
+    // ring buffer of the last calls: 0 ok, 1 failed, 2 slow, 3 failed and slow
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+
+    /**
+     * @param name
+     * @param windowSize the number of the last calls the rates are computed on
+     * @param minimumCalls the number of calls needed in the window before the circuit can open
+     * @param failureRatePercent the share of failed calls that opens the circuit
+     * @param slowCallRatePercent the share of slow calls that opens the circuit
+     * @param slowCallMs the duration from which a call is slow
+     * @param openMs how long the circuit stays open before trial calls are let through
+     * @param halfOpenCalls the number of trial calls in the half open state
+     * @param clock
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, int slowCallRatePercent,
+                          long slowCallMs, long openMs, int halfOpenCalls, Clock clock) {
+        this.name = name;
+        this.window = new byte[Math.max(1, windowSize)];
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.slowCallMs = slowCallMs;
+        this.openMs = openMs;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.clock = clock;
+    }
+
+    /**
+     * Tells if a call can be made now. Every permitted call has to be followed by a call to onResult.
+     * @return
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.millis() < openUntil) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenStarted >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenStarted++;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the permit of a call that was not made after all, so it does not hold a trial call of the half open state
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenStarted > 0) {
+            halfOpenStarted--;
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted call
+     * @param failed
+     * @param durationMs
+     */
+    public synchronized void onResult(boolean failed, long durationMs) {
+        boolean slow = durationMs >= slowCallMs;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open();
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (windowCount == window.length) {
+            byte old = window[windowIndex];
+            failures -= old & 1;
+            slowCalls -= (old >> 1) & 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        windowIndex = (windowIndex + 1) % window.length;
+        failures += failed ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+
+        if (windowCount >= minimumCalls
+                && (failures * 100 >= failureRatePercent * windowCount || slowCalls * 100 >= slowCallRatePercent * windowCount)) {
+            open();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.millis() >= openUntil) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Returns the share of failed calls in the window, in percent
+     * @return
+     */
+    public synchronized int getFailureRatePercent() {
+        return windowCount == 0 ? 0 : failures * 100 / windowCount;
+    }
+
+    /**
+     * Returns the share of slow calls in the window, in percent
+     * @return
+     */
+    public synchronized int getSlowCallRatePercent() {
+        return windowCount == 0 ? 0 : slowCalls * 100 / windowCount;
+    }
+
+    // must hold the lock
+    private void open() {
+        openUntil = clock.millis() + openMs;
+        transition(State.OPEN);
+    }
+
+    // must hold the lock
+    private void transition(State newState) {
+        if (state != newState) {
+            log.warn("{} **circuit {} -> {}** failureRate={}% slowCallRate={}%", name, state, newState, getFailureRatePercent(),
+                    getSlowCallRatePercent());
+        }
+        state = newState;
+        halfOpenStarted = 0;
+        halfOpenSucceeded = 0;
+        if (newState != State.OPEN) {
+            windowIndex = 0;
+            windowCount = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+
+    /**
+     * The exception for a call refused because the circuit of its upstream is open
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.workday.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * gzip and deflate content coding for the API responses and the served responses. The streams are read and written as
+ * they go, like the plain ones, and the Inflaters and Deflaters are pooled: each holds native zlib memory (about 256KB for a
+ * Deflater) that is costly to set up for every response. A stream gives its Inflater or Deflater back when it is closed.
+ * The gzip streams are written here instead of using GZIPInputStream and GZIPOutputStream, which always make their own.
+ * Only a single gzip member is read, which is what HTTP servers send.
+ */
+public final class Compression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The Accept-Encoding the API calls are sent with
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int POOL_SIZE = 32;
+    private static final int BUFFER_SIZE = 8192;
+    // the served responses are made on the fly, and the fastest level already gets most of the size reduction on json
+    private static final int LEVEL = Deflater.BEST_SPEED;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final Pool<Inflater> rawInflaters = new Pool<>(() -> new Inflater(true));
+    private static final Pool<Inflater> zlibInflaters = new Pool<>(() -> new Inflater(false));
+    private static final Pool<Deflater> rawDeflaters = new Pool<>(() -> new Deflater(LEVEL, true));
+    private static final Pool<Deflater> zlibDeflaters = new Pool<>(() -> new Deflater(LEVEL, false));
+
+    private Compression() {
+    }
+
+    /**
+     * Returns the stream of the decoded body for the Content-Encoding of a response. A body with no encoding, or the identity
+     * encoding, is returned as it is. The returned stream closes the body.
+     * @param body
+     * @param contentEncoding
+     * @return
+     * @throws IOException if the encoding is not supported or the body does not start like it
+     */
+    public static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding == null ? "" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return body;
+            case GZIP:
+            case "x-gzip":
+                return new GzipInputStream(body, rawInflaters.take());
+            case DEFLATE:
+                return inflate(body);
+            default:
+                body.close();
+                throw new IOException("Unsupported Content-Encoding " + contentEncoding);
+        }
+    }
+
+    /**
+     * Returns a stream that encodes what is written to it in the given encoding (gzip or deflate).
+     * flush() sends what was written so far, so a streamed response still reaches the client as it is written.
+     * Closing the stream ends the encoding and closes the output.
+     * @param out
+     * @param encoding
+     * @return
+     * @throws IOException
+     */
+    public static OutputStream encode(OutputStream out, String encoding) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return new GzipOutputStream(out, rawDeflaters.take());
+        }
+        if (DEFLATE.equals(encoding)) {
+            return new PooledDeflaterOutputStream(out, zlibDeflaters.take(), zlibDeflaters);
+        }
+        throw new IllegalArgumentException("Unsupported encoding " + encoding);
+    }
+
+    /**
+     * Gives the Deflater of a stream from encode back without ending the encoding or closing the output, for a response
+     * that is cut short. Does nothing if the stream is closed already or is not encoded.
+     * @param encoded
+     */
+    public static void abort(OutputStream encoded) {
+        if (encoded instanceof PooledDeflaterOutputStream) {
+            ((PooledDeflaterOutputStream) encoded).abort();
+        }
+    }
+
+    /**
+     * Picks the encoding of a response from the Accept-Encoding of the request: gzip if the client takes it, else deflate,
+     * else null for no encoding
+     * @param acceptEncoding
+     * @return
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        Boolean gzip = null;
+        Boolean deflate = null;
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (name.equals(GZIP) || name.equals("x-gzip")) {
+                gzip = accepted;
+            } else if (name.equals(DEFLATE)) {
+                deflate = accepted;
+            } else if (name.equals("*")) {
+                any = accepted;
+            }
+        }
+        // a coding that is not named is accepted if * is
+        if (gzip != null ? gzip : Boolean.TRUE.equals(any)) {
+            return GZIP;
+        }
+        return (deflate != null ? deflate : Boolean.TRUE.equals(any)) ? DEFLATE : null;
+    }
+
+    // "deflate" is the zlib format, but some servers send raw deflate data for it, so the first two bytes are checked
+    private static InputStream inflate(InputStream body) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(body, 2);
+        int first = in.read();
+        int second = first < 0 ? -1 : in.read();
+        if (second >= 0) {
+            in.unread(second);
+        }
+        if (first >= 0) {
+            in.unread(first);
+        }
+        boolean zlib = first >= 0 && second >= 0 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+        Pool<Inflater> pool = zlib ? zlibInflaters : rawInflaters;
+        return new PooledInflaterInputStream(in, pool.take(), pool);
+    }
+
+    /**
+     * A bounded pool. What does not fit when it is given back is released right away.
+     */
+    private static final class Pool<T> {
+
+        private final BlockingQueue<T> idle = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final Supplier<T> factory;
+
+        private Pool(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        private T take() {
+            T value = idle.poll();
+            return value != null ? value : factory.get();
+        }
+
+        private void release(T value) {
+            if (value instanceof Inflater) {
+                ((Inflater) value).reset();
+                if (!idle.offer(value)) {
+                    ((Inflater) value).end();
+                }
+            } else if (value instanceof Deflater) {
+                ((Deflater) value).reset();
+                if (!idle.offer(value)) {
+                    ((Deflater) value).end();
+                }
+            }
+        }
+    }
+
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+
+        private final Pool<Inflater> pool;
+        private boolean closed;
+
+        PooledInflaterInputStream(InputStream in, Inflater inflater, Pool<Inflater> pool) {
+            super(in, inflater, BUFFER_SIZE);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                pool.release(inf);
+            }
+        }
+    }
+
+    /**
+     * Reads a gzip member: the header, the deflate data and the trailer, which is checked against the data read
+     */
+    private static final class GzipInputStream extends PooledInflaterInputStream {
+
+        private final CRC32 crc = new CRC32();
+        private boolean eof;
+
+        GzipInputStream(InputStream in, Inflater inflater) throws IOException {
+            super(in, inflater, rawInflaters);
+            try {
+                readHeader();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            int read = super.read(b, off, len);
+            if (read < 0) {
+                eof = true;
+                readTrailer();
+                return -1;
+            }
+            crc.update(b, off, read);
+            return read;
+        }
+
+        private void readHeader() throws IOException {
+            CRC32 headerCrc = new CRC32();
+            InputStream header = new CheckedStream(in, headerCrc);
+            if (readUnsignedShort(header) != GZIP_MAGIC) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (readUnsignedByte(header) != 8) {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = readUnsignedByte(header);
+            // modification time, extra flags and operating system
+            skipBytes(header, 6);
+            if ((flags & FEXTRA) != 0) {
+                skipBytes(header, readUnsignedShort(header));
+            }
+            if ((flags & FNAME) != 0) {
+                while (readUnsignedByte(header) != 0) {
+                    // skips the file name
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (readUnsignedByte(header) != 0) {
+                    // skips the comment
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                int expected = (int) headerCrc.getValue() & 0xffff;
+                if (readUnsignedShort(in) != expected) {
+                    throw new ZipException("Corrupt GZIP header");
+                }
+            }
+        }
+
+        private void readTrailer() throws IOException {
+            // the end of the deflate data may have been read into the buffer along with the trailer
+            int remaining = inf.getRemaining();
+            InputStream trailer = remaining > 0 ? new SequenceInputStream(new ByteArrayInputStream(buf, len - remaining, remaining), in) : in;
+            long expectedCrc = readUnsignedInt(trailer);
+            long expectedSize = readUnsignedInt(trailer);
+            if (expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+    }
+
+    private static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+        private final Pool<Deflater> pool;
+        private boolean closed;
+
+        PooledDeflaterOutputStream(OutputStream out, Deflater deflater, Pool<Deflater> pool) {
+            super(out, deflater, BUFFER_SIZE, true);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+                out.close();
+            } finally {
+                pool.release(def);
+            }
+        }
+
+        private void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pool.release(def);
+        }
+    }
+
+    /**
+     * Writes a gzip member: a minimal header, the deflate data and the trailer with the CRC-32 and the size of the data
+     */
+    private static final class GzipOutputStream extends PooledDeflaterOutputStream {
+
+        // magic, deflate, no flags, no modification time, no extra flags, unknown operating system
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final CRC32 crc = new CRC32();
+        private boolean finished;
+
+        GzipOutputStream(OutputStream out, Deflater deflater) throws IOException {
+            super(out, deflater, rawDeflaters);
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            super.finish();
+            writeInt((int) crc.getValue());
+            writeInt((int) def.getBytesRead());
+        }
+
+        private void writeInt(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+            out.write((value >> 16) & 0xff);
+            out.write((value >> 24) & 0xff);
+        }
+    }
+
+    // helper class to compute the CRC-32 of the gzip header while it is read
+    private static final class CheckedStream extends FilterInputStream {
+
+        private final CRC32 crc;
+
+        CheckedStream(InputStream in, CRC32 crc) {
+            super(in);
+            this.crc = crc;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                crc.update(b);
+            }
+            return b;
+        }
+    }
+
+    // helper method
+    private static int readUnsignedByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of GZIP stream");
+        }
+        return b;
+    }
+
+    // helper method, little endian like all the gzip fields
+    private static int readUnsignedShort(InputStream in) throws IOException {
+        return readUnsignedByte(in) | (readUnsignedByte(in) << 8);
+    }
+
+    // helper method
+    private static long readUnsignedInt(InputStream in) throws IOException {
+        return ((long) readUnsignedShort(in)) | ((long) readUnsignedShort(in) << 16);
+    }
+
+    // helper method
+    private static void skipBytes(InputStream in, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readUnsignedByte(in);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.workday.http;
+
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The point in time by which a call, or a whole summary, has to be done. It is created from a time budget and passed down to
+ * every API call made for the summary: the transport gives each attempt at most the time left, does not retry when the
+ * backoff would not end before the deadline, and fails the call (cancelling what is in flight) once the deadline is reached.
+ * The deadline is measured on System.nanoTime, so it is not affected by changes of the wall clock.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Returns the deadline of a call that can take as long as it needs
+     * @return
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the deadline at the end of the time budget, starting now
+     * @param budgetMs the time budget in millis. 0 or less means no deadline
+     * @return
+     */
+    public static Deadline after(long budgetMs) {
+        if (budgetMs <= 0) {
+            return NONE;
+        }
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs));
+    }
+
+    public boolean isNone() {
+        return this == NONE;
+    }
+
+    /**
+     * Returns the time left until the deadline, 0 once it is reached, and Long.MAX_VALUE when there is no deadline
+     * @return
+     */
+    public long remainingMillis() {
+        if (isNone()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return !isNone() && expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Returns a future completed like the given one, or failed with a DeadlineExceededException if the deadline comes first.
+     * The given future is left running, since other callers may share it.
+     * @param future
+     * @param what the call, for the message of the exception
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future, String what) {
+        if (isNone()) {
+            return future;
+        }
+        CompletableFuture<T> bounded = future.thenApply(Function.identity());
+        CompletableFuture<Void> expiry = expiry();
+        expiry.thenRun(() -> bounded.completeExceptionally(new DeadlineExceededException(what + " Deadline exceeded")));
+        bounded.whenComplete((value, e) -> expiry.cancel(false));
+        return bounded;
+    }
+
+    /**
+     * Returns a future that completes when the deadline is reached. Cancelling it cancels the timer.
+     * It never completes when there is no deadline.
+     * @return
+     */
+    public CompletableFuture<Void> expiry() {
+        if (isNone()) {
+            return new CompletableFuture<>();
+        }
+        return RetryClock.system().delay(remainingMillis());
+    }
+
+    @Override
+    public String toString() {
+        return isNone() ? "none" : remainingMillis() + "ms left";
+    }
+
+    /**
+     * The exception for a call that did not complete before its deadline
+     */
+    public static class DeadlineExceededException extends HttpTimeoutException {
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+}
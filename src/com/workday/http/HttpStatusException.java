@@ -0,0 +1,20 @@
+package com.workday.http;
+
+import java.io.IOException;
+
+/**
+ * The exception for a call that got an error response code, so the callers can act on the code (like a 401)
+ */
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    public HttpStatusException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
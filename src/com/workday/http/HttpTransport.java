@@ -0,0 +1,517 @@
+package com.workday.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.workday.app.utils.AppUtilities;
+import com.workday.metrics.UpstreamMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared HTTP transport for the GitHub and Twitter API libraries.
+ * There is one HttpClient for all the calls, so the persistent connections are pooled per host and kept alive between calls.
+ * Every call is made for an Upstream, whose circuit breaker, bulkhead and rate limit it goes through, and is retried as the
+ * RetryPolicy allows (see sendAsync).
+ */
+public class HttpTransport {
+
+    private static final String USER_AGENT = "wday mashup for git and twitter"; // app name
+
+    private static final String HTTP_CONNECT_TIMEOUT_MS = "HTTP_CONNECT_TIMEOUT_MS";
+    private static final String HTTP_READ_TIMEOUT_MS = "HTTP_READ_TIMEOUT_MS";
+    private static final String HTTP_KEEPALIVE_TIMEOUT_S = "HTTP_KEEPALIVE_TIMEOUT_S";
+    private static final String HTTP_MAX_POOLED_CONNECTIONS = "HTTP_MAX_POOLED_CONNECTIONS";
+    private static final String HTTP_CLIENT_THREADS = "HTTP_CLIENT_THREADS";
+    private static final String HTTP_DECODE_THREADS = "HTTP_DECODE_THREADS";
+    private static final String LOG_BODY_SAMPLE_PERCENT = "LOG_BODY_SAMPLE_PERCENT";
+    private static final String LOG_BODY_MAX_CHARS = "LOG_BODY_MAX_CHARS";
+
+    private static Logger log = LogManager.getLogger(HttpTransport.class);
+
+    private static HttpTransport shared;
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final Executor decodeExecutor;
+    private final TransportStats stats = new TransportStats();
+    private final RetryPolicy retryPolicy;
+    private final Properties properties;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+    private final int bodySamplePercent;
+    private final int bodySampleMaxBytes;
+
+    public HttpTransport(Properties properties) {
+        this(properties, new RetryPolicy(properties, RetryClock.system()));
+    }
+
+    /**
+     * Creates the transport and its HttpClient, which negotiates HTTP/2 (and multiplexes the connection) where the server
+     * supports it. The connect timeout applies when a new connection is opened and the read timeout to each request.
+     * Json responses are decoded on a separate decode pool, straight from the response stream.
+     * @param properties
+     * @param retryPolicy
+     */
+    public HttpTransport(Properties properties, RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        this.properties = properties;
+        // the pool settings of the JDK client are system wide and read once, when the first client is created
+        setPoolProperty("jdk.httpclient.keepalive.timeout", AppUtilities.getIntProperty(properties, HTTP_KEEPALIVE_TIMEOUT_S, 0));
+        setPoolProperty("jdk.httpclient.connectionPoolSize", AppUtilities.getIntProperty(properties, HTTP_MAX_POOLED_CONNECTIONS, 0));
+
+        int threads = Math.max(1, AppUtilities.getIntProperty(properties, HTTP_CLIENT_THREADS, 2));
+        Executor executor = Executors.newFixedThreadPool(threads, AppUtilities.daemonThreadFactory("http-transport"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(AppUtilities.getIntProperty(properties, HTTP_CONNECT_TIMEOUT_MS, 10 * 1000)))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        this.readTimeout = Duration.ofMillis(AppUtilities.getIntProperty(properties, HTTP_READ_TIMEOUT_MS, 120 * 1000));
+        int decodeThreads = Math.max(1, AppUtilities.getIntProperty(properties, HTTP_DECODE_THREADS, 4));
+        this.decodeExecutor = Executors.newFixedThreadPool(decodeThreads, AppUtilities.daemonThreadFactory("http-decode"));
+        this.bodySamplePercent = Math.min(100, AppUtilities.getIntProperty(properties, LOG_BODY_SAMPLE_PERCENT, 0));
+        this.bodySampleMaxBytes = Math.max(1, AppUtilities.getIntProperty(properties, LOG_BODY_MAX_CHARS, 1024));
+    }
+
+    /**
+     * Returns the transport shared by the API libraries when they are not given one, configured from the app properties
+     * @return
+     */
+    public static synchronized HttpTransport shared() {
+        if (shared == null) {
+            shared = new HttpTransport(AppUtilities.readProperties());
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the upstream with the given name, created with the settings of this transport the first time it is asked for.
+     * The API libraries sharing this transport share the state of their upstream.
+     * @param name
+     * @return
+     */
+    public Upstream upstream(String name) {
+        return upstreams.computeIfAbsent(name, n -> new Upstream(n, properties, Clock.systemUTC()));
+    }
+
+    /**
+     * Creates a request builder with the read timeout and the headers common to all the API calls
+     * @param uri
+     * @return
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        return newRequest(uri, Deadline.none());
+    }
+
+    /**
+     * Creates a request builder with the headers common to all the API calls (the responses are asked for gzip or deflate
+     * encoded, see Compression), and a timeout of the read timeout or the
+     * time left until the deadline, whichever is shorter.
+     * @param uri
+     * @param deadline
+     * @return
+     */
+    public HttpRequest.Builder newRequest(URI uri, Deadline deadline) {
+        Duration timeout = readTimeout;
+        if (deadline.remainingMillis() < readTimeout.toMillis()) {
+            timeout = Duration.ofMillis(Math.max(1, deadline.remainingMillis()));
+        }
+        return HttpRequest.newBuilder(uri)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", Compression.ACCEPT_ENCODING)
+                .timeout(timeout);
+    }
+
+    /**
+     * Sends the request and returns the decoded response body as a string
+     * @param upstream
+     * @param request
+     * @return a future with the response body. It completes exceptionally with an IOException on errors
+     */
+    public CompletableFuture<String> sendAsync(Upstream upstream, HttpRequest request) {
+        return sendAsync(upstream, request, HttpResponse.BodyHandlers.ofInputStream()).thenApplyAsync(response -> {
+            try (InputStream in = Compression.decode(response.body(), contentEncoding(response))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, decodeExecutor);
+    }
+
+    /**
+     * Sends the request and decodes the json response body into the given type while it is read from the connection.
+     * Fields that the type does not declare are skipped by the reader without being materialized.
+     * @param upstream
+     * @param request
+     * @param gson
+     * @param type
+     * @param <T>
+     * @return a future with the decoded response. It completes exceptionally with an IOException on errors
+     */
+    public <T> CompletableFuture<T> sendAsync(Upstream upstream, HttpRequest request, Gson gson, Class<T> type) {
+        return sendAsync(upstream, request, gson, type, Deadline.none());
+    }
+
+    /**
+     * Sends the request and decodes the json response body into the given type, within the deadline
+     * (see sendAsync(Upstream, HttpRequest, HttpResponse.BodyHandler, Deadline))
+     * @param upstream
+     * @param request
+     * @param gson
+     * @param type
+     * @param deadline
+     * @param <T>
+     * @return a future with the decoded response. It completes exceptionally with an IOException on errors
+     */
+    public <T> CompletableFuture<T> sendAsync(Upstream upstream, HttpRequest request, Gson gson, Class<T> type, Deadline deadline) {
+        return sendAsync(upstream, request, HttpResponse.BodyHandlers.ofInputStream(), deadline)
+                .thenCompose(response -> decodeAsync(upstream, response, gson, type));
+    }
+
+    /**
+     * Decodes the json body of a streamed response into the given type on the decode pool, inflating it first if the
+     * response is gzip or deflate encoded
+     * @param upstream the upstream the response is from, to record the decode time in its metrics
+     * @param response
+     * @param gson
+     * @param type
+     * @param <T>
+     * @return a future with the decoded response. It completes exceptionally with an IOException on errors
+     */
+    public <T> CompletableFuture<T> decodeAsync(Upstream upstream, HttpResponse<InputStream> response, Gson gson, Class<T> type) {
+        // the stream is read on the decode pool and not on the client threads, which have to keep feeding the stream
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return decode(Compression.decode(response.body(), contentEncoding(response)), gson, type);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                upstream.getMetrics().getDecode().recordNanos(System.nanoTime() - start);
+            }
+        }, decodeExecutor);
+    }
+
+    /**
+     * Decodes a json stream into the given type without reading it into a String first. The stream is closed.
+     * @param in
+     * @param gson
+     * @param type
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    public static <T> T decode(InputStream in, Gson gson, Class<T> type) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return gson.fromJson(reader, type);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid json response. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends the request asynchronously once the rate limit of the upstream allows it, and retries it as the RetryPolicy allows.
+     * The call is refused right away while the circuit of the upstream is open, and waits for a slot of the bulkhead and a
+     * token of the rate limit of the upstream before it is sent.
+     * If the API returns a 500 error or the connection fails, the call is retried with exponential backoff. If the rate limit
+     * is exceeded anyway (429, or 403 with no calls remaining), the retry waits for the Retry-After or for the rate limit
+     * window to reset. The retries are scheduled on a timer instead of sleeping, so no thread is held while waiting.
+     * The stages of the call (queue, first byte, body and decode), its status code, its retries and the bytes received are
+     * recorded in the UpstreamMetrics of the upstream.
+     * @param upstream
+     * @param request
+     * @param bodyHandler
+     * @param <T>
+     * @return a future with the successful response. It completes exceptionally with an IOException on errors.
+     * Cancelling it cancels the call in flight or the pending retry.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(Upstream upstream, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return sendAsync(upstream, request, bodyHandler, Deadline.none());
+    }
+
+    /**
+     * Sends the request like sendAsync(Upstream, HttpRequest, HttpResponse.BodyHandler), within the deadline.
+     * A retry is not scheduled if its backoff would end after the deadline, and once the deadline is reached the call
+     * fails with a DeadlineExceededException and the step in flight (the wait for the rate limit or the bulkhead, the
+     * request, or the pending retry) is cancelled. Each attempt gets at most the time left.
+     * The correlation id in the log context of the caller (see AppUtilities.REQUEST_ID) is set in the log context of the
+     * completion steps of the call. It is not sent to the API.
+     * @param upstream
+     * @param request
+     * @param bodyHandler
+     * @param deadline
+     * @param <T>
+     * @return a future with the successful response. It completes exceptionally with an IOException on errors.
+     * Cancelling it cancels the call in flight or the pending retry.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(Upstream upstream, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                                                            Deadline deadline) {
+        if (deadline.isExpired()) {
+            return CompletableFuture.failedFuture(new Deadline.DeadlineExceededException(request.uri() + " Deadline exceeded before the call"));
+        }
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> pending = new AtomicReference<>();
+        // the completion steps of the call run on other threads, so they are given the correlation id of the caller
+        String requestId = ThreadContext.get(AppUtilities.REQUEST_ID);
+        CompletableFuture<Void> expiry = deadline.expiry();
+        expiry.thenRun(() -> {
+            if (result.completeExceptionally(new Deadline.DeadlineExceededException(request.uri() + " Deadline exceeded"))) {
+                AppUtilities.runWithRequestId(requestId, () -> log.warn("{} **Deadline exceeded, call cancelled**", request.uri()));
+            }
+        });
+        result.whenComplete((response, e) -> {
+            expiry.cancel(false);
+            CompletableFuture<?> step = pending.get();
+            if (result.isCompletedExceptionally() && step != null) {
+                step.cancel(true);
+            }
+        });
+        attempt(upstream, request, requestId, bodyHandler, deadline, 0, result, pending);
+        return result;
+    }
+
+    private <T> void attempt(Upstream upstream, HttpRequest request, String requestId, HttpResponse.BodyHandler<T> bodyHandler,
+                             Deadline deadline, int retry, CompletableFuture<HttpResponse<T>> result, AtomicReference<CompletableFuture<?>> pending) {
+        if (result.isDone()) {
+            return;
+        }
+        CircuitBreaker circuitBreaker = upstream.getCircuitBreaker();
+        if (!circuitBreaker.tryAcquire()) {
+            log.warn("{} **Circuit open, call refused**", request.uri());
+            result.completeExceptionally(new CircuitBreaker.CircuitOpenException(request.uri() + " Circuit of " + upstream + " is open"));
+            return;
+        }
+        Bulkhead bulkhead = upstream.getBulkhead();
+        RateLimiter rateLimiter = upstream.getRateLimiter();
+        UpstreamMetrics metrics = upstream.getMetrics();
+        long queuedAt = System.nanoTime();
+        AtomicBoolean slotAcquired = new AtomicBoolean();
+        // nanoTime may be negative, so whether the call was sent is kept apart from when
+        AtomicBoolean sent = new AtomicBoolean();
+        AtomicLong sentAt = new AtomicLong();
+        CompletableFuture<Void> slot = bulkhead.acquire();
+        pending.set(slot);
+        CompletableFuture<HttpResponse<T>> call = slot
+                .thenCompose(ignored -> {
+                    slotAcquired.set(true);
+                    CompletableFuture<Void> permit = rateLimiter.acquire();
+                    pending.set(permit);
+                    return permit;
+                })
+                .thenCompose(ignored -> {
+                    stats.requestStarted();
+                    retryPolicy.onCall(upstream.getName());
+                    long now = System.nanoTime();
+                    metrics.getQueue().recordNanos(now - queuedAt);
+                    sentAt.set(now);
+                    sent.set(true);
+                    HttpResponse.BodyHandler<T> handler = new MeteredBodyHandler<>(bodyHandler, metrics, now);
+                    if (sampleBody()) {
+                        handler = new SampledBodyHandler<>(handler, request, requestId, bodySampleMaxBytes);
+                    }
+                    CompletableFuture<HttpResponse<T>> send = httpClient.sendAsync(request, handler);
+                    pending.set(send);
+                    return send;
+                });
+        if (result.isDone()) {
+            pending.get().cancel(true);
+        }
+        call.whenComplete((response, e) -> AppUtilities.runWithRequestId(requestId, () -> onCompleted(upstream, request, requestId,
+                bodyHandler, deadline, retry, result, pending, slotAcquired.get(), sent.get(), sentAt.get(), response, e)));
+    }
+
+    // tells if the call failed because it was cancelled or ran out of time, rather than because of the upstream
+    private static boolean isCancelled(Throwable e, Deadline deadline) {
+        Throwable cause = e == null ? null : AppUtilities.unwrap(e);
+        return cause instanceof CancellationException || cause instanceof Deadline.DeadlineExceededException
+                || (cause != null && deadline.isExpired());
+    }
+
+    // releases the slot of the call, records its outcome, and completes the result or schedules a retry
+    private <T> void onCompleted(Upstream upstream, HttpRequest request, String requestId, HttpResponse.BodyHandler<T> bodyHandler,
+                                 Deadline deadline, int retry, CompletableFuture<HttpResponse<T>> result, AtomicReference<CompletableFuture<?>> pending,
+                                 boolean slotAcquired, boolean sent, long sentAt, HttpResponse<T> response, Throwable e) {
+        CircuitBreaker circuitBreaker = upstream.getCircuitBreaker();
+        UpstreamMetrics metrics = upstream.getMetrics();
+        if (slotAcquired) {
+            upstream.getBulkhead().release();
+        }
+        if (sent) {
+            boolean cancelled = response == null && isCancelled(e, deadline);
+            stats.requestCompleted(response == null ? null : response.version(), e != null);
+            if (response != null) {
+                metrics.onResponse(response.statusCode());
+            } else if (!cancelled) {
+                metrics.onNetworkError();
+            }
+            upstream.getRateLimiter().onResponse(response);
+            if (cancelled) {
+                // the caller gave up, which says nothing about the health of the upstream
+                circuitBreaker.release();
+            } else {
+                // the rate limited responses are paced by the rate limiter, so only the server errors and the
+                // I/O failures count against the upstream
+                long durationMs = (System.nanoTime() - sentAt) / 1000000;
+                circuitBreaker.onResult(response == null || response.statusCode() >= 500, durationMs);
+            }
+        } else {
+            circuitBreaker.release();
+        }
+        if (result.isDone()) {
+            if (response != null) {
+                discard(response);
+            }
+            return;
+        }
+        if (e != null) {
+            onFailure(upstream, request, requestId, bodyHandler, deadline, retry, result, pending, null, AppUtilities.unwrap(e));
+            return;
+        }
+        if (retryPolicy.isRetryable(response)) {
+            discard(response);
+            String kind = response.statusCode() >= 500 ? " Server exception response code: " : " Rate limit exceeded response code: ";
+            onFailure(upstream, request, requestId, bodyHandler, deadline, retry, result, pending, response,
+                    new HttpStatusException(request.uri() + kind + response.statusCode(), response.statusCode()));
+            return;
+        }
+        try {
+            checkResponseCode(response.statusCode(), request.uri());
+            result.complete(response);
+        } catch (IOException ioe) {
+            discard(response);
+            result.completeExceptionally(ioe);
+        }
+    }
+
+    // schedules the next retry on the retry clock, or fails the call if it cannot be retried
+    private <T> void onFailure(Upstream upstream, HttpRequest request, String requestId, HttpResponse.BodyHandler<T> bodyHandler,
+                               Deadline deadline, int retry, CompletableFuture<HttpResponse<T>> result, AtomicReference<CompletableFuture<?>> pending,
+                               HttpResponse<?> response, Throwable failure) {
+        int nextRetry = retry + 1;
+        boolean retryable = response != null || retryPolicy.isRetryable(failure);
+        boolean circuitOpen = upstream.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN;
+        long delayMs = retryPolicy.delayMs(nextRetry, response);
+        // a retry before the Retry-After of the server would be refused again
+        boolean afterRetryAfter = delayMs != RetryPolicy.NO_RETRY;
+        // a retry that cannot start before the deadline is not worth a token of the retry budget
+        boolean beforeDeadline = delayMs < deadline.remainingMillis();
+        if (!retryable || circuitOpen || !afterRetryAfter || !beforeDeadline || !retryPolicy.tryRetry(upstream.getName(), nextRetry)) {
+            if (retryable && !afterRetryAfter) {
+                log.warn("{} **Not retrying, the server asks to wait longer than the max retry delay**. {}", request.uri(), failure.getMessage());
+            } else if (retryable && !beforeDeadline) {
+                log.warn("{} **Not retrying, the deadline comes before the retry in** {}ms. {}", request.uri(), delayMs, failure.getMessage());
+            }
+            result.completeExceptionally(AppUtilities.asIOException(failure));
+            return;
+        }
+        log.warn("{} **Retrying** {} in {}ms. {}", request.uri(), nextRetry, delayMs, failure.getMessage());
+        stats.retried();
+        upstream.getMetrics().onRetry();
+        CompletableFuture<Void> delay = retryPolicy.getClock().delay(delayMs);
+        pending.set(delay);
+        if (result.isDone()) {
+            delay.cancel(true);
+            return;
+        }
+        delay.thenRun(() -> AppUtilities.runWithRequestId(requestId,
+                () -> attempt(upstream, request, requestId, bodyHandler, deadline, nextRetry, result, pending)));
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Returns the live request and connection statistics of this transport
+     * @return
+     */
+    public TransportStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Helper method to inspect the responseCode of a response that is not retried.
+     * A 304 is only returned for conditional requests and is left to the caller.
+     * @param responseCode
+     * @param endpoint
+     * @throws IOException
+     */
+    static void checkResponseCode(int responseCode, URI endpoint) throws IOException {
+
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            log.debug("{} **OK**", endpoint);
+        }
+        else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            log.debug("{} **Not modified**", endpoint);
+        }
+        else if (responseCode >= 400 & responseCode < 500) {
+            log.error("{} **Client exception response code**. {}", endpoint, responseCode);
+            throw new HttpStatusException(endpoint + " Client exception response code: " + responseCode, responseCode);
+        }
+        else if (responseCode >= 500) {
+            log.error("{} **Server exception response code**. {}", endpoint, responseCode);
+            throw new HttpStatusException(endpoint + " Server exception response code: " + responseCode, responseCode);
+        }
+        else {
+            log.error("{} **unknown response code**. {}", endpoint, responseCode);
+            throw new HttpStatusException(endpoint + " Unknown exception response code: " + responseCode, responseCode);
+        }
+    }
+
+    /**
+     * Closes the body stream of a response that is not used, so its connection goes back to the pool
+     * @param response
+     */
+    public static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException e) {
+                log.debug("{} **Error closing response body** {}", response.uri(), e.getMessage());
+            }
+        }
+    }
+
+    // helper method
+    static String contentEncoding(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding").orElse(null);
+    }
+
+    // picks the calls whose response body is logged: LOG_BODY_SAMPLE_PERCENT of them, up to LOG_BODY_MAX_CHARS, at debug level
+    private boolean sampleBody() {
+        return bodySamplePercent > 0 && SampledBodyHandler.isEnabled() && ThreadLocalRandom.current().nextInt(100) < bodySamplePercent;
+    }
+
+    private static void setPoolProperty(String name, int value) {
+        if (value > 0 && System.getProperty(name) == null) {
+            System.setProperty(name, String.valueOf(value));
+        }
+    }
+}
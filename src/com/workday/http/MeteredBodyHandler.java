@@ -0,0 +1,79 @@
+package com.workday.http;
+
+import com.workday.metrics.UpstreamMetrics;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Body handler that records the first byte and body stages of a call, and the body bytes received (as sent, so compressed
+ * for an encoded response), in the metrics of its upstream, around the body handler of the caller.
+ * The first byte stage ends when the response headers arrive, and the body stage when the last body byte is received.
+ * For a streamed body the last byte is received as the stream is read, so the body stage overlaps the decode stage.
+ */
+class MeteredBodyHandler<T> implements HttpResponse.BodyHandler<T> {
+
+    private final HttpResponse.BodyHandler<T> delegate;
+    private final UpstreamMetrics metrics;
+    private final long sentAt;
+
+    MeteredBodyHandler(HttpResponse.BodyHandler<T> delegate, UpstreamMetrics metrics, long sentAt) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.sentAt = sentAt;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo responseInfo) {
+        long headersAt = System.nanoTime();
+        metrics.getFirstByte().recordNanos(headersAt - sentAt);
+        return new MeteredBodySubscriber<>(delegate.apply(responseInfo), metrics, headersAt);
+    }
+
+    private static class MeteredBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final UpstreamMetrics metrics;
+        private final long headersAt;
+
+        MeteredBodySubscriber(HttpResponse.BodySubscriber<T> delegate, UpstreamMetrics metrics, long headersAt) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+            this.headersAt = headersAt;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            long bytes = 0;
+            for (int i = 0; i < buffers.size(); i++) {
+                bytes += buffers.get(i).remaining();
+            }
+            metrics.onBytesReceived(bytes);
+            delegate.onNext(buffers);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            metrics.getBody().recordNanos(System.nanoTime() - headersAt);
+            delegate.onComplete();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.workday.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket for the rate limit of one API credential, driven by the rate limit headers of the responses.
+ * GitHub sends X-RateLimit-Limit / X-RateLimit-Remaining / X-RateLimit-Reset and Twitter the same headers in lower case
+ * (x-rate-limit-*), with the reset as epoch seconds. The tokens are the remaining calls minus the calls in flight.
+ * Once they run out the requests are queued and sent when the window resets, so the quota is used in full but never exceeded.
+ * Until the first headers are seen the limit is unknown and the requests are not held.
+ */
+public class RateLimiter {
+
+    private static final String[] LIMIT_HEADERS = {"X-RateLimit-Limit", "x-rate-limit-limit"};
+    private static final String[] REMAINING_HEADERS = {"X-RateLimit-Remaining", "x-rate-limit-remaining"};
+    private static final String[] RESET_HEADERS = {"X-RateLimit-Reset", "x-rate-limit-reset"};
+    private static final long UNKNOWN_RESET_DELAY_MS = 1000;
+
+    private static Logger log = LogManager.getLogger(RateLimiter.class);
+
+    private final String name;
+    private final Clock clock;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private final LongAdder queued = new LongAdder();
+
+    private long limit = -1;
+    private long tokens = -1;
+    private long resetAtMs;
+    private int inFlight;
+    private boolean resetScheduled;
+
+    public RateLimiter(String name, Clock clock) {
+        this.name = name;
+        this.clock = clock;
+    }
+
+    /**
+     * Takes a token for a request. The future completes right away if there is one, or when the rate limit window resets.
+     * Every acquire has to be followed by a call to onResponse (with or without a response).
+     * @return
+     */
+    public CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            refill();
+            if (waiters.isEmpty() && tokens != 0) {
+                if (tokens > 0) {
+                    tokens--;
+                }
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            queued.increment();
+            scheduleReset();
+            log.debug("{} **rate limit reached, request queued until reset** {}", name, waiters.size());
+            return waiter;
+        }
+    }
+
+    /**
+     * Gives back the token of a request and updates the bucket from the rate limit headers of its response
+     * @param response the response, or null if the request failed without one
+     */
+    public void onResponse(HttpResponse<?> response) {
+        List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            inFlight = Math.max(0, inFlight - 1);
+            if (response != null) {
+                update(response.headers());
+            }
+            ready = drain();
+        }
+        complete(ready);
+    }
+
+    /**
+     * Tells if the response was refused because the rate limit was exceeded
+     * @param response
+     * @return
+     */
+    public static boolean isRateLimited(HttpResponse<?> response) {
+        if (response.statusCode() == 429) {
+            return true;
+        }
+        OptionalLong remaining = header(response.headers(), REMAINING_HEADERS);
+        return response.statusCode() == 403 && remaining.isPresent() && remaining.getAsLong() == 0;
+    }
+
+    /**
+     * Tells if the response has the calls remaining and the reset time of the window, which is what the bucket needs to hold
+     * the requests until the reset
+     * @param response
+     * @return
+     */
+    public static boolean hasReset(HttpResponse<?> response) {
+        return header(response.headers(), REMAINING_HEADERS).isPresent() && header(response.headers(), RESET_HEADERS).isPresent();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the calls left in the current window (less the calls in flight), or -1 if the limit is not known yet
+     * @return
+     */
+    public synchronized long getRemaining() {
+        return tokens;
+    }
+
+    /**
+     * Returns the limit of calls per window, or -1 if the limit is not known yet
+     * @return
+     */
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the number of requests waiting for the window to reset
+     * @return
+     */
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    /**
+     * Returns the number of requests that had to wait for the window to reset
+     * @return
+     */
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    // must hold the lock
+    private void update(HttpHeaders headers) {
+        OptionalLong remaining = header(headers, REMAINING_HEADERS);
+        if (!remaining.isPresent()) {
+            return;
+        }
+        OptionalLong newLimit = header(headers, LIMIT_HEADERS);
+        OptionalLong reset = header(headers, RESET_HEADERS);
+        if (newLimit.isPresent()) {
+            limit = newLimit.getAsLong();
+        }
+        if (reset.isPresent()) {
+            resetAtMs = TimeUnit.SECONDS.toMillis(reset.getAsLong());
+        }
+        tokens = Math.max(0, remaining.getAsLong() - inFlight);
+    }
+
+    // must hold the lock. Starts a new window once the reset time has passed.
+    private void refill() {
+        if (tokens >= 0 && resetAtMs > 0 && clock.millis() >= resetAtMs) {
+            tokens = limit > 0 ? Math.max(0, limit - inFlight) : -1;
+            resetAtMs = 0;
+        }
+    }
+
+    // must hold the lock. Hands the available tokens to the queued requests.
+    private List<CompletableFuture<Void>> drain() {
+        refill();
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        while (!waiters.isEmpty() && tokens != 0) {
+            CompletableFuture<Void> waiter = waiters.poll();
+            if (waiter.isDone()) {
+                continue;
+            }
+            if (tokens > 0) {
+                tokens--;
+            }
+            inFlight++;
+            ready.add(waiter);
+        }
+        if (!waiters.isEmpty()) {
+            scheduleReset();
+        }
+        return ready;
+    }
+
+    // must hold the lock
+    private void scheduleReset() {
+        if (resetScheduled) {
+            return;
+        }
+        resetScheduled = true;
+        long delay = resetAtMs > 0 ? Math.max(0, resetAtMs - clock.millis()) : UNKNOWN_RESET_DELAY_MS;
+        CompletableFuture.runAsync(this::onReset, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void onReset() {
+        List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            resetScheduled = false;
+            if (resetAtMs == 0 && tokens == 0) {
+                // the window reset is not known, so try one request to learn it
+                tokens = 1;
+            }
+            ready = drain();
+        }
+        complete(ready);
+    }
+
+    // the futures are completed outside the lock, since their callbacks send the requests. A waiter cancelled in between
+    // (by the deadline of its request) never sends its request, so its token is given back.
+    private void complete(List<CompletableFuture<Void>> ready) {
+        int unused = 0;
+        for (CompletableFuture<Void> waiter : ready) {
+            if (!waiter.complete(null)) {
+                unused++;
+            }
+        }
+        if (unused > 0) {
+            giveBack(unused);
+        }
+    }
+
+    // gives back the tokens taken for requests that were not sent, and hands them to the queued requests
+    private void giveBack(int unused) {
+        List<CompletableFuture<Void>> ready;
+        synchronized (this) {
+            inFlight = Math.max(0, inFlight - unused);
+            if (tokens >= 0) {
+                tokens = limit > 0 ? Math.min(limit, tokens + unused) : tokens + unused;
+            }
+            ready = drain();
+        }
+        complete(ready);
+    }
+
+    private static OptionalLong header(HttpHeaders headers, String[] names) {
+        for (String name : names) {
+            String value = headers.firstValue(name).orElse(null);
+            if (value != null) {
+                try {
+                    return OptionalLong.of(Long.parseLong(value.trim()));
+                } catch (NumberFormatException e) {
+                    log.debug("{} **invalid rate limit header** {}", name, value);
+                }
+            }
+        }
+        return OptionalLong.empty();
+    }
+}
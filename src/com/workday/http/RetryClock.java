@@ -0,0 +1,60 @@
+package com.workday.http;
+
+import com.workday.app.utils.AppUtilities;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time source of the RetryPolicy: the current time and a timer for the delays between the retries.
+ * The system clock schedules the delays on a timer thread, so no thread sleeps while waiting for a retry.
+ * Tests can plug in a clock that completes the delays right away.
+ */
+public interface RetryClock {
+
+    /**
+     * Returns the current time in epoch millis
+     * @return
+     */
+    long millis();
+
+    /**
+     * Returns a future that completes after the delay. Cancelling the future cancels the timer.
+     * @param delayMs
+     * @return
+     */
+    CompletableFuture<Void> delay(long delayMs);
+
+    /**
+     * Returns the clock on the system time, with a shared daemon timer thread
+     * @return
+     */
+    static RetryClock system() {
+        return SystemRetryClock.INSTANCE;
+    }
+
+    final class SystemRetryClock implements RetryClock {
+
+        private static final SystemRetryClock INSTANCE = new SystemRetryClock();
+
+        private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(AppUtilities.daemonThreadFactory("retry-timer"));
+
+        private SystemRetryClock() {}
+
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public CompletableFuture<Void> delay(long delayMs) {
+            CompletableFuture<Void> delay = new CompletableFuture<>();
+            ScheduledFuture<?> scheduled = timer.schedule(() -> delay.complete(null), Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+            delay.whenComplete((ignored, e) -> scheduled.cancel(false));
+            return delay;
+        }
+    }
+}
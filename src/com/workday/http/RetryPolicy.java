@@ -0,0 +1,211 @@
+package com.workday.http;
+
+import com.workday.app.utils.AppUtilities;
+
+import java.net.ConnectException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides if and when a failed call to an upstream is retried.
+ * The delay grows exponentially from the base delay up to the max delay, with jitter so the retries of many callers do not
+ * line up. A Retry-After header on the response is used instead, when there is one, and a call asked to wait longer than
+ * the max delay is not retried at all, since an earlier retry would only be refused again.
+ * Each upstream has a retry budget: every call adds a fraction of a retry to it and every retry takes a whole one,
+ * so when an upstream is failing the retries stay a bounded share of the calls instead of multiplying the load.
+ */
+public class RetryPolicy {
+
+    private static final String RETRY_MAX_RETRIES = "RETRY_MAX_RETRIES";
+    private static final String RETRY_BASE_DELAY_MS = "RETRY_BASE_DELAY_MS";
+    private static final String RETRY_MAX_DELAY_MS = "RETRY_MAX_DELAY_MS";
+    private static final String RETRY_BUDGET_PERCENT = "RETRY_BUDGET_PERCENT";
+    private static final String RETRY_BUDGET_MAX = "RETRY_BUDGET_MAX";
+
+    /**
+     * The delay returned for a call that is not to be retried
+     */
+    public static final long NO_RETRY = -1;
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double budgetRatio;
+    private final double budgetMax;
+    private final RetryClock clock;
+    private final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+
+    public RetryPolicy(Properties properties, RetryClock clock) {
+        this(AppUtilities.getIntProperty(properties, RETRY_MAX_RETRIES, 3),
+                AppUtilities.getIntProperty(properties, RETRY_BASE_DELAY_MS, 500),
+                AppUtilities.getIntProperty(properties, RETRY_MAX_DELAY_MS, 30 * 1000),
+                AppUtilities.getIntProperty(properties, RETRY_BUDGET_PERCENT, 20) / 100.0,
+                AppUtilities.getIntProperty(properties, RETRY_BUDGET_MAX, 10),
+                clock);
+    }
+
+    /**
+     * @param maxRetries the max number of retries of a call
+     * @param baseDelayMs the delay before the first retry
+     * @param maxDelayMs the max delay before a retry, also the longest Retry-After a call is retried after
+     * @param budgetRatio the fraction of a retry each call adds to the retry budget of its upstream
+     * @param budgetMax the max number of retries the budget can save up
+     * @param clock
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs, double budgetRatio, double budgetMax, RetryClock clock) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.budgetRatio = budgetRatio;
+        this.budgetMax = budgetMax;
+        this.clock = clock;
+    }
+
+    public RetryClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Records a call to the upstream, which adds to its retry budget
+     * @param upstream
+     */
+    public void onCall(String upstream) {
+        budget(upstream).deposit();
+    }
+
+    /**
+     * Tells if a call to the upstream can make the given retry, and takes it from the retry budget if so
+     * @param upstream
+     * @param retry the number of the retry, starting at 1
+     * @return
+     */
+    public boolean tryRetry(String upstream, int retry) {
+        return retry <= maxRetries && budget(upstream).withdraw();
+    }
+
+    /**
+     * Tells if a response status is worth retrying: a server error or a refused rate limit
+     * @param response
+     * @return
+     */
+    public boolean isRetryable(HttpResponse<?> response) {
+        return response.statusCode() >= 500 || RateLimiter.isRateLimited(response);
+    }
+
+    /**
+     * Tells if a failed call is worth retrying: the connection could not be opened or the response did not come in time
+     * @param failure
+     * @return
+     */
+    public boolean isRetryable(Throwable failure) {
+        Throwable cause = AppUtilities.unwrap(failure);
+        return cause instanceof ConnectException || cause instanceof HttpTimeoutException;
+    }
+
+    /**
+     * Returns the delay before the given retry, from the Retry-After header of the response if it has one
+     * @param retry the number of the retry, starting at 1
+     * @param response the failed response, or null if the call failed without one
+     * @return the delay, or NO_RETRY if the Retry-After is longer than the max delay
+     */
+    public long delayMs(int retry, HttpResponse<?> response) {
+        if (response != null) {
+            Optional<Long> retryAfter = retryAfterMs(response);
+            if (retryAfter.isPresent()) {
+                return retryAfter.get() > maxDelayMs ? NO_RETRY : retryAfter.get();
+            }
+            if (RateLimiter.isRateLimited(response) && RateLimiter.hasReset(response)) {
+                // the rate limiter holds the retry until the window resets
+                return 0;
+            }
+        }
+        return backoffMs(retry);
+    }
+
+    /**
+     * Returns the exponential backoff before the given retry with "equal jitter": half the delay is fixed and half random
+     * @param retry the number of the retry, starting at 1
+     * @return
+     */
+    public long backoffMs(int retry) {
+        long delay = baseDelayMs << Math.min(30, Math.max(0, retry - 1));
+        delay = Math.min(maxDelayMs, delay);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Parses the Retry-After header, either a number of seconds or an HTTP date
+     * @param response
+     * @return
+     */
+    public Optional<Long> retryAfterMs(HttpResponse<?> response) {
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if (!header.isPresent()) {
+            return Optional.empty();
+        }
+        String value = header.get().trim();
+        try {
+            return Optional.of(Math.max(0, Long.parseLong(value) * 1000));
+        } catch (NumberFormatException e) {
+            try {
+                long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Optional.of(Math.max(0, at - clock.millis()));
+            } catch (DateTimeParseException de) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Returns the retries left in the retry budget of the upstream
+     * @param upstream
+     * @return
+     */
+    public double getBudget(String upstream) {
+        return budget(upstream).balance();
+    }
+
+    private RetryBudget budget(String upstream) {
+        return budgets.computeIfAbsent(upstream, name -> new RetryBudget(budgetRatio, budgetMax));
+    }
+
+    /**
+     * Retry budget of one upstream. It starts full so the first failures can be retried.
+     */
+    private static final class RetryBudget {
+        private final double ratio;
+        private final double max;
+        private double balance;
+
+        private RetryBudget(double ratio, double max) {
+            this.ratio = ratio;
+            this.max = max;
+            this.balance = max;
+        }
+
+        synchronized void deposit() {
+            balance = Math.min(max, balance + ratio);
+        }
+
+        synchronized boolean withdraw() {
+            if (balance < 1) {
+                return false;
+            }
+            balance -= 1;
+            return true;
+        }
+
+        synchronized double balance() {
+            return balance;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.workday.http;
+
+import com.workday.app.utils.AppUtilities;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Body handler that logs the start of a response body at debug level once it is received, for the calls picked by the sampling
+ * of the transport (LOG_BODY_SAMPLE_PERCENT). At most LOG_BODY_MAX_CHARS bytes of the body are copied aside as they go by,
+ * so the caller still reads (or streams) the whole body and a large body is never held twice. The sample of an encoded body
+ * is inflated for the log, as far as the bytes copied allow.
+ */
+class SampledBodyHandler<T> implements HttpResponse.BodyHandler<T> {
+
+    private static Logger log = LogManager.getLogger(SampledBodyHandler.class);
+
+    private final HttpResponse.BodyHandler<T> delegate;
+    private final HttpRequest request;
+    private final String requestId;
+    private final int maxBytes;
+
+    SampledBodyHandler(HttpResponse.BodyHandler<T> delegate, HttpRequest request, String requestId, int maxBytes) {
+        this.delegate = delegate;
+        this.request = request;
+        this.requestId = requestId;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Tells if the samples are logged at all, so the transport does not sample calls for nothing
+     * @return
+     */
+    static boolean isEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo responseInfo) {
+        return new SampledBodySubscriber<>(delegate.apply(responseInfo), request, requestId, responseInfo.statusCode(),
+                responseInfo.headers().firstValue("Content-Encoding").orElse(null), maxBytes);
+    }
+
+    private static class SampledBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final HttpRequest request;
+        private final String requestId;
+        private final int statusCode;
+        private final String contentEncoding;
+        private final byte[] sample;
+        private int sampled;
+        private long received;
+
+        SampledBodySubscriber(HttpResponse.BodySubscriber<T> delegate, HttpRequest request, String requestId, int statusCode,
+                              String contentEncoding, int maxBytes) {
+            this.delegate = delegate;
+            this.request = request;
+            this.requestId = requestId;
+            this.statusCode = statusCode;
+            this.contentEncoding = contentEncoding;
+            this.sample = new byte[maxBytes];
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                received += buffer.remaining();
+                int length = Math.min(buffer.remaining(), sample.length - sampled);
+                if (length > 0) {
+                    // a duplicate, so the position of the buffer handed to the caller is left as it is
+                    buffer.duplicate().get(sample, sampled, length);
+                    sampled += length;
+                }
+            }
+            delegate.onNext(buffers);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            AppUtilities.runWithRequestId(requestId, () -> log.debug("{} **Response sample** status={} bytes={}{} {}{}", request.uri(),
+                    statusCode, received, contentEncoding == null ? "" : " " + contentEncoding, text(), received > sampled ? " **(truncated)**" : ""));
+            delegate.onComplete();
+        }
+
+        // helper method to get the text of the sample, inflated up to the size of the sample if the body is encoded
+        private String text() {
+            if (contentEncoding == null) {
+                return new String(sample, 0, sampled, StandardCharsets.UTF_8);
+            }
+            byte[] text = new byte[sample.length];
+            int length = 0;
+            try (InputStream in = Compression.decode(new ByteArrayInputStream(sample, 0, sampled), contentEncoding)) {
+                int read;
+                while (length < text.length && (read = in.read(text, length, text.length - length)) > 0) {
+                    length += read;
+                }
+            } catch (IOException e) {
+                // the sample ends before the encoded body does, the text inflated so far is logged
+            }
+            return new String(text, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.workday.http;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request and connection statistics of the shared HttpTransport.
+ * The JDK client does not expose its connection pool, so the reuse of the pool is seen through the
+ * protocol versions of the responses (HTTP/2 responses share one multiplexed connection per host).
+ */
+public class TransportStats {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder http2Responses = new LongAdder();
+    private final LongAdder http11Responses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    void requestStarted() {
+        requests.increment();
+        inFlight.increment();
+    }
+
+    void requestCompleted(HttpClient.Version version, boolean failed) {
+        inFlight.decrement();
+        if (failed) {
+            failures.increment();
+        } else if (version == HttpClient.Version.HTTP_2) {
+            http2Responses.increment();
+        } else {
+            http11Responses.increment();
+        }
+    }
+
+    void retried() {
+        retries.increment();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getHttp2Responses() {
+        return http2Responses.sum();
+    }
+
+    public long getHttp11Responses() {
+        return http11Responses.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + getRequests() + " inFlight=" + getInFlight() + " http2=" + getHttp2Responses()
+                + " http1.1=" + getHttp11Responses() + " failures=" + getFailures() + " retries=" + getRetries();
+    }
+}
@@ -0,0 +1,79 @@
+package com.workday.http;
+
+import com.workday.app.utils.AppUtilities;
+import com.workday.metrics.MetricsRegistry;
+import com.workday.metrics.UpstreamMetrics;
+
+import java.time.Clock;
+import java.util.Properties;
+
+/**
+ * An upstream API (GitHub or Twitter) as seen by the HttpTransport.
+ * It holds the per upstream state that the transport applies to every call to it: the rate limit of its credential,
+ * its circuit breaker and its bulkhead, and the metrics of the calls to it. The settings are read from the properties file, and are the same for both upstreams.
+ */
+public class Upstream {
+
+    private static final String CIRCUIT_WINDOW_SIZE = "CIRCUIT_WINDOW_SIZE";
+    private static final String CIRCUIT_MINIMUM_CALLS = "CIRCUIT_MINIMUM_CALLS";
+    private static final String CIRCUIT_FAILURE_RATE_PERCENT = "CIRCUIT_FAILURE_RATE_PERCENT";
+    private static final String CIRCUIT_SLOW_CALL_RATE_PERCENT = "CIRCUIT_SLOW_CALL_RATE_PERCENT";
+    private static final String CIRCUIT_SLOW_CALL_MS = "CIRCUIT_SLOW_CALL_MS";
+    private static final String CIRCUIT_OPEN_MS = "CIRCUIT_OPEN_MS";
+    private static final String CIRCUIT_HALF_OPEN_CALLS = "CIRCUIT_HALF_OPEN_CALLS";
+    private static final String BULKHEAD_MAX_CONCURRENT = "BULKHEAD_MAX_CONCURRENT";
+    private static final String BULKHEAD_MAX_QUEUED = "BULKHEAD_MAX_QUEUED";
+
+    private final String name;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final UpstreamMetrics metrics;
+
+    public Upstream(String name) {
+        this(name, new Properties(), Clock.systemUTC());
+    }
+
+    public Upstream(String name, Properties properties, Clock clock) {
+        this.name = name;
+        this.rateLimiter = new RateLimiter(name, clock);
+        this.circuitBreaker = new CircuitBreaker(name,
+                AppUtilities.getIntProperty(properties, CIRCUIT_WINDOW_SIZE, 20),
+                AppUtilities.getIntProperty(properties, CIRCUIT_MINIMUM_CALLS, 10),
+                AppUtilities.getIntProperty(properties, CIRCUIT_FAILURE_RATE_PERCENT, 50),
+                AppUtilities.getIntProperty(properties, CIRCUIT_SLOW_CALL_RATE_PERCENT, 80),
+                AppUtilities.getIntProperty(properties, CIRCUIT_SLOW_CALL_MS, 10 * 1000),
+                AppUtilities.getIntProperty(properties, CIRCUIT_OPEN_MS, 30 * 1000),
+                AppUtilities.getIntProperty(properties, CIRCUIT_HALF_OPEN_CALLS, 3),
+                clock);
+        this.bulkhead = new Bulkhead(name,
+                AppUtilities.getIntProperty(properties, BULKHEAD_MAX_CONCURRENT, 20),
+                AppUtilities.getIntProperty(properties, BULKHEAD_MAX_QUEUED, 200));
+        this.metrics = MetricsRegistry.shared().upstream(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public UpstreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,95 @@
+package com.workday.load;
+
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.utils.AppUtilities;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Drives a GitTwitterMashupApp at a set rate of summaries per second and reports the throughput and latency percentiles.
+ * The requests are sent on schedule whether or not the earlier ones are done (an open workload), cycling through the terms,
+ * and each latency is measured from the time its request was due. Run it against the stub server (see StubUpstreamServer)
+ * to load test offline.
+ */
+public class LoadGenerator {
+
+    private static Logger log = LogManager.getLogger(LoadGenerator.class);
+
+    // the outcomes of the summaries that have no latency
+    private static final long NOT_DONE = -1;
+    private static final long FAILED = -2;
+
+    private final GitTwitterMashupApp app;
+
+    public LoadGenerator(GitTwitterMashupApp app) {
+        this.app = app;
+    }
+
+    /**
+     * Sends requestsPerSecond summaries a second for durationSeconds, then waits up to drainSeconds for the last ones
+     * @param terms the search terms, used in turn
+     * @param requestsPerSecond
+     * @param durationSeconds
+     * @param drainSeconds
+     * @return the report of the run. The summaries still not done after the drain are counted apart from the failed ones
+     * @throws InterruptedException
+     */
+    public LoadReport run(List<String> terms, int requestsPerSecond, int durationSeconds, int drainSeconds) throws InterruptedException {
+        if (terms.isEmpty() || requestsPerSecond <= 0 || durationSeconds <= 0) {
+            throw new IllegalArgumentException("Need at least one term, a positive rate and a positive duration");
+        }
+        int total = requestsPerSecond * durationSeconds;
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        // the latency or the outcome of each summary, written by the threads completing them
+        AtomicLongArray outcomes = new AtomicLongArray(total);
+        for (int i = 0; i < total; i++) {
+            outcomes.set(i, NOT_DONE);
+        }
+        AtomicInteger sent = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(total);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(AppUtilities.daemonThreadFactory("load-generator"));
+        long startNanos = System.nanoTime();
+        ScheduledFuture<?> schedule = scheduler.scheduleAtFixedRate(() -> {
+            int index = sent.getAndIncrement();
+            if (index >= total) {
+                return;
+            }
+            long dueNanos = startNanos + index * periodNanos;
+            app.getGitProjectsSummaryAsync(terms.get(index % terms.size())).whenComplete((json, e) -> {
+                outcomes.set(index, e != null ? FAILED : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueNanos));
+                done.countDown();
+            });
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+
+        try {
+            if (!done.await(durationSeconds + (long) drainSeconds, TimeUnit.SECONDS)) {
+                log.warn("load **Summaries still not done after the drain** {}", done.getCount());
+            }
+        } finally {
+            schedule.cancel(false);
+            scheduler.shutdownNow();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        // each outcome is read once, so the counts add up even while late summaries complete
+        long[] snapshot = new long[total];
+        for (int i = 0; i < total; i++) {
+            snapshot[i] = outcomes.get(i);
+        }
+        long[] succeeded = Arrays.stream(snapshot).filter(latency -> latency >= 0).sorted().toArray();
+        long failed = Arrays.stream(snapshot).filter(outcome -> outcome == FAILED).count();
+        long notDone = total - succeeded.length - failed;
+        return new LoadReport(total, succeeded.length, failed, notDone, elapsedMs, succeeded);
+    }
+}
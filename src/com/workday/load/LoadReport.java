@@ -0,0 +1,73 @@
+package com.workday.load;
+
+/**
+ * Immutable result of a load run: the throughput and the latency percentiles of the successful summaries.
+ * The latencies are measured from the time each request was due, so a stalled app shows in the percentiles
+ * instead of silently lowering the request rate.
+ */
+public class LoadReport {
+
+    private final long requests;
+    private final long succeeded;
+    private final long failed;
+    private final long notDone;
+    private final long elapsedMs;
+    private final long[] sortedLatenciesMicros;
+
+    LoadReport(long requests, long succeeded, long failed, long notDone, long elapsedMs, long[] sortedLatenciesMicros) {
+        this.requests = requests;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.notDone = notDone;
+        this.elapsedMs = elapsedMs;
+        this.sortedLatenciesMicros = sortedLatenciesMicros;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the number of summaries still not done when the run ended
+     * @return
+     */
+    public long getNotDone() {
+        return notDone;
+    }
+
+    /**
+     * Returns the number of summaries completed per second, successful or not. The summaries not done are left out
+     * @return
+     */
+    public double getThroughput() {
+        return elapsedMs == 0 ? 0 : (succeeded + failed) * 1000.0 / elapsedMs;
+    }
+
+    /**
+     * Returns the latency at the percentile of the successful summaries, in microseconds
+     * @param percentile between 0 and 100
+     * @return
+     */
+    public long getLatencyMicros(double percentile) {
+        if (sortedLatenciesMicros.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatenciesMicros.length) - 1;
+        return sortedLatenciesMicros[Math.max(0, Math.min(index, sortedLatenciesMicros.length - 1))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d succeeded=%d failed=%d notDone=%d throughput=%.1f/s latency ms p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                requests, succeeded, failed, notDone, getThroughput(), getLatencyMicros(50) / 1000.0, getLatencyMicros(90) / 1000.0,
+                getLatencyMicros(99) / 1000.0, getLatencyMicros(99.9) / 1000.0, getLatencyMicros(100) / 1000.0);
+    }
+}
@@ -0,0 +1,19 @@
+package com.workday.metrics;
+
+/**
+ * JMX view of a LatencyHistogram, in milliseconds
+ */
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,146 @@
+package com.workday.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * The metrics of the process: the UpstreamMetrics of each upstream API and the latency histograms of the stages of a
+ * summary. The metrics are created on first use and registered as MXBeans under com.workday.mashup, so they can be
+ * watched with jconsole, and writePrometheus renders them in the Prometheus text format for the /metrics endpoint.
+ * The metrics are shared by every app in the process, like the platform MBean server they are registered with.
+ */
+public class MetricsRegistry {
+
+    private static Logger log = LogManager.getLogger(MetricsRegistry.class);
+
+    public static final String DOMAIN = "com.workday.mashup";
+
+    private static final MetricsRegistry SHARED = new MetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+
+    private final MBeanServer mbeanServer;
+    private final Map<String, UpstreamMetrics> upstreams = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> summaryStages = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry
+     * @param mbeanServer the server to register the metrics with, or null not to register them
+     */
+    public MetricsRegistry(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    /**
+     * Returns the registry of the process
+     * @return
+     */
+    public static MetricsRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the metrics of an upstream API, creating them on first use
+     * @param upstream
+     * @return
+     */
+    public UpstreamMetrics upstream(String upstream) {
+        return upstreams.computeIfAbsent(upstream, name -> {
+            UpstreamMetrics metrics = new UpstreamMetrics(name);
+            register("type=Upstream,name=" + name, metrics);
+            for (LatencyHistogram stage : metrics.getStages()) {
+                register("type=UpstreamLatency,upstream=" + name + ",stage=" + stage.getName(), stage);
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * Returns the latency histogram of a stage of a summary, creating it on first use
+     * @param stage
+     * @return
+     */
+    public LatencyHistogram summaryStage(String stage) {
+        return summaryStages.computeIfAbsent(stage, name -> {
+            LatencyHistogram histogram = new LatencyHistogram(name);
+            register("type=SummaryLatency,stage=" + name, histogram);
+            return histogram;
+        });
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format. Latencies are summaries in seconds with the 0.5,
+     * 0.99 and 0.999 quantiles.
+     * @param out
+     * @throws IOException
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        out.append("# TYPE mashup_upstream_latency_seconds summary\n");
+        for (UpstreamMetrics metrics : upstreams.values()) {
+            for (LatencyHistogram stage : metrics.getStages()) {
+                writeSummary(out, "mashup_upstream_latency_seconds",
+                        "upstream=\"" + metrics.getUpstream() + "\",stage=\"" + stage.getName() + "\"", stage);
+            }
+        }
+        out.append("# TYPE mashup_upstream_responses_total counter\n");
+        for (UpstreamMetrics metrics : upstreams.values()) {
+            for (Map.Entry<String, Long> status : metrics.getStatusCounts().entrySet()) {
+                writeSample(out, "mashup_upstream_responses_total",
+                        "upstream=\"" + metrics.getUpstream() + "\",code=\"" + status.getKey() + "\"", status.getValue());
+            }
+        }
+        writeCounter(out, "mashup_upstream_network_errors_total", UpstreamMetrics::getNetworkErrors);
+        writeCounter(out, "mashup_upstream_retries_total", UpstreamMetrics::getRetries);
+        writeCounter(out, "mashup_upstream_received_bytes_total", UpstreamMetrics::getBytesReceived);
+        out.append("# TYPE mashup_summary_latency_seconds summary\n");
+        for (LatencyHistogram stage : summaryStages.values()) {
+            writeSummary(out, "mashup_summary_latency_seconds", "stage=\"" + stage.getName() + "\"", stage);
+        }
+    }
+
+    // helper method
+    private void register(String properties, Object mbean) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!mbeanServer.isRegistered(name)) {
+                mbeanServer.registerMBean(mbean, name);
+            }
+        } catch (Exception e) {
+            log.warn("metrics **could not register MBean** {} {}", properties, e);
+        }
+    }
+
+    // helper method
+    private void writeCounter(Appendable out, String metric, ToLongFunction<UpstreamMetrics> counter)
+            throws IOException {
+        out.append("# TYPE ").append(metric).append(" counter\n");
+        for (UpstreamMetrics metrics : upstreams.values()) {
+            writeSample(out, metric, "upstream=\"" + metrics.getUpstream() + "\"", counter.applyAsLong(metrics));
+        }
+    }
+
+    // helper method
+    private static void writeSummary(Appendable out, String metric, String labels, LatencyHistogram histogram)
+            throws IOException {
+        for (String quantile : new String[]{"0.5", "0.99", "0.999"}) {
+            double seconds = histogram.getPercentileMicros(Double.parseDouble(quantile) * 100) / 1_000_000.0;
+            writeSample(out, metric, labels + ",quantile=\"" + quantile + "\"", seconds);
+        }
+        writeSample(out, metric + "_sum", labels, histogram.getSumMicros() / 1_000_000.0);
+        writeSample(out, metric + "_count", labels, histogram.getCount());
+    }
+
+    // helper method
+    private static void writeSample(Appendable out, String metric, String labels, Object value) throws IOException {
+        out.append(metric).append('{').append(labels).append("} ").append(String.valueOf(value)).append('\n');
+    }
+}
@@ -0,0 +1,119 @@
+package com.workday.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot path metrics of the calls to an upstream API: a latency histogram per stage of a call and counters for the
+ * responses by status code, the network errors, the retries and the body bytes received.
+ * The stages are queue (waiting for the rate limiter and the bulkhead), first byte (request sent until the response
+ * headers arrive), body (response headers until the last body byte) and decode (reading the body into the model).
+ * The JDK HttpClient does not expose when a connection is established, so the connect time of a new connection is part of
+ * the first byte stage.
+ */
+public class UpstreamMetrics implements UpstreamMetricsMXBean {
+
+    public static final String QUEUE = "queue";
+    public static final String FIRST_BYTE = "first_byte";
+    public static final String BODY = "body";
+    public static final String DECODE = "decode";
+
+    private static final int MAX_STATUS = 600;
+
+    private final String upstream;
+    private final LatencyHistogram queue = new LatencyHistogram(QUEUE);
+    private final LatencyHistogram firstByte = new LatencyHistogram(FIRST_BYTE);
+    private final LatencyHistogram body = new LatencyHistogram(BODY);
+    private final LatencyHistogram decode = new LatencyHistogram(DECODE);
+    private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS);
+    private final LongAdder networkErrors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    public UpstreamMetrics(String upstream) {
+        this.upstream = upstream;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    public LatencyHistogram getQueue() {
+        return queue;
+    }
+
+    public LatencyHistogram getFirstByte() {
+        return firstByte;
+    }
+
+    public LatencyHistogram getBody() {
+        return body;
+    }
+
+    public LatencyHistogram getDecode() {
+        return decode;
+    }
+
+    /**
+     * Returns the stage histograms, in the order of a call
+     * @return
+     */
+    public LatencyHistogram[] getStages() {
+        return new LatencyHistogram[]{queue, firstByte, body, decode};
+    }
+
+    /**
+     * Counts a response by its status code
+     * @param status
+     */
+    public void onResponse(int status) {
+        if (status > 0 && status < MAX_STATUS) {
+            statusCounts.incrementAndGet(status);
+        }
+    }
+
+    public void onNetworkError() {
+        networkErrors.increment();
+    }
+
+    public void onRetry() {
+        retries.increment();
+    }
+
+    public void onBytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getNetworkErrors() {
+        return networkErrors.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Returns the count of the responses of each status code that was received
+     * @return
+     */
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int status = 0; status < MAX_STATUS; status++) {
+            long count = statusCounts.get(status);
+            if (count > 0) {
+                counts.put(String.valueOf(status), count);
+            }
+        }
+        return counts;
+    }
+}
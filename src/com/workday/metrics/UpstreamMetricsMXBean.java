@@ -0,0 +1,17 @@
+package com.workday.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the counters of an upstream API
+ */
+public interface UpstreamMetricsMXBean {
+
+    long getRetries();
+
+    long getNetworkErrors();
+
+    long getBytesReceived();
+
+    Map<String, Long> getStatusCounts();
+}
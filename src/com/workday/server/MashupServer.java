@@ -0,0 +1,397 @@
+package com.workday.server;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.MashupAppException;
+import com.workday.app.SummaryFormat;
+import com.workday.app.utils.AppUtilities;
+import com.workday.http.Compression;
+import com.workday.http.Deadline;
+import com.workday.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the mashup summaries over HTTP with the JDK's built-in server, so the JVM, the connections to GitHub and Twitter,
+ * the bearer token and the caches stay warm across requests. All the requests share one GitTwitterMashupApp.
+ *
+ * GET /summary?q=term[&format=json|ndjson][&budget_ms=n] streams the summary as compact JSON (the default) or NDJSON, one project
+ * at a time. budget_ms shortens the time budget of the summary, from 1 up to SUMMARY_TIME_BUDGET_MS (a 400 otherwise);
+ * if the GitHub search does not finish in time the answer is a 504. The X-Request-Id header of the request (or a new id if it has none) is the correlation id of
+ * the summary: it is logged with its log lines and returned in the X-Request-Id header of the response. It is not sent to GitHub or Twitter.
+ * GET /health answers 200 while the server takes requests and 503 once it is shutting down.
+ * GET /metrics returns the latencies and counters of the MetricsRegistry in the Prometheus text format.
+ * The responses of SERVER_COMPRESSION_MIN_BYTES or more are gzip or deflate encoded for the clients that accept it (0 turns
+ * the compression off). A streamed summary is held back until it reaches that size, so a small summary is still sent as it is.
+ *
+ * Each request is handled on a virtual thread when the JVM has them (Java 21 and later),
+ * otherwise on a pool of SERVER_THREADS threads. Stopping the server stops taking new requests,
+ * waits up to SERVER_SHUTDOWN_GRACE_S for the requests in flight and then closes the app.
+ */
+public class MashupServer {
+
+    private static final String SERVER_THREADS = "SERVER_THREADS";
+    private static final String SERVER_SHUTDOWN_GRACE_S = "SERVER_SHUTDOWN_GRACE_S";
+    private static final String SUMMARY_TIME_BUDGET_MS = "SUMMARY_TIME_BUDGET_MS";
+    private static final String SERVER_COMPRESSION_MIN_BYTES = "SERVER_COMPRESSION_MIN_BYTES";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+    private static final Pattern REQUEST_ID_PATTERN = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private static Logger log = LogManager.getLogger(MashupServer.class);
+
+    private final GitTwitterMashupApp app;
+    private final Properties properties;
+    private final Gson gson = AppUtilities.gsonBuilder().create();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final int compressionMinBytes;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MashupServer(GitTwitterMashupApp app, Properties properties) {
+        this.app = app;
+        this.properties = properties;
+        this.compressionMinBytes = AppUtilities.getIntProperty(properties, SERVER_COMPRESSION_MIN_BYTES, 1024);
+    }
+
+    /**
+     * Starts taking requests on the port, on all the interfaces. Port 0 picks a free port (see getPort).
+     * @param port
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        start(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts taking requests on the address
+     * @param address
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The server is already started");
+        }
+        server = HttpServer.create(address, 0);
+        executor = createExecutor(properties);
+        server.setExecutor(executor);
+        server.createContext("/summary", this::handleSummary);
+        server.createContext("/health", this::handleHealth);
+        server.createContext("/metrics", this::handleMetrics);
+        running.set(true);
+        server.start();
+        log.info("**Mashup server started on port** {}", getPort());
+    }
+
+    /**
+     * Returns the port the server listens on
+     * @return
+     */
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops taking requests, waits up to SERVER_SHUTDOWN_GRACE_S for the requests in flight and closes the app
+     */
+    public synchronized void stop() {
+        if (server == null || !running.compareAndSet(true, false)) {
+            return;
+        }
+        int graceSeconds = Math.max(0, AppUtilities.getIntProperty(properties, SERVER_SHUTDOWN_GRACE_S, 10));
+        log.info("**Mashup server stopping, waiting up to** {}s **for the requests in flight**", graceSeconds);
+        // stops the listener and waits for the exchanges in flight to finish
+        server.stop(graceSeconds);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(graceSeconds, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        app.close();
+        log.info("**Mashup server stopped**");
+    }
+
+    // handles GET /summary?q=term[&format=json|ndjson][&budget_ms=n]
+    private void handleSummary(HttpExchange exchange) throws IOException {
+        String requestId = requestId(exchange);
+        exchange.getResponseHeaders().set(REQUEST_ID_HEADER, requestId);
+        ThreadContext.put(AppUtilities.REQUEST_ID, requestId);
+        try {
+            serveSummary(exchange);
+        } finally {
+            ThreadContext.remove(AppUtilities.REQUEST_ID);
+        }
+    }
+
+    private void serveSummary(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            if (!running.get()) {
+                sendError(exchange, 503, "The server is shutting down");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String searchTerm = query.get("q");
+            if (searchTerm == null || searchTerm.trim().isEmpty()) {
+                sendError(exchange, 400, "Missing search term. Use /summary?q=term");
+                return;
+            }
+            SummaryFormat format;
+            try {
+                format = SummaryFormat.valueOf(query.getOrDefault("format", "json").toUpperCase());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "Unknown format " + query.get("format") + ". Use json or ndjson");
+                return;
+            }
+            int maxBudgetMs = AppUtilities.getIntProperty(properties, SUMMARY_TIME_BUDGET_MS, 0);
+            int budgetMs = maxBudgetMs;
+            if (query.containsKey("budget_ms")) {
+                try {
+                    budgetMs = Integer.parseInt(query.get("budget_ms").trim());
+                } catch (NumberFormatException e) {
+                    sendError(exchange, 400, "Invalid budget_ms " + query.get("budget_ms"));
+                    return;
+                }
+                // a client can shorten the budget of its summary, but not turn it off or go past the budget of the server
+                if (budgetMs <= 0 || (maxBudgetMs > 0 && budgetMs > maxBudgetMs)) {
+                    sendError(exchange, 400, "Invalid budget_ms " + budgetMs + ". Use 1 to "
+                            + (maxBudgetMs > 0 ? Integer.toString(maxBudgetMs) : Integer.toString(Integer.MAX_VALUE)));
+                    return;
+                }
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", format == SummaryFormat.NDJSON ? NDJSON_CONTENT_TYPE : JSON_CONTENT_TYPE);
+            ResponseStream body = new ResponseStream(exchange, encoding(exchange), compressionMinBytes);
+            try {
+                try {
+                    app.getGitProjectsSummary(searchTerm.trim(), body, format, Deadline.after(budgetMs));
+                } catch (MashupAppException e) {
+                    log.warn("/summary **Error getting summary for** {} {}", searchTerm, e.getMessage());
+                    if (!body.isCommitted()) {
+                        sendError(exchange, e.getCause() instanceof Deadline.DeadlineExceededException ? 504 : 502, e.getMessage());
+                        return;
+                    }
+                    // the status is already sent, so the client sees a truncated body
+                    return;
+                }
+                body.finish();
+            } finally {
+                // gives the encoder back when the summary failed or the client went away mid response
+                body.abort();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // handles GET /health
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            boolean up = running.get();
+            sendJson(exchange, up ? 200 : 503, Collections.singletonMap("status", up ? "UP" : "DRAINING"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // handles GET /metrics
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder metrics = new StringBuilder();
+            MetricsRegistry.shared().writePrometheus(metrics);
+            send(exchange, 200, PROMETHEUS_CONTENT_TYPE, metrics.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // helper method to take the correlation id of the client, unless it could forge log lines or headers
+    private static String requestId(HttpExchange exchange) {
+        String requestId = exchange.getRequestHeaders().getFirst(REQUEST_ID_HEADER);
+        return requestId != null && REQUEST_ID_PATTERN.matcher(requestId).matches() ? requestId : AppUtilities.newRequestId();
+    }
+
+    private void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        sendJson(exchange, statusCode, Collections.singletonMap("error", message));
+    }
+
+    private void sendJson(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        send(exchange, statusCode, JSON_CONTENT_TYPE, gson.toJson(body).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // helper method to send a whole body, encoded if the client accepts it and it is large enough
+    private void send(HttpExchange exchange, int statusCode, String contentType, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        String encoding = encoding(exchange);
+        if (encoding != null && bytes.length >= compressionMinBytes) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(bytes.length / 4);
+            try (OutputStream out = Compression.encode(encoded, encoding)) {
+                out.write(bytes);
+            }
+            bytes = encoded.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // helper method to pick the encoding of the response from the Accept-Encoding of the request.
+    // Null if the client accepts none, or the compression is off.
+    private String encoding(HttpExchange exchange) {
+        if (compressionMinBytes <= 0) {
+            return null;
+        }
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return Compression.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    // helper method to parse the query string of the request into a map of decoded parameters
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    // creates the executor for the requests: a virtual thread per request when the JVM has them, otherwise a bounded pool
+    private static ExecutorService createExecutor(Properties properties) {
+        try {
+            ExecutorService virtualThreads = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.info("**Handling requests on virtual threads**");
+            return virtualThreads;
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(1, AppUtilities.getIntProperty(properties, SERVER_THREADS, 16));
+            log.info("**Virtual threads are not available, handling requests on** {} **threads**", threads);
+            return Executors.newFixedThreadPool(threads, AppUtilities.daemonThreadFactory("mashup-server"));
+        }
+    }
+
+    /**
+     * The body of a streamed response. The 200 status and the headers are sent on the first write, so an error before any
+     * project is written can still be answered with an error status. When the response is to be encoded, the body is held
+     * back until it reaches the minimum size to compress, and a body that ends below it is sent as it is (see finish).
+     */
+    private static class ResponseStream extends OutputStream {
+
+        private final HttpExchange exchange;
+        private final String encoding;
+        private byte[] held;
+        private int heldBytes;
+        private OutputStream body;
+
+        ResponseStream(HttpExchange exchange, String encoding, int minBytes) {
+            this.exchange = exchange;
+            this.encoding = encoding;
+            this.held = encoding == null ? null : new byte[minBytes];
+        }
+
+        boolean isCommitted() {
+            return body != null;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                if (encoding != null) {
+                    exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                }
+                // chunked, since the length is not known up front
+                exchange.sendResponseHeaders(200, 0);
+                body = encoding == null ? exchange.getResponseBody() : Compression.encode(exchange.getResponseBody(), encoding);
+                if (heldBytes > 0) {
+                    body.write(held, 0, heldBytes);
+                }
+                held = null;
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (body == null && held != null && heldBytes + length < held.length) {
+                System.arraycopy(bytes, offset, held, heldBytes, length);
+                heldBytes += length;
+                return;
+            }
+            body().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // what is held back stays held until there is enough of it to compress
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        /**
+         * Ends the response once the summary is written
+         * @throws IOException
+         */
+        void finish() throws IOException {
+            if (body != null) {
+                // ends the encoding, if any
+                body.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, heldBytes == 0 ? -1 : heldBytes);
+            if (heldBytes > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(held, 0, heldBytes);
+                }
+            }
+        }
+
+        /**
+         * Releases the encoder of a response that was not finished, without ending the encoding. Does nothing once the
+         * response is finished
+         */
+        void abort() {
+            if (body != null) {
+                Compression.abort(body);
+            }
+        }
+    }
+}
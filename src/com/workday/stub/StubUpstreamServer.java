@@ -0,0 +1,328 @@
+package com.workday.stub;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.app.utils.AppUtilities;
+import com.workday.http.Compression;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local stand-in for the GitHub search, Twitter OAuth2 token and Twitter search endpoints, to load test the app offline
+ * without spending the API rate limits. Point GITHUB_BASE_URL and TWITTER_BASE_URL at it.
+ *
+ * In replay mode (the default) the responses are the fixtures recorded for the same request in STUB_RECORD_DIR, if any,
+ * or else the default fixtures in STUB_FIXTURES_DIR. In record mode (STUB_MODE=record) the requests are forwarded to the real
+ * APIs (STUB_GITHUB_UPSTREAM, STUB_TWITTER_UPSTREAM) and the successful responses are saved to STUB_RECORD_DIR for replay.
+ * The token responses are not saved, as they hold a real bearer token, so the token fixture is replayed for them.
+ *
+ * The responses are gzip or deflate encoded for the requests that accept it, like the real APIs do.
+ *
+ * Faults can be injected into the replayed responses:
+ *   STUB_LATENCY_MS and STUB_LATENCY_JITTER_MS delay each response, without holding a server thread.
+ *   STUB_ERROR_PERCENT of the responses are a 503 and STUB_THROTTLE_PERCENT a 429 with a Retry-After of 1 second.
+ *   STUB_RATE_LIMIT requests per STUB_RATE_LIMIT_WINDOW_S for each API, sent in the rate limit headers of the API.
+ *   Over the limit GitHub answers 403 and Twitter 429, like the real APIs. 0 leaves the headers out.
+ */
+public class StubUpstreamServer {
+
+    private static final String GITHUB_SEARCH_PATH = "/search/repositories";
+    private static final String TWITTER_TOKEN_PATH = "/oauth2/token";
+    private static final String TWITTER_SEARCH_PATH = "/1.1/search/tweets.json";
+
+    private static Logger log = LogManager.getLogger(StubUpstreamServer.class);
+
+    private static final Gson gson = new Gson();
+
+    private final Path fixturesDir;
+    private final Path recordDir;
+    private final boolean record;
+    private final String githubUpstream;
+    private final String twitterUpstream;
+    private final int latencyMs;
+    private final int latencyJitterMs;
+    private final int errorPercent;
+    private final int throttlePercent;
+    private final StubRateLimit githubRateLimit;
+    private final StubRateLimit twitterRateLimit;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private HttpClient upstreamClient;
+
+    public StubUpstreamServer(Properties properties) {
+        this.fixturesDir = Paths.get(properties.getProperty("STUB_FIXTURES_DIR", "resources/stub").trim());
+        String recordDirectory = properties.getProperty("STUB_RECORD_DIR", "").trim();
+        this.recordDir = recordDirectory.isEmpty() ? null : Paths.get(recordDirectory);
+        this.record = "record".equalsIgnoreCase(properties.getProperty("STUB_MODE", "replay").trim());
+        if (record && recordDir == null) {
+            throw new IllegalArgumentException("STUB_RECORD_DIR is needed to record");
+        }
+        this.githubUpstream = properties.getProperty("STUB_GITHUB_UPSTREAM", "https://api.github.com").trim();
+        this.twitterUpstream = properties.getProperty("STUB_TWITTER_UPSTREAM", "https://api.twitter.com").trim();
+        this.latencyMs = Math.max(0, AppUtilities.getIntProperty(properties, "STUB_LATENCY_MS", 0));
+        this.latencyJitterMs = Math.max(0, AppUtilities.getIntProperty(properties, "STUB_LATENCY_JITTER_MS", 0));
+        this.errorPercent = AppUtilities.getIntProperty(properties, "STUB_ERROR_PERCENT", 0);
+        this.throttlePercent = AppUtilities.getIntProperty(properties, "STUB_THROTTLE_PERCENT", 0);
+        int rateLimit = AppUtilities.getIntProperty(properties, "STUB_RATE_LIMIT", 0);
+        int rateLimitWindowS = Math.max(1, AppUtilities.getIntProperty(properties, "STUB_RATE_LIMIT_WINDOW_S", 60));
+        this.githubRateLimit = new StubRateLimit(rateLimit, rateLimitWindowS, Clock.systemUTC());
+        this.twitterRateLimit = new StubRateLimit(rateLimit, rateLimitWindowS, Clock.systemUTC());
+    }
+
+    /**
+     * Starts the stub on the port of localhost. Port 0 picks a free port (see getBaseUrl).
+     * @param port
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        executor = Executors.newFixedThreadPool(4, AppUtilities.daemonThreadFactory("stub-server"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(AppUtilities.daemonThreadFactory("stub-latency"));
+        if (record) {
+            upstreamClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+        }
+        server.setExecutor(executor);
+        server.createContext(GITHUB_SEARCH_PATH, exchange -> handle(exchange, "git-search", githubUpstream, githubRateLimit, false));
+        server.createContext(TWITTER_TOKEN_PATH, exchange -> handle(exchange, "oauth2-token", twitterUpstream, null, true));
+        server.createContext(TWITTER_SEARCH_PATH, exchange -> handle(exchange, "tweets-search", twitterUpstream, twitterRateLimit, true));
+        server.start();
+        log.info("**Stub upstream server started on** {}{}", getBaseUrl(), record ? " **recording to** " + recordDir : "");
+    }
+
+    /**
+     * Returns the base url of the stub, to use as GITHUB_BASE_URL and TWITTER_BASE_URL
+     * @return
+     */
+    public synchronized String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the stub right away
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            scheduler.shutdownNow();
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange, String endpoint, String upstream, StubRateLimit rateLimit, boolean twitter) {
+        try {
+            respond(exchange, endpoint, upstream, rateLimit, twitter);
+        } catch (IOException | RuntimeException e) {
+            // the http server drops the connection on an error, which looks like a network error to the app
+            log.warn("{} **Stub error** {}", endpoint, e.getMessage());
+            respondQuietly(exchange, 500, ("{\"message\":\"stub error\"}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void respond(HttpExchange exchange, String endpoint, String upstream, StubRateLimit rateLimit, boolean twitter) throws IOException {
+        byte[] requestBody = readAll(exchange.getRequestBody());
+        if (record) {
+            forward(exchange, endpoint, upstream, requestBody);
+            return;
+        }
+
+        int status = 200;
+        byte[] body;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (rateLimit != null && !rateLimit.take(exchange.getResponseHeaders(), twitter)) {
+            // over the simulated limit: GitHub answers 403 with no remaining requests, Twitter 429
+            status = twitter ? 429 : 403;
+            body = "{\"message\":\"API rate limit exceeded\"}".getBytes(StandardCharsets.UTF_8);
+        } else if (random.nextInt(100) < errorPercent) {
+            status = 503;
+            body = "{\"message\":\"injected server error\"}".getBytes(StandardCharsets.UTF_8);
+        } else if (random.nextInt(100) < throttlePercent) {
+            status = 429;
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            body = "{\"message\":\"injected throttling\"}".getBytes(StandardCharsets.UTF_8);
+        } else {
+            body = replay(endpoint, exchange.getRequestURI());
+        }
+
+        int delayMs = latencyMs + (latencyJitterMs > 0 ? random.nextInt(latencyJitterMs + 1) : 0);
+        int responseStatus = status;
+        if (delayMs > 0) {
+            scheduler.schedule(() -> respondQuietly(exchange, responseStatus, body), delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            respondQuietly(exchange, responseStatus, body);
+        }
+    }
+
+    // helper method to get the recorded response for the request, or the default fixture of the endpoint
+    private byte[] replay(String endpoint, URI requestUri) throws IOException {
+        if (recordDir != null) {
+            Path recorded = recordDir.resolve(recordingName(endpoint, requestUri));
+            if (Files.exists(recorded)) {
+                return Files.readAllBytes(recorded);
+            }
+        }
+        return Files.readAllBytes(fixturesDir.resolve(endpoint + ".json"));
+    }
+
+    // forwards the request to the real API and saves a successful response for replay
+    private void forward(HttpExchange exchange, String endpoint, String upstream, byte[] requestBody) {
+        URI requestUri = exchange.getRequestURI();
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(upstream + requestUri.getRawPath()
+                + (requestUri.getRawQuery() == null ? "" : "?" + requestUri.getRawQuery())));
+        for (String header : new String[]{"Authorization", "Content-Type", "Accept"}) {
+            String value = exchange.getRequestHeaders().getFirst(header);
+            if (value != null) {
+                request.header(header, value);
+            }
+        }
+        request.method(exchange.getRequestMethod(), requestBody.length == 0
+                ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(requestBody));
+
+        upstreamClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, e) -> {
+            if (e != null) {
+                log.warn("{} **Error recording from** {} {}", endpoint, upstream, e.getMessage());
+                respondQuietly(exchange, 502, errorBody(e.getMessage()));
+                return;
+            }
+            // the token response holds a real bearer token, which is not to be left on disk
+            if (response.statusCode() == 200 && !TWITTER_TOKEN_PATH.equals(requestUri.getPath())) {
+                try {
+                    save(recordDir.resolve(recordingName(endpoint, requestUri)), response.body());
+                } catch (IOException saveError) {
+                    log.warn("{} **Error saving recording** {}", endpoint, saveError.getMessage());
+                }
+            }
+            response.headers().map().forEach((name, values) -> {
+                if (name.toLowerCase(Locale.ROOT).contains("rate") || name.equalsIgnoreCase("Retry-After") || name.equalsIgnoreCase("ETag")) {
+                    exchange.getResponseHeaders().put(name, values);
+                }
+            });
+            respondQuietly(exchange, response.statusCode(), response.body());
+        });
+    }
+
+    // the recording of a request is named by its endpoint and a hash of its path and query
+    static String recordingName(String endpoint, URI requestUri) {
+        String request = requestUri.getRawPath() + "?" + (requestUri.getRawQuery() == null ? "" : requestUri.getRawQuery());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(endpoint).append('-');
+            for (int i = 0; i < 8; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return name.append(".json").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // the error message as a json body, escaped by gson
+    private static byte[] errorBody(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("message", message);
+        return gson.toJson(error).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void save(Path file, byte[] body) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(temp, body);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void respondQuietly(HttpExchange exchange, int status, byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            byte[] sent = body;
+            String encoding = Compression.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            if (encoding != null) {
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream(body.length / 4);
+                try (OutputStream out = Compression.encode(encoded, encoding)) {
+                    out.write(body);
+                }
+                sent = encoded.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(status, sent.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(sent);
+            }
+        } catch (IOException e) {
+            log.debug("**Stub response not sent** {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return body.readAllBytes();
+        }
+    }
+
+    /**
+     * A fixed window of requests for one API, sent back in the rate limit headers of the API
+     */
+    private static final class StubRateLimit {
+        private final int limit;
+        private final long windowMs;
+        private final Clock clock;
+        private long windowEndMs;
+        private int used;
+
+        private StubRateLimit(int limit, int windowS, Clock clock) {
+            this.limit = limit;
+            this.windowMs = windowS * 1000L;
+            this.clock = clock;
+        }
+
+        // counts the request and sets the headers. Returns false if the request is over the limit
+        private synchronized boolean take(Headers headers, boolean twitter) {
+            if (limit <= 0) {
+                return true;
+            }
+            long now = clock.millis();
+            if (now >= windowEndMs) {
+                windowEndMs = now + windowMs;
+                used = 0;
+            }
+            boolean allowed = used < limit;
+            if (allowed) {
+                used++;
+            }
+            headers.set(twitter ? "x-rate-limit-limit" : "X-RateLimit-Limit", String.valueOf(limit));
+            headers.set(twitter ? "x-rate-limit-remaining" : "X-RateLimit-Remaining", String.valueOf(limit - used));
+            headers.set(twitter ? "x-rate-limit-reset" : "X-RateLimit-Reset", String.valueOf((windowEndMs + 999) / 1000));
+            return allowed;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.workday.twitter;
+
+import com.workday.app.utils.AppUtilities;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Gets the Twitter bearer token lazily, the first time a call needs it, instead of when the library is created.
+ * The token is read from the encrypted cache file if there is one, and otherwise fetched and written to the file.
+ * All the callers share the token future, so there is only one fetch at a time: when a call gets a 401 it asks for a
+ * refresh of the token future it used, and only the first caller with that future starts a new fetch.
+ */
+class BearerTokenProvider {
+
+    private static Logger log = LogManager.getLogger(BearerTokenProvider.class);
+
+    private final Supplier<CompletableFuture<String>> fetcher;
+    private final EncryptedTokenFile tokenFile;
+    private final Executor fileExecutor;
+    private final CompletableFuture<String> cached;
+    private final AtomicReference<CompletableFuture<String>> current = new AtomicReference<>();
+
+    /**
+     * Starts reading the cache file, if any, right away. The key of the file takes a while to derive (see EncryptedTokenFile),
+     * so the file is read, written and deleted on a thread of its own, and never on the thread of a caller or of the transport.
+     * @param fetcher fetches a new token from Twitter
+     * @param tokenFile the cache file of the token, or null to not cache it
+     */
+    BearerTokenProvider(Supplier<CompletableFuture<String>> fetcher, EncryptedTokenFile tokenFile) {
+        this.fetcher = fetcher;
+        this.tokenFile = tokenFile;
+        if (tokenFile == null) {
+            this.fileExecutor = null;
+            this.cached = CompletableFuture.completedFuture(null);
+        } else {
+            // one thread, so the file operations are done in order
+            this.fileExecutor = Executors.newSingleThreadExecutor(AppUtilities.daemonThreadFactory("twitter-token-file"));
+            this.cached = CompletableFuture.supplyAsync(tokenFile::read, fileExecutor);
+        }
+    }
+
+    /**
+     * Returns the token, reading or fetching it if there is none yet
+     * @return
+     */
+    CompletableFuture<String> token() {
+        CompletableFuture<String> token = current.get();
+        if (token != null && !token.isCompletedExceptionally()) {
+            return token;
+        }
+        CompletableFuture<String> next = new CompletableFuture<>();
+        if (!current.compareAndSet(token, next)) {
+            return current.get();
+        }
+        if (token != null) {
+            // the cached token, if any, was used by the first token
+            fetch(next);
+            return next;
+        }
+        cached.whenComplete((cachedToken, e) -> {
+            if (cachedToken != null && !cachedToken.isEmpty()) {
+                log.info("**Using the cached twitter bearer token**");
+                next.complete(cachedToken);
+            } else {
+                fetch(next);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Replaces a token that was refused with a new one. Callers refreshing the same token share one fetch.
+     * @param refused the token future (from token()) of the call that got the 401
+     * @return
+     */
+    CompletableFuture<String> refresh(CompletableFuture<String> refused) {
+        CompletableFuture<String> next = new CompletableFuture<>();
+        if (!current.compareAndSet(refused, next)) {
+            // another caller already started the refresh
+            return token();
+        }
+        log.info("**Refreshing the twitter bearer token**");
+        if (tokenFile != null) {
+            fileExecutor.execute(tokenFile::delete);
+        }
+        fetch(next);
+        return next;
+    }
+
+    private void fetch(CompletableFuture<String> next) {
+        fetcher.get().whenComplete((token, e) -> {
+            if (e != null) {
+                next.completeExceptionally(e);
+                return;
+            }
+            if (tokenFile != null) {
+                fileExecutor.execute(() -> tokenFile.write(token));
+            }
+            next.complete(token);
+        });
+    }
+}
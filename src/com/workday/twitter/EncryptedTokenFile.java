@@ -0,0 +1,106 @@
+package com.workday.twitter;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Local cache file for the Twitter bearer token, so a restarted app does not have to fetch a new one.
+ * The token is encrypted with AES-GCM, with a key derived from the consumer key and secret (PBKDF2),
+ * so the file is of no use without the credentials in the properties file. The file holds the salt, the iv
+ * and the cipher text, base64 encoded and separated by ':'.
+ */
+class EncryptedTokenFile {
+
+    private static final int KEY_ITERATIONS = 10000;
+    private static final int KEY_BITS = 128;
+    private static final int GCM_TAG_BITS = 128;
+
+    private static Logger log = LogManager.getLogger(EncryptedTokenFile.class);
+
+    private final Path path;
+    private final char[] password;
+    private final SecureRandom random = new SecureRandom();
+
+    EncryptedTokenFile(Path path, String consumerKey, String consumerSecret) {
+        this.path = path;
+        this.password = (consumerKey + ":" + consumerSecret).toCharArray();
+    }
+
+    /**
+     * Reads the token from the file
+     * @return the token, or null if there is no file or it cannot be decrypted with the current credentials
+     */
+    String read() {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim().split(":");
+            if (parts.length != 3) {
+                return null;
+            }
+            byte[] salt = Base64.decodeBase64(parts[0]);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key(salt), new GCMParameterSpec(GCM_TAG_BITS, Base64.decodeBase64(parts[1])));
+            return new String(cipher.doFinal(Base64.decodeBase64(parts[2])), StandardCharsets.UTF_8);
+        } catch (IOException | GeneralSecurityException e) {
+            log.warn("{} **Could not read the cached bearer token** {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the token to the file, replacing it atomically
+     * @param token
+     */
+    void write(String token) {
+        try {
+            byte[] salt = new byte[16];
+            byte[] iv = new byte[12];
+            random.nextBytes(salt);
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key(salt), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
+            String content = Base64.encodeBase64String(salt) + ":" + Base64.encodeBase64String(iv) + ":" + Base64.encodeBase64String(encrypted);
+
+            Path parent = path.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(parent, "token", ".tmp");
+            Files.write(temp, content.getBytes(StandardCharsets.US_ASCII));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | GeneralSecurityException e) {
+            log.warn("{} **Could not cache the bearer token** {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the file, for a token that is no longer valid
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("{} **Could not remove the cached bearer token** {}", path, e.getMessage());
+        }
+    }
+
+    private SecretKeySpec key(byte[] salt) throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        byte[] key = factory.generateSecret(new PBEKeySpec(password, salt, KEY_ITERATIONS, KEY_BITS)).getEncoded();
+        return new SecretKeySpec(key, "AES");
+    }
+}
@@ -2,157 +2,389 @@ package com.workday.twitter;
 
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
+import com.workday.app.model.TweetsModel;
+import com.workday.app.model.TweetsSearchResultModel;
 import com.workday.app.utils.AppUtilities;
+import com.workday.http.Deadline;
+import com.workday.http.HttpStatusException;
+import com.workday.http.HttpTransport;
+import com.workday.http.Upstream;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javax.net.ssl.HttpsURLConnection;
-import java.io.*;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.HttpURLConnection;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Twitter API library
  * Currently the only API available is the Search API
  * This can be easily replaced with a 3rd party library or can be enhanced to include other API calls.
  * If the API returns a 500 error, then there is a 3 time retry to see if the server is available and the API can get the desired data.
+ * The calls are non-blocking and go through the shared HttpTransport, which pools the connections and does the retries.
+ * The bearer token is only fetched when the first search needs it (see BearerTokenProvider), so creating the library never
+ * waits on Twitter. A search that gets a 401 refreshes the token once and is made again.
+ * Several project names can be searched with one OR query (see searchTweetsBatchAsync), which saves calls against the rate limit.
  *
  * Created by hari.sathappan on 4/3/18.
  */
 public class TwitterAPILib {
 
-    private static final int RETRY_DELAY_MS =  30000; //30 sec delay (30 * 1000)
-    private static final int RETRIES = 3;
-    private static final String USER_AGENT = "wday mashup for git and twitter"; // app name
-    private static final String END_POINT_URL = "https://api.twitter.com/1.1/search/tweets.json?result_type=recent&count=5&q=";
-    private static Logger log = LogManager.getLogger(AppUtilities.class);
+    private static final String DEFAULT_BASE_URL = "https://api.twitter.com";
+    private static final String SEARCH_PATH = "/1.1/search/tweets.json?result_type=recent&count=";
+    private static final String AUTH_PATH = "/oauth2/token";
+    public static final int TWEETS_PER_PROJECT = 5;
+    // the most tweets a standard search returns, and the longest query it takes
+    private static final int BATCH_TWEETS_COUNT = 100;
+    private static final int MAX_QUERY_LENGTH = 500;
+    private static final String OR = " OR ";
+    private static Logger log = LogManager.getLogger(TwitterAPILib.class);
 
 
     private final String consumerKey;
     private final String consumerSecret;
-    private final String bearerToken;
     private final Gson gson;
+    private final HttpTransport transport;
+    private final Upstream upstream;
+    private final BearerTokenProvider tokenProvider;
+    private final String searchUrl;
 
-    private enum ApiType {
-        AUTH, SEARCH
+    public TwitterAPILib(String consumerKey, String consumerSecret, Gson gson) {
+        this(consumerKey, consumerSecret, gson, HttpTransport.shared(), null);
     }
 
-    public TwitterAPILib(String consumerKey, String consumerSecret, Gson gson) throws IOException {
+    public TwitterAPILib(String consumerKey, String consumerSecret, Gson gson, HttpTransport transport) {
+        this(consumerKey, consumerSecret, gson, transport, null);
+    }
+
+    /**
+     * @param consumerKey
+     * @param consumerSecret
+     * @param gson
+     * @param transport
+     * @param tokenCacheFile the encrypted cache file of the bearer token, kept across restarts, or null to not cache it
+     */
+    public TwitterAPILib(String consumerKey, String consumerSecret, Gson gson, HttpTransport transport, Path tokenCacheFile) {
+        this(consumerKey, consumerSecret, gson, transport, tokenCacheFile, DEFAULT_BASE_URL);
+    }
+
+    /**
+     * @param consumerKey
+     * @param consumerSecret
+     * @param gson
+     * @param transport
+     * @param tokenCacheFile the encrypted cache file of the bearer token, kept across restarts, or null to not cache it
+     * @param baseUrl the base url of the search and token endpoints, like https://api.twitter.com
+     */
+    public TwitterAPILib(String consumerKey, String consumerSecret, Gson gson, HttpTransport transport, Path tokenCacheFile, String baseUrl) {
         this.consumerKey = consumerKey;
         this.consumerSecret = consumerSecret;
         this.gson = gson;
-        this.bearerToken = requestBearerToken("https://api.twitter.com/oauth2/token");
+        this.transport = transport;
+        this.upstream = transport.upstream("twitter");
+        this.searchUrl = baseUrl + SEARCH_PATH;
+        EncryptedTokenFile tokenFile = tokenCacheFile == null ? null : new EncryptedTokenFile(tokenCacheFile, consumerKey, consumerSecret);
+        this.tokenProvider = new BearerTokenProvider(() -> requestBearerToken(baseUrl + AUTH_PATH), tokenFile);
     }
 
     /**
-     * Gets the most recent 5 tweets or less based on the given search term
+     * Returns the Twitter upstream, with the state of its rate limit, circuit breaker and bulkhead
+     * @return
+     */
+    public Upstream getUpstream() {
+        return upstream;
+    }
+
+    /**
+     * Gets the most recent 5 tweets or less based on the given search term and blocks until they are available
      * @param searchTerm
      * @return
      * @throws IOException
      */
     public String searchTweets(String searchTerm) throws IOException {
-        HttpsURLConnection connection = null;
+        return AppUtilities.await(searchTweetsAsync(searchTerm));
+    }
 
+    /**
+     * Gets the most recent 5 tweets or less based on the given search term
+     * @param searchTerm
+     * @return a future with the search response json. It completes exceptionally with an IOException on errors
+     */
+    public CompletableFuture<String> searchTweetsAsync(String searchTerm) {
         try {
-            connection = setupConnection(END_POINT_URL + URLEncoder.encode(searchTerm, "UTF-8"), this.bearerToken, ApiType.SEARCH);
-            String resp = AppUtilities.readResponse(connection);
-            log.debug("**twitter response**" + resp);
-            return resp;
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            URI uri = searchUri(searchTerm, TWEETS_PER_PROJECT);
+            // the response body is logged by the transport, for the sampled calls (see LOG_BODY_SAMPLE_PERCENT)
+            return withBearerToken(token -> transport.sendAsync(upstream, searchRequest(uri, token, Deadline.none())));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
         }
+    }
+
+    /**
+     * Gets the most recent 5 tweets or less based on the given search term, decoded while they are read from the connection
+     * @param searchTerm
+     * @return a future with the search results. It completes exceptionally with an IOException on errors
+     */
+    public CompletableFuture<TweetsSearchResultModel> searchTweetsResultAsync(String searchTerm) {
+        return searchTweetsResultAsync(searchTerm, Deadline.none());
+    }
 
+    /**
+     * Gets the most recent 5 tweets or less based on the given search term like searchTweetsResultAsync(String), within the deadline
+     * @param searchTerm
+     * @param deadline
+     * @return a future with the search results. It completes exceptionally with an IOException on errors,
+     * and with a DeadlineExceededException if the deadline is reached first
+     */
+    public CompletableFuture<TweetsSearchResultModel> searchTweetsResultAsync(String searchTerm, Deadline deadline) {
+        return searchTweetsResultAsync(searchTerm, TWEETS_PER_PROJECT, deadline);
     }
 
-    // method to get the request bearer token - authentication token to access the twitter endpoints
-    private String requestBearerToken(String endPointUrl) throws IOException {
-        String encodedCredentials = encodeKeys(this.consumerKey,this.consumerSecret);
-        HttpsURLConnection connection = null;
+    /**
+     * Gets the most recent 5 tweets or less based on the given search term that are newer than the given status id
+     * (the since_id of the search), so a refresh of tweets already seen only gets the new ones
+     * @param searchTerm
+     * @param sinceId the id of the most recent tweet already seen, or 0 for no lower bound
+     * @param deadline
+     * @return a future with the search results, empty if there are no new tweets. It completes exceptionally with an IOException
+     * on errors, and with a DeadlineExceededException if the deadline is reached first
+     */
+    public CompletableFuture<TweetsSearchResultModel> searchTweetsSinceAsync(String searchTerm, long sinceId, Deadline deadline) {
         try {
-            connection = setupConnection(endPointUrl, encodedCredentials, ApiType.AUTH);
-            RequestBearerToken requestBearenToken = gson.fromJson(AppUtilities.readResponse(connection), RequestBearerToken.class);
+            URI uri = searchUri(searchTerm, TWEETS_PER_PROJECT, sinceId);
+            return withBearerToken(token -> transport.sendAsync(upstream, searchRequest(uri, token, deadline), gson, TweetsSearchResultModel.class, deadline));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-            if (requestBearenToken != null) {
-                String tokenType = requestBearenToken.getTokenType();
-                String token = requestBearenToken.getAccessToken();
-                return ((tokenType.equals("bearer")) && (token != null)) ? token : "";
-            }
-            return new String();
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
+    /**
+     * Gets the most recent 5 tweets or less for each of the project names, with fewer calls than a search per name.
+     * The names are packed into "a OR b OR c" searches of up to 100 tweets, within the query length limit, and the tweets
+     * are given back to the names their text or user screen name has as a whole word (so "go" is not found in "good"),
+     * at most 5 per name. If a search returned as many tweets as it asked for, the recent tweets of a name may have been
+     * crowded out by the other names, so a name with fewer than 5 tweets gets a search of its own. A name alone in its
+     * group is searched on its own right away.
+     * @param projectNames
+     * @return a future per distinct name, with the tweets of the name. A future completes exceptionally with an IOException
+     * if the search of its group fails
+     */
+    public Map<String, CompletableFuture<List<TweetsModel>>> searchTweetsBatchAsync(Collection<String> projectNames) {
+        return searchTweetsBatchAsync(projectNames, Deadline.none());
+    }
+
+    /**
+     * Gets the most recent 5 tweets or less for each of the project names like searchTweetsBatchAsync(Collection),
+     * with every search made within the deadline
+     * @param projectNames
+     * @param deadline
+     * @return a future per distinct name, with the tweets of the name. A future completes exceptionally with an IOException
+     * if the search of its group fails
+     */
+    public Map<String, CompletableFuture<List<TweetsModel>>> searchTweetsBatchAsync(Collection<String> projectNames, Deadline deadline) {
+        Map<String, CompletableFuture<List<TweetsModel>>> results = new LinkedHashMap<>();
+        for (String projectName : projectNames) {
+            results.putIfAbsent(projectName, new CompletableFuture<>());
+        }
+        for (List<String> group : groupNames(results.keySet())) {
+            if (group.size() == 1) {
+                String projectName = group.get(0);
+                searchTweetsResultAsync(projectName, deadline).thenApply(TwitterAPILib::tweetsOf).whenComplete(completeWith(results.get(projectName)));
+            } else {
+                searchGroup(group, results, deadline);
             }
         }
+        return results;
     }
 
-    // helper methods to setup a connection and take care of the retry.
-    private HttpsURLConnection setupConnection(String endPointUrl, String credentials, ApiType apiType) throws IOException {
-        URL url = null;
-        try {
-            url = new URL(endPointUrl);
-        } catch (MalformedURLException e) {
-            log.error(endPointUrl + " **Invalid endpoint URL specified.** " + e.getMessage());
-            throw new IOException(endPointUrl + " Invalid endpoint URL specified. " + e.getMessage(), e);
-        }
-
-        HttpsURLConnection connection = null;
-        int responseCode = -1;
-        int retry = 0;
-        boolean delay = false;
-        do {
-            if (delay) {
-                try {
-                    Thread.sleep(retry * RETRY_DELAY_MS);
-                } catch (InterruptedException ie) {
-                    // do nothing
+    // searches the group of names with one OR query and gives each name its tweets
+    private void searchGroup(List<String> group, Map<String, CompletableFuture<List<TweetsModel>>> results, Deadline deadline) {
+        searchTweetsResultAsync(String.join(OR, group), BATCH_TWEETS_COUNT, deadline).whenComplete((searchResults, e) -> {
+            if (e != null) {
+                Throwable cause = AppUtilities.unwrap(e);
+                log.warn("**Error searching tweets for** {} {}", group, cause.getMessage());
+                for (String projectName : group) {
+                    results.get(projectName).completeExceptionally(cause);
                 }
+                return;
             }
-            connection = (HttpsURLConnection)url.openConnection();
-            setConnectionParms(connection, credentials, apiType);
-            connection.connect();
-            responseCode = connection.getResponseCode();
-            boolean retryConnection = AppUtilities.retryConnection(responseCode, url);
-            if (!retryConnection) {
-                return connection;
+            List<TweetsModel> tweets = tweetsOf(searchResults);
+            boolean crowded = tweets.size() >= BATCH_TWEETS_COUNT;
+            Map<String, List<TweetsModel>> matched = matchTweets(group, tweets);
+            for (String projectName : group) {
+                List<TweetsModel> projectTweets = matched.get(projectName);
+                CompletableFuture<List<TweetsModel>> result = results.get(projectName);
+                if (crowded && projectTweets.size() < TWEETS_PER_PROJECT) {
+                    // the tweets matched so far are kept if the follow up search fails
+                    searchTweetsResultAsync(projectName, deadline).thenApply(TwitterAPILib::tweetsOf)
+                            .exceptionally(followUpError -> Collections.unmodifiableList(projectTweets))
+                            .whenComplete(completeWith(result));
+                } else {
+                    result.complete(Collections.unmodifiableList(projectTweets));
+                }
             }
-            connection.disconnect();
-            delay = true;
-            retry++;
-        } while (retry <= RETRIES);
+        });
+    }
 
-        throw new IOException(url + " Server exception response code: " + responseCode);
+    // gives each tweet, most recent first, to the names its text or user screen name has as a whole word, until a name has 5 tweets
+    private static Map<String, List<TweetsModel>> matchTweets(List<String> group, List<TweetsModel> tweets) {
+        Map<String, List<TweetsModel>> matched = new HashMap<>();
+        String[] names = new String[group.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = group.get(i).toLowerCase(Locale.ROOT);
+            matched.put(group.get(i), new ArrayList<>(TWEETS_PER_PROJECT));
+        }
+        for (TweetsModel tweet : tweets) {
+            String text = tweet.getText() == null ? "" : tweet.getText().toLowerCase(Locale.ROOT);
+            String screenName = tweet.getUser() == null || tweet.getUser().getScreenName() == null
+                    ? "" : tweet.getUser().getScreenName().toLowerCase(Locale.ROOT);
+            for (int i = 0; i < names.length; i++) {
+                List<TweetsModel> projectTweets = matched.get(group.get(i));
+                if (projectTweets.size() < TWEETS_PER_PROJECT && (containsWord(text, names[i]) || containsWord(screenName, names[i]))) {
+                    projectTweets.add(tweet);
+                }
+            }
+        }
+        return matched;
     }
 
-    private void setConnectionParms(HttpsURLConnection connection, String credentials, ApiType apiType) throws ProtocolException {
-        connection.setDoOutput(true);
-        connection.setDoInput(true);
-        connection.setRequestProperty("Host", "api.twitter.com");
-        connection.setRequestProperty("User-Agent", USER_AGENT);
-        connection.setUseCaches(false);
-        connection.setReadTimeout(120*1000);
+    // true if the name is in the text with no letter or digit right before or after it, so #name, @name and .../name count
+    private static boolean containsWord(String text, String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int from = text.indexOf(name); from >= 0; from = text.indexOf(name, from + 1)) {
+            int end = from + name.length();
+            if ((from == 0 || !Character.isLetterOrDigit(text.charAt(from - 1)))
+                    && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        switch (apiType) {
-            case AUTH:   setupConnectionParmsForAuth(connection, credentials);
-                         break;
-            case SEARCH: setupConnectionParmsForSearch(connection, credentials);
-                         break;
+    // packs the names into groups whose OR query fits in the query length limit
+    private static List<List<String>> groupNames(Collection<String> projectNames) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        int length = 0;
+        for (String projectName : projectNames) {
+            int added = group.isEmpty() ? projectName.length() : OR.length() + projectName.length();
+            if (!group.isEmpty() && length + added > MAX_QUERY_LENGTH) {
+                groups.add(group);
+                group = new ArrayList<>();
+                added = projectName.length();
+                length = 0;
+            }
+            group.add(projectName);
+            length += added;
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
         }
+        return groups;
+    }
+
+    private static List<TweetsModel> tweetsOf(TweetsSearchResultModel searchResults) {
+        List<TweetsModel> tweets = searchResults == null ? null : searchResults.getTweets();
+        return tweets == null ? Collections.emptyList() : tweets;
+    }
+
+    private static <T> BiConsumer<T, Throwable> completeWith(CompletableFuture<T> result) {
+        return (value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(AppUtilities.unwrap(e));
+            } else {
+                result.complete(value);
+            }
+        };
     }
 
-    private void setupConnectionParmsForSearch(HttpsURLConnection connection, String bearerToken) throws ProtocolException {
-        connection.setRequestProperty("Authorization", "Bearer " + bearerToken);
-        connection.setRequestMethod("GET");
+    // the bearer token is shared by all the searches, so only the search itself is held to the deadline
+    private CompletableFuture<TweetsSearchResultModel> searchTweetsResultAsync(String searchTerm, int count, Deadline deadline) {
+        try {
+            URI uri = searchUri(searchTerm, count);
+            return withBearerToken(token -> transport.sendAsync(upstream, searchRequest(uri, token, deadline), gson, TweetsSearchResultModel.class, deadline));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    private void setupConnectionParmsForAuth(HttpsURLConnection connection, String encodedCredentials) throws ProtocolException {
-        connection.setRequestProperty("Authorization", "Basic " + encodedCredentials);
-        connection.setRequestMethod("POST");
-        writeRequest(connection, "grant_type=client_credentials");
+    private URI searchUri(String searchTerm, int count) throws IOException {
+        return searchUri(searchTerm, count, 0);
+    }
+
+    private URI searchUri(String searchTerm, int count, long sinceId) throws IOException {
+        try {
+            return URI.create(searchUrl + count + (sinceId > 0 ? "&since_id=" + sinceId : "") + "&q=" + URLEncoder.encode(searchTerm, "UTF-8"));
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            log.error("{} **Invalid endpoint URL specified.** {}", searchUrl, e.getMessage());
+            throw new IOException(searchUrl + " Invalid endpoint URL specified. " + e.getMessage(), e);
+        }
+    }
+
+    private HttpRequest searchRequest(URI uri, String bearerToken, Deadline deadline) {
+        return transport.newRequest(uri, deadline)
+                .header("Authorization", "Bearer " + bearerToken)
+                .GET()
+                .build();
+    }
+
+    // makes a call with the bearer token, and once more with a refreshed token if the token is refused with a 401
+    private <T> CompletableFuture<T> withBearerToken(Function<String, CompletableFuture<T>> call) {
+        CompletableFuture<String> tokenFuture = tokenProvider.token();
+        return tokenFuture.thenCompose(token -> call.apply(token)
+                .handle((value, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(value);
+                    }
+                    Throwable cause = AppUtilities.unwrap(e);
+                    if (cause instanceof HttpStatusException && ((HttpStatusException) cause).getStatusCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                        log.warn("**Bearer token refused, refreshing it**");
+                        return tokenProvider.refresh(tokenFuture).thenCompose(call);
+                    }
+                    return CompletableFuture.<T>failedFuture(cause);
+                })
+                .thenCompose(Function.identity()));
+    }
+
+    // method to get the request bearer token - authentication token to access the twitter endpoints
+    private CompletableFuture<String> requestBearerToken(String endPointUrl) {
+        String encodedCredentials = encodeKeys(this.consumerKey,this.consumerSecret);
+        HttpRequest request = transport.newRequest(URI.create(endPointUrl))
+                .header("Authorization", "Basic " + encodedCredentials)
+                .header("Content-Type", "application/x-www-form-urlencoded;charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString("grant_type=client_credentials"))
+                .build();
+
+        return transport.sendAsync(upstream, request, gson, RequestBearerToken.class).thenApply(requestBearenToken -> {
+
+            if (requestBearenToken != null) {
+                String tokenType = requestBearenToken.getTokenType();
+                String token = requestBearenToken.getAccessToken();
+                if ("bearer".equals(tokenType) && token != null && !token.isEmpty()) {
+                    return token;
+                }
+            }
+            throw new CompletionException(new IOException(endPointUrl + " No bearer token in the response"));
+        });
     }
 
     // Encodes the consumer key and secret to create the basic authorization key
@@ -165,27 +397,11 @@ public class TwitterAPILib {
             return new String(encodedBytes);
         }
         catch (UnsupportedEncodingException e) {
-            log.warn(" **UnsupportedEncodingException while encoding consume key / consumer secret**. " + e.getMessage());
+            log.warn(" **UnsupportedEncodingException while encoding consume key / consumer secret**. {}", e.getMessage());
             return new String();
         }
     }
 
-    // Writes a request to a connection
-    private boolean writeRequest(HttpsURLConnection connection, String textBody) {
-        try {
-            BufferedWriter wr = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream()));
-            wr.write(textBody);
-            wr.flush();
-            wr.close();
-
-            return true;
-        }
-        catch (IOException e) {
-            log.warn(" **Failed to write request to connection**. " + textBody + " " + e.getMessage());
-            return false;
-        }
-    }
-
     /**
      * Class for Gson to get the twitter token type and access token from Json.
      */
@@ -0,0 +1,411 @@
+package com.workday.watch;
+
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.cache.SingleFlight;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.ModelPool;
+import com.workday.app.model.TweetsModel;
+import com.workday.app.model.TweetsStatus;
+import com.workday.app.utils.AppUtilities;
+import com.workday.twitter.TwitterAPILib;
+import com.workday.watch.WatchEvent.ChangeType;
+import com.workday.watch.WatchEvent.ProjectChange;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Watches search terms and tells the subscribers of a term what changed, so they do not have to ask for the whole summary
+ * again and again. Each watched term is refreshed every WATCH_REFRESH_S seconds, counted from the end of its previous refresh.
+ * A refresh gets the projects of the term (through the GitHub cache of the app) and, for each project it already has, only
+ * the tweets newer than its most recent one (the since_id of the Twitter search), which are merged into its tweets keeping
+ * the most recent 5. A project new to the term gets its tweets through the tweet cache of the app.
+ * The subscribers get a WatchEvent with the projects added, removed, moved or with new tweets, and nothing if a refresh found
+ * no change. A subscriber of a term that is already watched first gets the projects as they are. A failed lookup leaves the
+ * project as it was until the next refresh.
+ * The calls of all the refreshes are paced to WATCH_MAX_CALLS_PER_MIN (0 for no pacing), so however many terms are watched
+ * they leave most of the GitHub and Twitter rate limits to the summaries.
+ */
+public class SummaryWatcher {
+
+    private static final String WATCH_REFRESH_S = "WATCH_REFRESH_S";
+    private static final String WATCH_MAX_CALLS_PER_MIN = "WATCH_MAX_CALLS_PER_MIN";
+
+    private static Logger log = LogManager.getLogger(SummaryWatcher.class);
+
+    private final GitTwitterMashupApp app;
+    private final long refreshMs;
+    private final long callIntervalNanos;
+    private final Map<String, TermState> terms = new HashMap<>();
+    private final ModelPool tweetsPool = new ModelPool();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(AppUtilities.daemonThreadFactory("watch-refresh"));
+    private final ExecutorService eventExecutor = Executors.newSingleThreadExecutor(AppUtilities.daemonThreadFactory("watch-events"));
+    private long nextCallNanos = System.nanoTime();
+    private boolean closed;
+
+    public SummaryWatcher(GitTwitterMashupApp app, Properties properties) {
+        this.app = app;
+        this.refreshMs = Math.max(1, AppUtilities.getIntProperty(properties, WATCH_REFRESH_S, 60)) * 1000L;
+        int callsPerMinute = AppUtilities.getIntProperty(properties, WATCH_MAX_CALLS_PER_MIN, 30);
+        this.callIntervalNanos = callsPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / callsPerMinute : 0;
+    }
+
+    /**
+     * Subscribes the listener to the changes of the search term. The first subscriber of a term starts watching it,
+     * with a refresh right away.
+     * @param searchTerm
+     * @param listener
+     */
+    public synchronized void subscribe(String searchTerm, WatchListener listener) {
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            throw new IllegalArgumentException("Search term cannot be null or empty. Please try again with a valid search term");
+        }
+        if (closed) {
+            throw new IllegalStateException("The watcher is closed");
+        }
+        String key = SingleFlight.normalize(searchTerm);
+        TermState state = terms.get(key);
+        if (state == null) {
+            state = new TermState(searchTerm.trim());
+            terms.put(key, state);
+            log.info("**Watching term** {}", state.term);
+        }
+        synchronized (state) {
+            state.listeners.add(listener);
+            if (state.refreshed) {
+                deliver(snapshot(state), Collections.singletonList(listener));
+            } else if (state.inFlight == null && state.nextRefresh == null) {
+                scheduleRefresh(state, 0);
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes the listener from the search term. The term is no longer watched once it has no subscribers.
+     * @param searchTerm
+     * @param listener
+     */
+    public synchronized void unsubscribe(String searchTerm, WatchListener listener) {
+        String key = SingleFlight.normalize(searchTerm);
+        TermState state = terms.get(key);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.listeners.remove(listener);
+            if (!state.listeners.isEmpty()) {
+                return;
+            }
+            stopWatching(state);
+        }
+        terms.remove(key);
+        log.info("**Stopped watching term** {}", state.term);
+    }
+
+    /**
+     * Refreshes the search term now instead of waiting for its next refresh
+     * @param searchTerm
+     * @return a future that completes once the refresh is done and its changes are handed to the subscribers.
+     * If the term is being refreshed already, the future of that refresh
+     */
+    public CompletableFuture<Void> refresh(String searchTerm) {
+        TermState state;
+        synchronized (this) {
+            state = terms.get(SingleFlight.normalize(searchTerm));
+        }
+        if (state == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("The term is not watched: " + searchTerm));
+        }
+        return refresh(state);
+    }
+
+    /**
+     * Returns the number of terms watched
+     * @return
+     */
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Stops watching all the terms. The events not delivered yet are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (TermState state : terms.values()) {
+                synchronized (state) {
+                    stopWatching(state);
+                }
+            }
+            terms.clear();
+        }
+        scheduler.shutdownNow();
+        eventExecutor.shutdownNow();
+    }
+
+    // refreshes the term, then schedules its next refresh
+    private CompletableFuture<Void> refresh(TermState state) {
+        CompletableFuture<Void> refreshed = new CompletableFuture<>();
+        synchronized (state) {
+            if (state.closed) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (state.inFlight != null) {
+                return state.inFlight;
+            }
+            if (state.nextRefresh != null) {
+                state.nextRefresh.cancel(false);
+                state.nextRefresh = null;
+            }
+            state.inFlight = refreshed;
+        }
+        String requestId = AppUtilities.newRequestId();
+        long start = System.nanoTime();
+        paced(requestId, () -> app.getProjectsAsync(state.term))
+                .thenCompose(projects -> lookupTweets(state, projects, requestId).thenAccept(tweets -> publish(state, projects, tweets)))
+                .whenComplete((ignored, e) -> AppUtilities.withRequestId(requestId, () -> {
+                    if (e != null) {
+                        log.warn("**Error refreshing watched term** {} {}", state.term, AppUtilities.unwrap(e).getMessage());
+                    } else {
+                        log.debug("**Refreshed watched term** {} **in** {}ms", state.term, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    synchronized (state) {
+                        state.inFlight = null;
+                        scheduleRefresh(state, refreshMs);
+                    }
+                    refreshed.complete(null);
+                    return null;
+                }));
+        return refreshed;
+    }
+
+    // looks up the new tweets of the projects the term already has, and all the tweets of the projects new to the term.
+    // A failed lookup gives null, which leaves the project as it was.
+    private CompletableFuture<List<List<TweetsModel>>> lookupTweets(TermState state, List<GitProjectModel> projects, String requestId) {
+        Map<String, GitProjectModel> known;
+        synchronized (state) {
+            known = state.projects;
+        }
+        List<CompletableFuture<List<TweetsModel>>> lookups = new ArrayList<>(projects.size());
+        for (GitProjectModel project : projects) {
+            String name = project.getName();
+            GitProjectModel previous = known.get(key(project));
+            CompletableFuture<List<TweetsModel>> lookup = previous == null
+                    ? paced(requestId, () -> app.getTweetsAsync(name))
+                    : paced(requestId, () -> app.getNewTweetsAsync(name, sinceId(previous.getTweets())));
+            lookups.add(lookup.handle((tweets, e) -> AppUtilities.withRequestId(requestId, () -> {
+                if (e != null) {
+                    log.warn("**Error refreshing tweets for project** {} {}", name, AppUtilities.unwrap(e).getMessage());
+                    return null;
+                }
+                return tweets;
+            })));
+        }
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<List<TweetsModel>> tweets = new ArrayList<>(lookups.size());
+            for (CompletableFuture<List<TweetsModel>> lookup : lookups) {
+                tweets.add(lookup.join());
+            }
+            return tweets;
+        });
+    }
+
+    // merges the refreshed projects and tweets into the term and hands the changes to its subscribers
+    private void publish(TermState state, List<GitProjectModel> projects, List<List<TweetsModel>> tweets) {
+        synchronized (state) {
+            if (state.closed) {
+                return;
+            }
+            Map<String, Integer> previousRanks = new HashMap<>();
+            for (String key : state.projects.keySet()) {
+                previousRanks.put(key, previousRanks.size());
+            }
+            Map<String, GitProjectModel> current = new LinkedHashMap<>();
+            List<ProjectChange> changes = new ArrayList<>();
+            for (int rank = 0; rank < projects.size(); rank++) {
+                GitProjectModel project = projects.get(rank);
+                String key = key(project);
+                GitProjectModel previous = state.projects.get(key);
+                List<TweetsModel> fresh = tweets.get(rank);
+                if (previous == null) {
+                    project.setTweets(fresh == null ? Collections.emptyList() : fresh);
+                    project.setTweetsStatus(fresh == null ? TweetsStatus.UNAVAILABLE : null);
+                    changes.add(new ProjectChange(ChangeType.ADDED, rank, -1, copy(project), project.getTweets()));
+                } else {
+                    List<TweetsModel> newTweets = fresh == null ? Collections.emptyList() : newTweets(fresh, previous.getTweets());
+                    project.setTweets(merge(newTweets, previous.getTweets()));
+                    project.setTweetsStatus(fresh == null ? previous.getTweetsStatus() : null);
+                    int previousRank = previousRanks.get(key);
+                    if (!newTweets.isEmpty() || previousRank != rank) {
+                        changes.add(new ProjectChange(ChangeType.UPDATED, rank, previousRank, copy(project), newTweets));
+                    }
+                }
+                current.put(key, project);
+            }
+            for (Map.Entry<String, GitProjectModel> previous : state.projects.entrySet()) {
+                if (!current.containsKey(previous.getKey())) {
+                    changes.add(new ProjectChange(ChangeType.REMOVED, -1, previousRanks.get(previous.getKey()), copy(previous.getValue()),
+                            Collections.emptyList()));
+                }
+            }
+            state.projects = current;
+            state.refreshed = true;
+            if (!changes.isEmpty()) {
+                deliver(new WatchEvent(state.term, System.currentTimeMillis(), changes), new ArrayList<>(state.listeners));
+            }
+        }
+    }
+
+    // the projects of the term as they are, for a new subscriber
+    private static WatchEvent snapshot(TermState state) {
+        List<ProjectChange> changes = new ArrayList<>(state.projects.size());
+        for (GitProjectModel project : state.projects.values()) {
+            changes.add(new ProjectChange(ChangeType.ADDED, changes.size(), -1, copy(project), project.getTweets()));
+        }
+        return new WatchEvent(state.term, System.currentTimeMillis(), changes);
+    }
+
+    // hands the event to the listeners on the event thread, in the order the events are made
+    private void deliver(WatchEvent event, List<WatchListener> listeners) {
+        for (WatchListener listener : listeners) {
+            eventExecutor.execute(() -> {
+                try {
+                    listener.onChange(event);
+                } catch (RuntimeException e) {
+                    log.warn("**Watch listener failed for term** {} {}", event.getTerm(), e.getMessage());
+                }
+            });
+        }
+    }
+
+    // the tweets of the lookup that the project does not have yet, by id (by text for the tweets without an id)
+    private static List<TweetsModel> newTweets(List<TweetsModel> fresh, List<TweetsModel> stored) {
+        Set<Object> seen = new HashSet<>();
+        for (TweetsModel tweet : stored) {
+            seen.add(identity(tweet));
+        }
+        List<TweetsModel> newTweets = new ArrayList<>();
+        for (TweetsModel tweet : fresh) {
+            if (seen.add(identity(tweet))) {
+                newTweets.add(tweet);
+            }
+        }
+        return newTweets;
+    }
+
+    // the new tweets are more recent than the ones the project has, so they go first, and the most recent 5 are kept
+    private List<TweetsModel> merge(List<TweetsModel> newTweets, List<TweetsModel> stored) {
+        if (newTweets.isEmpty()) {
+            return stored;
+        }
+        List<TweetsModel> merged = new ArrayList<>(TwitterAPILib.TWEETS_PER_PROJECT);
+        for (int i = 0; i < newTweets.size() && merged.size() < TwitterAPILib.TWEETS_PER_PROJECT; i++) {
+            merged.add(newTweets.get(i));
+        }
+        for (int i = 0; i < stored.size() && merged.size() < TwitterAPILib.TWEETS_PER_PROJECT; i++) {
+            merged.add(stored.get(i));
+        }
+        return tweetsPool.compactTweets(merged);
+    }
+
+    // the id of the most recent tweet, or 0 if there is none, which searches for the most recent tweets
+    private static long sinceId(List<TweetsModel> tweets) {
+        long sinceId = 0;
+        for (TweetsModel tweet : tweets) {
+            sinceId = Math.max(sinceId, tweet.getId());
+        }
+        return sinceId;
+    }
+
+    private static Object identity(TweetsModel tweet) {
+        return tweet.getId() != 0 ? (Object) tweet.getId() : tweet.getText();
+    }
+
+    // the same name can be used by several owners, the full name is unique
+    private static String key(GitProjectModel project) {
+        return project.getFullName() != null ? project.getFullName() : project.getName();
+    }
+
+    private static GitProjectModel copy(GitProjectModel project) {
+        GitProjectModel copy = new GitProjectModel(project.getName(), project.getFullName(), project.getOwner(), project.getHtmlUrl(), project.getDescription());
+        copy.setTweets(project.getTweets());
+        copy.setTweetsStatus(project.getTweetsStatus());
+        return copy;
+    }
+
+    // makes the call once the pacing allows it, with the correlation id of the refresh
+    private <T> CompletableFuture<T> paced(String requestId, Supplier<CompletableFuture<T>> call) {
+        long delayNanos = reserveCall();
+        if (delayNanos <= 0) {
+            return AppUtilities.withRequestId(requestId, call);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        scheduler.schedule(() -> AppUtilities.withRequestId(requestId, call).whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        }), delayNanos, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    // takes the next free call slot, one every callIntervalNanos across all the terms, and returns how long to wait for it
+    private synchronized long reserveCall() {
+        if (callIntervalNanos == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextCallNanos);
+        nextCallNanos = slot + callIntervalNanos;
+        return slot - now;
+    }
+
+    // called with the lock of the term held
+    private void scheduleRefresh(TermState state, long delayMs) {
+        if (!state.closed) {
+            state.nextRefresh = scheduler.schedule(() -> refresh(state), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // called with the lock of the term held
+    private static void stopWatching(TermState state) {
+        state.closed = true;
+        if (state.nextRefresh != null) {
+            state.nextRefresh.cancel(false);
+            state.nextRefresh = null;
+        }
+    }
+
+    // a watched term. Guarded by its own lock.
+    private static final class TermState {
+        private final String term;
+        private final List<WatchListener> listeners = new ArrayList<>();
+        private Map<String, GitProjectModel> projects = new LinkedHashMap<>();
+        private boolean refreshed;
+        private boolean closed;
+        private CompletableFuture<Void> inFlight;
+        private ScheduledFuture<?> nextRefresh;
+
+        private TermState(String term) {
+            this.term = term;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.workday.watch;
+
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.TweetsModel;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes a refresh of a watched search term found since the previous refresh: the projects that entered or left
+ * the results, and the projects with new tweets or a new rank. The first event of a subscriber has every project as added.
+ */
+public class WatchEvent {
+
+    private final String term;
+    private final long timestamp;
+    private final List<ProjectChange> changes;
+
+    public WatchEvent(String term, long timestamp, List<ProjectChange> changes) {
+        this.term = term;
+        this.timestamp = timestamp;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    /**
+     * Returns the time of the refresh, in epoch milliseconds
+     * @return
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<ProjectChange> getChanges() {
+        return changes;
+    }
+
+    public enum ChangeType {
+        ADDED,
+        UPDATED,
+        REMOVED
+    }
+
+    /**
+     * The change of one project. The project has its tweets as they are after the refresh, the most recent 5 or less.
+     */
+    public static class ProjectChange {
+
+        private final ChangeType type;
+        private final int rank;
+        private final int previousRank;
+        private final GitProjectModel project;
+        private final List<TweetsModel> newTweets;
+
+        public ProjectChange(ChangeType type, int rank, int previousRank, GitProjectModel project, List<TweetsModel> newTweets) {
+            this.type = type;
+            this.rank = rank;
+            this.previousRank = previousRank;
+            this.project = project;
+            this.newTweets = newTweets;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        /**
+         * Returns the position of the project in the GitHub ranking, from 0, or -1 if it was removed
+         * @return
+         */
+        public int getRank() {
+            return rank;
+        }
+
+        /**
+         * Returns the position of the project in the previous refresh, or -1 if it was added
+         * @return
+         */
+        public int getPreviousRank() {
+            return previousRank;
+        }
+
+        public GitProjectModel getProject() {
+            return project;
+        }
+
+        /**
+         * Returns the tweets that were not seen before, most recent first
+         * @return
+         */
+        public List<TweetsModel> getNewTweets() {
+            return newTweets;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.workday.watch;
+
+/**
+ * Gets the changes of a search term watched by a SummaryWatcher. The events of all the terms are delivered one at a time,
+ * on the event thread of the watcher, so a listener should hand off any slow work.
+ */
+public interface WatchListener {
+
+    /**
+     * Called with the changes found by a refresh of the term
+     * @param event
+     */
+    void onChange(WatchEvent event);
+}
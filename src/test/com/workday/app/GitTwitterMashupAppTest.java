@@ -1,27 +1,43 @@
 package test.com.workday.app;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.workday.app.GitTwitterMashupApp;
 import com.workday.app.MashupAppException;
+import com.workday.app.SummaryFormat;
 import com.workday.app.model.GitProjectModel;
 import com.workday.app.model.GitSearchResultModel;
 import com.workday.app.model.TweetsModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.model.TweetsStatus;
 import com.workday.app.utils.AppUtilities;
 import com.workday.git.GitAPILib;
+import com.workday.http.Deadline;
 import com.workday.twitter.TwitterAPILib;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -124,10 +140,17 @@ public class GitTwitterMashupAppTest {
             "\t}]\n" +
             "}";
 
+    // Json for three projects returned from GitHub Search API, trimmed down to the fields the app reads
+    private static final String gitSearchThreeProjectsJson = "{\"total_count\":3,\"incomplete_results\":false,\"items\":[" +
+            "{\"name\":\"RxJava\",\"full_name\":\"ReactiveX/RxJava\",\"html_url\":\"https://github.com/ReactiveX/RxJava\",\"description\":\"RxJava\",\"owner\":{\"login\":\"ReactiveX\"}}," +
+            "{\"name\":\"ReactiveCocoa\",\"full_name\":\"ReactiveCocoa/ReactiveCocoa\",\"html_url\":\"https://github.com/ReactiveCocoa/ReactiveCocoa\",\"description\":\"Streams\",\"owner\":{\"login\":\"ReactiveCocoa\"}}," +
+            "{\"name\":\"reactor-core\",\"full_name\":\"reactor/reactor-core\",\"html_url\":\"https://github.com/reactor/reactor-core\",\"description\":\"Reactor\",\"owner\":{\"login\":\"reactor\"}}" +
+            "]}";
+
     @Before
     public void setup() {
         this.properties = AppUtilities.readProperties();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.gson = AppUtilities.gsonBuilder().setPrettyPrinting().create();
         this.gitLib = mock(GitAPILib.class);
         this.twitterLib = mock(TwitterAPILib.class);
     }
@@ -139,8 +162,8 @@ public class GitTwitterMashupAppTest {
      */
     @Test
     public void getGitProjectsSummaryTest() throws IOException, MashupAppException {
-        when(gitLib.search(anyString())).thenReturn(gitSearchJson);
-        when(twitterLib.searchTweets(anyString())).thenReturn(tweetsSearchJson);
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(gitSearchJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
 
         GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, this.properties, this.gson);
         String json = mashupApp.getGitProjectsSummary("abc");
@@ -165,5 +188,196 @@ public class GitTwitterMashupAppTest {
         assertNotNull("tweet owner should not be null", tweet.getUser());
     }
 
+    /**
+     * Test that the concurrent tweet lookups keep the GitHub ranking order
+     * and that a failed lookup for one project does not lose the tweets of the others
+     * @throws IOException
+     * @throws MashupAppException
+     */
+    @Test
+    public void getGitProjectsSummaryPartialTweetsFailureTest() throws IOException, MashupAppException {
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(gitSearchThreeProjectsJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class))).thenReturn(CompletableFuture.<TweetsSearchResultModel>failedFuture(new IOException("Server exception response code: 503")));
+
+        Properties parallelProperties = new Properties();
+        parallelProperties.putAll(this.properties);
+        parallelProperties.setProperty("TWEETS_FETCH_PARALLELISM", "3");
+
+        GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, parallelProperties, this.gson);
+        try {
+            GitSearchResultModel result = gson.fromJson(mashupApp.getGitProjectsSummary("abc"), GitSearchResultModel.class);
+            assertEquals("Three projects should be returned", 3, result.getItems().size());
+            assertEquals("GitHub ranking order should be kept", "RxJava", result.getItems().get(0).getName());
+            assertEquals("GitHub ranking order should be kept", "ReactiveCocoa", result.getItems().get(1).getName());
+            assertEquals("GitHub ranking order should be kept", "reactor-core", result.getItems().get(2).getName());
+
+            assertEquals("tweets of the other projects should be kept", 1, result.getItems().get(0).getTweets().size());
+            assertTrue("failed project should have no tweets", result.getItems().get(1).getTweets().isEmpty());
+            assertEquals("failed project should be marked", TweetsStatus.UNAVAILABLE, result.getItems().get(1).getTweetsStatus());
+            assertNull("fetched project should not be marked", result.getItems().get(0).getTweetsStatus());
+            assertEquals("tweets of the other projects should be kept", 1, result.getItems().get(2).getTweets().size());
+        } finally {
+            mashupApp.close();
+        }
+    }
+
+    /**
+     * Test that a project name appearing twice in one summary is searched on Twitter only once
+     * @throws Exception
+     */
+    @Test
+    public void getGitProjectsSummaryCoalescesDuplicateProjectsTest() throws Exception {
+        String forksJson = gitSearchThreeProjectsJson.replace("RxJava", "ReactiveCocoa");
+        CompletableFuture<TweetsSearchResultModel> pendingTweets = new CompletableFuture<>();
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(forksJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class))).thenReturn(pendingTweets);
+
+        GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, this.properties, this.gson);
+        try {
+            CompletableFuture<String> summary = mashupApp.getGitProjectsSummaryAsync("abc");
+            pendingTweets.complete(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class));
+            GitSearchResultModel result = gson.fromJson(summary.get(), GitSearchResultModel.class);
+
+            assertEquals("Both forks should get the tweets", 1, result.getItems().get(0).getTweets().size());
+            assertEquals("Both forks should get the tweets", 1, result.getItems().get(1).getTweets().size());
+            verify(twitterLib, times(1)).searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class));
+            assertEquals("The second lookup should be coalesced", 1, mashupApp.getTweetsFlight().getCoalesced());
+        } finally {
+            mashupApp.close();
+        }
+    }
+
+    /**
+     * Test that a summary returns at its deadline with the tweets fetched so far,
+     * and marks the project whose tweets did not arrive in time
+     * @throws Exception
+     */
+    @Test
+    public void getGitProjectsSummaryDeadlineTest() throws Exception {
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(gitSearchThreeProjectsJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class))).thenReturn(new CompletableFuture<>());
+
+        GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, this.properties, this.gson);
+        try {
+            long start = System.nanoTime();
+            GitSearchResultModel result = gson.fromJson(mashupApp.getGitProjectsSummary("abc", Deadline.after(300)), GitSearchResultModel.class);
+            assertTrue("summary should return at the deadline", (System.nanoTime() - start) / 1000000 < 3000);
+
+            assertEquals("Three projects should be returned", 3, result.getItems().size());
+            assertEquals("tweets fetched in time should be kept", 1, result.getItems().get(0).getTweets().size());
+            assertEquals("late project should be marked", TweetsStatus.TIMED_OUT, result.getItems().get(1).getTweetsStatus());
+            assertTrue("late project should have no tweets", result.getItems().get(1).getTweets().isEmpty());
+            assertEquals("tweets fetched in time should be kept", 1, result.getItems().get(2).getTweets().size());
+        } finally {
+            mashupApp.close();
+        }
+    }
+
+    /**
+     * Test that a summary with a short deadline does not cut short the lookups it shares with the other summaries
+     * @throws Exception
+     */
+    @Test
+    public void getGitProjectsSummarySharedLookupDeadlineTest() throws Exception {
+        CompletableFuture<TweetsSearchResultModel> pendingTweets = new CompletableFuture<>();
+        ArgumentCaptor<Deadline> lookupDeadline = ArgumentCaptor.forClass(Deadline.class);
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(gitSearchThreeProjectsJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(eq("ReactiveCocoa"), lookupDeadline.capture())).thenReturn(pendingTweets);
+
+        GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, this.properties, this.gson);
+        try {
+            CompletableFuture<String> hurried = mashupApp.getGitProjectsSummaryAsync("abc", Deadline.after(100));
+            CompletableFuture<String> patient = mashupApp.getGitProjectsSummaryAsync("abc", Deadline.after(5000));
 
+            GitSearchResultModel hurriedResult = gson.fromJson(hurried.get(), GitSearchResultModel.class);
+            assertEquals("the short summary should time out", TweetsStatus.TIMED_OUT, hurriedResult.getItems().get(1).getTweetsStatus());
+            assertTrue("the shared lookup should not keep the short deadline", lookupDeadline.getValue().remainingMillis() > 1000);
+
+            pendingTweets.complete(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class));
+            GitSearchResultModel patientResult = gson.fromJson(patient.get(), GitSearchResultModel.class);
+            assertNull("the long summary should get the shared tweets", patientResult.getItems().get(1).getTweetsStatus());
+            assertEquals("the long summary should get the shared tweets", 1, patientResult.getItems().get(1).getTweets().size());
+            verify(twitterLib, times(1)).searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class));
+        } finally {
+            mashupApp.close();
+        }
+    }
+
+    /**
+     * Test that the streamed summary writes each project once its tweets are resolved, in ranking order,
+     * without waiting for the slower lookups of the projects ranked below it
+     * @throws Exception
+     */
+    @Test
+    public void getGitProjectsSummaryStreamsProjectsTest() throws Exception {
+        CompletableFuture<TweetsSearchResultModel> pendingTweets = new CompletableFuture<>();
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(gitSearchThreeProjectsJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class))).thenReturn(pendingTweets);
+
+        GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, this.properties, this.gson);
+        try {
+            StringBuffer out = new StringBuffer();
+            CompletableFuture<Void> summary = mashupApp.getGitProjectsSummaryAsync("abc", out, SummaryFormat.NDJSON);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (out.indexOf("\n") < 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            String[] firstLines = out.toString().split("\n");
+            assertEquals("Only the first project should be written before the second is resolved", 1, firstLines.length);
+            assertEquals("GitHub ranking order should be kept", "RxJava", gson.fromJson(firstLines[0], GitProjectModel.class).getName());
+
+            pendingTweets.complete(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class));
+            summary.get();
+            String[] lines = out.toString().split("\n");
+            assertEquals("One line per project should be written", 3, lines.length);
+            assertEquals("GitHub ranking order should be kept", "ReactiveCocoa", gson.fromJson(lines[1], GitProjectModel.class).getName());
+            assertEquals("GitHub ranking order should be kept", "reactor-core", gson.fromJson(lines[2], GitProjectModel.class).getName());
+
+            StringBuilder json = new StringBuilder();
+            mashupApp.getGitProjectsSummary("abc", json, SummaryFormat.JSON);
+            GitSearchResultModel result = gson.fromJson(json.toString(), GitSearchResultModel.class);
+            assertTrue("compact json should be on one line", json.indexOf("\n") < 0);
+            assertEquals("Three projects should be returned", 3, result.getItems().size());
+            assertEquals("tweets should be written", 1, result.getItems().get(1).getTweets().size());
+        } finally {
+            mashupApp.close();
+        }
+    }
+
+    /**
+     * Test that with batched queries the tweets of all the projects are searched with one call to the Twitter library
+     * @throws Exception
+     */
+    @Test
+    public void getGitProjectsSummaryBatchedTweetsTest() throws Exception {
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenReturn(CompletableFuture.completedFuture(gson.fromJson(gitSearchThreeProjectsJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsBatchAsync(anyCollectionOf(String.class), any(Deadline.class))).thenAnswer(invocation -> {
+            Map<String, CompletableFuture<List<TweetsModel>>> tweets = new HashMap<>();
+            for (Object projectName : (Collection<?>) invocation.getArguments()[0]) {
+                tweets.put((String) projectName, CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class).getTweets()));
+            }
+            return tweets;
+        });
+
+        Properties batchProperties = new Properties();
+        batchProperties.putAll(this.properties);
+        batchProperties.setProperty("TWEETS_BATCH_QUERIES", "true");
+
+        GitTwitterMashupApp mashupApp = new GitTwitterMashupApp(gitLib, twitterLib, batchProperties, this.gson);
+        try {
+            GitSearchResultModel result = gson.fromJson(mashupApp.getGitProjectsSummary("abc"), GitSearchResultModel.class);
+            for (GitProjectModel project : result.getItems()) {
+                assertEquals("Every project should get its tweets", 1, project.getTweets().size());
+            }
+            verify(twitterLib, times(1)).searchTweetsBatchAsync(anyCollectionOf(String.class), any(Deadline.class));
+            verify(twitterLib, never()).searchTweetsResultAsync(anyString(), any(Deadline.class));
+        } finally {
+            mashupApp.close();
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package test.com.workday.app.cache;
+
+import com.workday.app.cache.CacheStats;
+import com.workday.app.cache.ResultCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests the expiry, stale-while-revalidate, negative caching and eviction of the ResultCache
+ * The time is driven by a manual clock, so no test waits.
+ */
+public class ResultCacheTest {
+
+    private ManualClock clock;
+    private AtomicInteger loads;
+    private ResultCache<String, List<String>> cache;
+
+    @Before
+    public void setup() {
+        this.clock = new ManualClock();
+        this.loads = new AtomicInteger();
+        this.cache = new ResultCache<>("test", 2, 1000, 5000, 100, List::isEmpty, clock);
+    }
+
+    @Test
+    public void freshAndStaleHitsTest() {
+        assertEquals("1", get("a"));
+        assertEquals("1", get("a"));
+        assertEquals("Fresh entry should not be loaded again", 1, loads.get());
+
+        clock.advance(2000);
+        assertEquals("Stale entry should be served right away", "1", get("a"));
+        assertEquals("Stale entry should be refreshed in the background", 2, loads.get());
+        assertEquals("Refreshed entry should be served", "2", get("a"));
+
+        clock.advance(10000);
+        assertEquals("Expired entry should be loaded again", "3", get("a"));
+
+        CacheStats stats = cache.stats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getStaleHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    public void negativeEntriesTest() {
+        cache.get("empty", key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(Collections.<String>emptyList());
+        });
+        cache.get("failed", key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("Server exception response code: 503"));
+        });
+        assertTrue(get("empty") == null);
+        assertTrue("Failure should be served from the cache", cache.get("failed", key -> null).isCompletedExceptionally());
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.stats().getNegativeHits());
+
+        clock.advance(200);
+        assertEquals("Negative entry should expire after its ttl", "3", get("empty"));
+    }
+
+    @Test
+    public void evictionTest() {
+        get("a");
+        get("b");
+        get("a");
+        get("c");
+        assertEquals("Least recently used entry should be evicted", 1, cache.stats().getEvictions());
+        get("a");
+        assertEquals("Recently used entry should be kept", 3, loads.get());
+        get("b");
+        assertEquals("Evicted entry should be loaded again", 4, loads.get());
+    }
+
+    // returns the first element of the cached value, loading a list with the load count if needed
+    private String get(String key) {
+        List<String> value = cache.get(key, k -> CompletableFuture.completedFuture(Arrays.asList(String.valueOf(loads.incrementAndGet())))).join();
+        return value.isEmpty() ? null : value.get(0);
+    }
+
+    private static final class ManualClock extends Clock {
+        private long millis = 1000;
+
+        void advance(long ms) {
+            millis += ms;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
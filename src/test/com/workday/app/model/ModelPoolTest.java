@@ -0,0 +1,192 @@
+package test.com.workday.app.model;
+
+import com.google.gson.Gson;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.ModelPool;
+import com.workday.app.model.TweetsModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests that the compact lists of the ModelPool read back the same models, and that they take less heap than the
+ * parsed models on responses made from the recorded GitHub and Twitter responses of the stub server.
+ * The heap is measured by walking the object graphs, with the object layout of a 64 bit JVM with compressed references.
+ */
+public class ModelPoolTest {
+
+    private static final int SEARCHES = 50;
+    private static final int PROJECTS = 300;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * Test that the compact lists give back the projects and tweets they were made of, sharing the owners and users
+     * @throws Exception
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        ModelPool pool = new ModelPool();
+        List<GitProjectModel> projects = parseProjects();
+        List<GitProjectModel> compact = pool.compactProjects(projects);
+        assertEquals(projects.size(), compact.size());
+        for (int i = 0; i < projects.size(); i++) {
+            GitProjectModel project = projects.get(i);
+            GitProjectModel copy = compact.get(i);
+            assertEquals(project.getName(), copy.getName());
+            assertEquals(project.getFullName(), copy.getFullName());
+            assertEquals(project.getHtmlUrl(), copy.getHtmlUrl());
+            assertEquals(project.getDescription(), copy.getDescription());
+            assertEquals(project.getOwner(), copy.getOwner());
+        }
+        assertSame("Owners should be shared across lists", compact.get(0).getOwner(), pool.compactProjects(parseProjects()).get(0).getOwner());
+
+        List<TweetsModel> tweets = parseTweets();
+        List<TweetsModel> compactTweets = pool.compactTweets(tweets);
+        for (int i = 0; i < tweets.size(); i++) {
+            assertEquals(tweets.get(i).getId(), compactTweets.get(i).getId());
+            assertEquals(tweets.get(i).getIdStr(), compactTweets.get(i).getIdStr());
+            assertEquals(tweets.get(i).getText(), compactTweets.get(i).getText());
+            assertEquals(tweets.get(i).getSource(), compactTweets.get(i).getSource());
+            assertEquals(tweets.get(i).getUser(), compactTweets.get(i).getUser());
+            assertEquals(tweets.get(i).getRetweetCount(), compactTweets.get(i).getRetweetCount());
+        }
+        assertTrue("Empty results should stay empty", pool.compactTweets(Collections.emptyList()).isEmpty());
+    }
+
+    /**
+     * Test that the compact lists and their pools take less heap than the parsed results they replace, without any value
+     * repeated across the results: every string of every response is made distinct, so only the values repeated within a
+     * response (an owner or a user of several results) are shared, and the saving is a floor for the real responses
+     * @throws Exception
+     */
+    @Test
+    public void footprintTest() throws Exception {
+        List<Object> parsed = new ArrayList<>();
+        List<Object> compact = new ArrayList<>();
+        ModelPool projectsPool = new ModelPool();
+        ModelPool tweetsPool = new ModelPool();
+        for (int i = 0; i < SEARCHES; i++) {
+            String json = distinct(read("resources/stub/git-search.json"), i);
+            parsed.add(Collections.unmodifiableList(gson.fromJson(json, GitSearchResultModel.class).getItems()));
+            compact.add(projectsPool.compactProjects(gson.fromJson(json, GitSearchResultModel.class).getItems()));
+        }
+        for (int i = 0; i < PROJECTS; i++) {
+            String json = distinct(read("resources/stub/tweets-search.json"), i);
+            parsed.add(Collections.unmodifiableList(gson.fromJson(json, TweetsSearchResultModel.class).getTweets()));
+            compact.add(tweetsPool.compactTweets(gson.fromJson(json, TweetsSearchResultModel.class).getTweets()));
+        }
+        compact.add(projectsPool);
+        compact.add(tweetsPool);
+
+        long parsedBytes = deepSize(parsed);
+        long compactBytes = deepSize(compact);
+        // about a half on these responses, from the lighter layout of the compact lists alone
+        assertTrue("Compact results should take less than two thirds of the heap, took " + compactBytes + " of " + parsedBytes,
+                compactBytes * 3 < parsedBytes * 2);
+    }
+
+    // helper method to make every string value of the response json unique to the copy
+    private static String distinct(String json, int copy) {
+        return json.replaceAll("\":(\\s*)\"", "\":$1\"" + copy + "-");
+    }
+
+    private List<GitProjectModel> parseProjects() throws IOException {
+        return gson.fromJson(read("resources/stub/git-search.json"), GitSearchResultModel.class).getItems();
+    }
+
+    private List<TweetsModel> parseTweets() throws IOException {
+        return gson.fromJson(read("resources/stub/tweets-search.json"), TweetsSearchResultModel.class).getTweets();
+    }
+
+    private static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    }
+
+    // helper method to sum the sizes of the objects reachable from the root, each counted once.
+    // Classes and enums are shared by the whole JVM and are not counted.
+    private static long deepSize(Object root) throws IllegalAccessException {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (object instanceof Class || object instanceof Enum || !seen.add(object)) {
+                continue;
+            }
+            Class<?> type = object.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(object);
+                size += align(16 + (long) length * slotSize(type.getComponentType()));
+                if (!type.getComponentType().isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        push(pending, Array.get(object, i));
+                    }
+                }
+                continue;
+            }
+            long shallow = 12;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    shallow += slotSize(field.getType());
+                    if (!field.getType().isPrimitive()) {
+                        field.setAccessible(true);
+                        push(pending, field.get(object));
+                    }
+                }
+            }
+            size += align(shallow);
+        }
+        return size;
+    }
+
+    // helper method
+    private static void push(Deque<Object> pending, Object object) {
+        if (object != null) {
+            pending.push(object);
+        }
+    }
+
+    // helper method
+    private static int slotSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        // int, float and compressed references
+        return 4;
+    }
+
+    // helper method
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,71 @@
+package test.com.workday.app.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.model.TweetsStatus;
+import com.workday.app.utils.AppUtilities;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This tests that the hand written adapters of the model classes read and write the same JSON as the reflective adapters of Gson
+ */
+public class ModelTypeAdapterFactoryTest {
+
+    private final Gson reflective = new Gson();
+    private final Gson adapters = AppUtilities.gsonBuilder().create();
+
+    /**
+     * Test that the recorded GitHub and Twitter responses are read into the same models
+     * @throws Exception
+     */
+    @Test
+    public void readTest() throws Exception {
+        String gitSearch = read("resources/stub/git-search.json");
+        assertEquals(reflective.toJson(reflective.fromJson(gitSearch, GitSearchResultModel.class)),
+                reflective.toJson(adapters.fromJson(gitSearch, GitSearchResultModel.class)));
+
+        String tweetsSearch = read("resources/stub/tweets-search.json");
+        assertEquals(reflective.toJson(reflective.fromJson(tweetsSearch, TweetsSearchResultModel.class)),
+                reflective.toJson(adapters.fromJson(tweetsSearch, TweetsSearchResultModel.class)));
+
+        // nulls, strings for primitives and unknown fields
+        String odd = "{\"statuses\":[{\"text\":null,\"truncated\":\"true\",\"retweet_count\":null,\"favorite_count\":\"7\"," +
+                "\"entities\":{\"urls\":[{\"indices\":[0,23]}]},\"user\":null},null]}";
+        assertEquals(reflective.toJson(reflective.fromJson(odd, TweetsSearchResultModel.class)),
+                reflective.toJson(adapters.fromJson(odd, TweetsSearchResultModel.class)));
+    }
+
+    /**
+     * Test that a summary is written the same, pretty printed or not
+     * @throws Exception
+     */
+    @Test
+    public void writeTest() throws Exception {
+        GitSearchResultModel summary = adapters.fromJson(read("resources/stub/git-search.json"), GitSearchResultModel.class);
+        TweetsSearchResultModel tweets = adapters.fromJson(read("resources/stub/tweets-search.json"), TweetsSearchResultModel.class);
+        for (GitProjectModel project : summary.getItems()) {
+            project.setTweets(tweets.getTweets());
+        }
+        summary.getItems().get(1).setTweetsStatus(TweetsStatus.TIMED_OUT);
+        summary.getItems().add(new GitProjectModel("nameless", null, null, null, null));
+
+        assertEquals(reflective.toJson(summary), adapters.toJson(summary));
+        Gson prettyReflective = new GsonBuilder().setPrettyPrinting().create();
+        Gson prettyAdapters = AppUtilities.gsonBuilder().setPrettyPrinting().create();
+        assertEquals(prettyReflective.toJson(summary), prettyAdapters.toJson(summary));
+    }
+
+    private static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    }
+}
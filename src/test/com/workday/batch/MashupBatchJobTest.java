@@ -0,0 +1,120 @@
+package test.com.workday.batch;
+
+import com.google.gson.Gson;
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.utils.AppUtilities;
+import com.workday.batch.BatchStats;
+import com.workday.batch.MashupBatchJob;
+import com.workday.git.GitAPILib;
+import com.workday.http.Deadline;
+import com.workday.twitter.TwitterAPILib;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This tests the batch job pipeline, with the github api service and the twitter api service mocked using mockito
+ */
+public class MashupBatchJobTest {
+
+    // Json for two projects returned from GitHub Search API, trimmed down to the fields the app reads
+    private static final String gitSearchJson = "{\"total_count\":2,\"incomplete_results\":false,\"items\":[" +
+            "{\"id\":7508411,\"name\":\"RxJava\",\"full_name\":\"ReactiveX/RxJava\",\"description\":\"Reactive Extensions for the JVM\"}," +
+            "{\"id\":3606624,\"name\":\"ReactiveCocoa\",\"full_name\":\"ReactiveCocoa/ReactiveCocoa\",\"description\":\"Streams of values over time\"}]}";
+
+    // Json for one tweet returned from Twitter Search API
+    private static final String tweetsSearchJson = "{\"statuses\":[{\"created_at\":\"Thu Apr 05 17:47:07 +0000 2018\",\"text\":\"Reactive streams\"," +
+            "\"user\":{\"name\":\"dev\",\"screen_name\":\"dev\"}}]}";
+
+    private final Gson gson = new Gson();
+    private GitAPILib gitLib;
+    private TwitterAPILib twitterLib;
+    private GitTwitterMashupApp app;
+    private MashupBatchJob job;
+    private Path output;
+
+    @Before
+    public void setup() throws IOException {
+        this.gitLib = mock(GitAPILib.class);
+        this.twitterLib = mock(TwitterAPILib.class);
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(gitSearchJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+
+        Properties properties = AppUtilities.readProperties();
+        // no caches, so only the batch can share the lookups across terms
+        properties.setProperty("CACHE_GIT_MAX_ENTRIES", "0");
+        properties.setProperty("CACHE_TWEETS_MAX_ENTRIES", "0");
+        this.app = new GitTwitterMashupApp(gitLib, twitterLib, properties, gson);
+        this.job = new MashupBatchJob(app, properties);
+        this.output = Files.createTempFile("mashup-batch", ".ndjson");
+        Files.delete(output);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        app.close();
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Test that every term gets a line and that the project names shared by the terms are looked up on Twitter once
+     * @throws Exception
+     */
+    @Test
+    public void runSharesTweetLookupsAcrossTermsTest() throws Exception {
+        BatchStats stats = job.run(new StringReader("reactive\n\nrx\nReactive\n"), output);
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals("One line per distinct term should be written", 2, lines.size());
+        assertTrue("The term should be written first", lines.stream().anyMatch(line -> line.startsWith("{\"term\":\"reactive\",\"items\":[{")));
+        assertEquals(3, stats.getTermsRead());
+        assertEquals("The repeated term should be skipped", 1, stats.getTermsSkipped());
+        assertEquals(2, stats.getTermsWritten());
+        assertEquals("Each project name should be looked up once", 2, stats.getTweetLookups());
+        assertEquals(2, stats.getTweetLookupsShared());
+        verify(twitterLib, times(1)).searchTweetsResultAsync(eq("RxJava"), any(Deadline.class));
+        verify(twitterLib, times(1)).searchTweetsResultAsync(eq("ReactiveCocoa"), any(Deadline.class));
+    }
+
+    /**
+     * Test that a second run skips the terms already written and drops a line cut short by an interrupted run
+     * @throws Exception
+     */
+    @Test
+    public void runResumesFromOutputTest() throws Exception {
+        job.run(new StringReader("reactive\nrx\n"), output);
+        Files.write(output, "{\"term\":\"stre".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        BatchStats stats = job.run(new StringReader("reactive\nrx\nstreams\n"), output);
+
+        assertEquals("Finished terms should be skipped", 2, stats.getTermsSkipped());
+        assertEquals(1, stats.getTermsWritten());
+        verify(gitLib, times(1)).searchResultAsync(eq("reactive"), any(Deadline.class));
+        verify(gitLib, times(1)).searchResultAsync(eq("streams"), any(Deadline.class));
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals("The incomplete line should be replaced", 3, lines.size());
+        assertTrue(lines.get(2).startsWith("{\"term\":\"streams\""));
+    }
+}
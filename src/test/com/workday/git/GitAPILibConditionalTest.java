@@ -0,0 +1,98 @@
+package test.com.workday.git;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.git.GitAPILib;
+import com.workday.http.HttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * This tests the conditional GitHub searches against a local http server that answers 304 to a matching If-None-Match
+ */
+public class GitAPILibConditionalTest {
+
+    private static final String ETAG = "\"e1\"";
+    private static final String SEARCH_JSON = "{\"total_count\":2,\"incomplete_results\":false,\"items\":[" +
+            "{\"id\":7508411,\"name\":\"RxJava\",\"full_name\":\"ReactiveX/RxJava\",\"owner\":{\"login\":\"ReactiveX\"}," +
+            "\"html_url\":\"https://github.com/ReactiveX/RxJava\",\"description\":\"Reactive Extensions for the JVM\"}," +
+            "{\"id\":3606624,\"name\":\"ReactiveCocoa\",\"full_name\":\"ReactiveCocoa/ReactiveCocoa\",\"owner\":{\"login\":\"ReactiveCocoa\"}," +
+            "\"html_url\":\"https://github.com/ReactiveCocoa/ReactiveCocoa\",\"description\":\"Streams of values over time\"}]}";
+
+    private HttpServer server;
+    private GitAPILib gitLib;
+    private List<String> validators;
+
+    @Before
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/search/repositories", this::respond);
+        this.server.start();
+        this.gitLib = new GitAPILib(new HttpTransport(new Properties()), new Gson(), "http://localhost:" + server.getAddress().getPort());
+        this.validators = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test that the ETag of the results is sent back and that a 304 gives the results decoded before
+     * @throws Exception
+     */
+    @Test
+    public void notModifiedReusesResultsTest() throws Exception {
+        GitSearchResultModel first = gitLib.searchResultAsync("reactive").get();
+        GitSearchResultModel second = gitLib.searchResultAsync("reactive").get();
+
+        assertEquals("The first search should not be conditional", "", validators.get(0));
+        assertEquals("The ETag of the results should be sent back", ETAG, validators.get(1));
+        assertSame("The results decoded before should be reused", first, second);
+        assertEquals(Integer.valueOf(2), second.getTotalCount());
+        assertEquals(2, second.getItems().size());
+        assertEquals("ReactiveX/RxJava", second.getItems().get(0).getFullName());
+        assertEquals("https://github.com/ReactiveX/RxJava", second.getItems().get(0).getHtmlUrl());
+        assertEquals("Streams of values over time", second.getItems().get(1).getDescription());
+        // the projects are read out of the compact list, so a reader cannot change what the next 304 gives back
+        second.getItems().get(0).setTweets(Collections.emptyList());
+        assertNull(gitLib.searchResultAsync("reactive").get().getItems().get(0).getTweets());
+
+        gitLib.searchResultAsync("other").get();
+        assertEquals("A search term has its own ETag", "", validators.get(3));
+    }
+
+    // answers 304 when the If-None-Match is the ETag of the results, and the results otherwise
+    private void respond(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        validators.add(ifNoneMatch == null ? "" : ifNoneMatch);
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        if (ETAG.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = SEARCH_JSON.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
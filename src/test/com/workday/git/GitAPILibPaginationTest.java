@@ -0,0 +1,126 @@
+package test.com.workday.git;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.app.model.GitProjectModel;
+import com.workday.git.GitAPILib;
+import com.workday.http.HttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests the paginated GitHub search against a local http server that pages through a fixed number of repositories
+ */
+public class GitAPILibPaginationTest {
+
+    private static final int REPOSITORIES = 250;
+    private static final Pattern PARAMETER = Pattern.compile("[?&](per_page|page)=(\\d+)");
+
+    private HttpServer server;
+    private GitAPILib gitLib;
+    private List<String> queries;
+
+    @Before
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.start();
+        this.gitLib = new GitAPILib(new HttpTransport(new Properties()), new Gson(), "http://localhost:" + server.getAddress().getPort());
+        this.queries = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test that the pages after the first are fetched from the total count and handed over in ranking order
+     * @throws Exception
+     */
+    @Test
+    public void searchProjectsFetchesPagesInOrderTest() throws Exception {
+        server.createContext("/search/repositories", exchange -> respondPage(exchange, true));
+        List<Integer> pageSizes = new CopyOnWriteArrayList<>();
+
+        List<GitProjectModel> projects = gitLib.searchProjectsAsync("reactive", "stars", "desc", 220, page -> pageSizes.add(page.size())).get();
+
+        assertEquals("The projects asked for should be returned", 220, projects.size());
+        for (int i = 0; i < projects.size(); i++) {
+            assertEquals("Ranking order should be kept", "project-" + i, projects.get(i).getName());
+        }
+        assertEquals("Pages should be handed over in order, trimmed to the count", List.of(100, 100, 20), pageSizes);
+        assertEquals("Only the pages needed should be fetched", 3, queries.size());
+        assertTrue(queries.get(0).contains("sort=stars") && queries.get(0).contains("order=desc") && queries.get(0).contains("per_page=100"));
+    }
+
+    /**
+     * Test that the next links are followed when the first page gives no total count
+     * @throws Exception
+     */
+    @Test
+    public void searchProjectsFollowsNextLinksTest() throws Exception {
+        server.createContext("/search/repositories", exchange -> respondPage(exchange, false));
+
+        List<GitProjectModel> projects = gitLib.searchProjectsAsync("reactive", null, null, 500, null).get();
+
+        assertEquals("All the repositories should be returned", REPOSITORIES, projects.size());
+        assertEquals("project-249", projects.get(249).getName());
+        assertEquals(3, queries.size());
+    }
+
+    // answers a page of the repositories, with the Link header of the next page and, with a total count, of the last page
+    private void respondPage(HttpExchange exchange, boolean withTotalCount) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        queries.add(query);
+        int perPage = 30;
+        int page = 1;
+        Matcher matcher = PARAMETER.matcher("?" + query);
+        while (matcher.find()) {
+            if ("per_page".equals(matcher.group(1))) {
+                perPage = Integer.parseInt(matcher.group(2));
+            } else {
+                page = Integer.parseInt(matcher.group(2));
+            }
+        }
+        int lastPage = (REPOSITORIES + perPage - 1) / perPage;
+        StringBuilder json = new StringBuilder("{");
+        if (withTotalCount) {
+            json.append("\"total_count\":").append(REPOSITORIES).append(",");
+        }
+        json.append("\"items\":[");
+        for (int i = (page - 1) * perPage; i < Math.min(page * perPage, REPOSITORIES); i++) {
+            json.append(i > (page - 1) * perPage ? "," : "").append("{\"name\":\"project-").append(i).append("\"}");
+        }
+        json.append("]}");
+
+        String url = "http://localhost:" + server.getAddress().getPort() + "/search/repositories?q=reactive&per_page=" + perPage;
+        StringBuilder link = new StringBuilder();
+        if (page < lastPage) {
+            link.append("<").append(url).append("&page=").append(page + 1).append(">; rel=\"next\"");
+            if (withTotalCount) {
+                link.append(", <").append(url).append("&page=").append(lastPage).append(">; rel=\"last\"");
+            }
+            exchange.getResponseHeaders().add("Link", link.toString());
+        }
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
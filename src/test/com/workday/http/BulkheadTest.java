@@ -0,0 +1,36 @@
+package test.com.workday.http;
+
+import com.workday.http.Bulkhead;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests the Bulkhead slots and its queue of waiting calls
+ */
+public class BulkheadTest {
+
+    @Test
+    public void cancelledWaiterLeavesQueueTest() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 2);
+        assertTrue(bulkhead.acquire().isDone());
+        CompletableFuture<Void> first = bulkhead.acquire();
+        CompletableFuture<Void> second = bulkhead.acquire();
+        assertTrue("The queue should be full", bulkhead.acquire().isCompletedExceptionally());
+
+        // the waiting calls run out of time
+        first.cancel(false);
+        second.cancel(false);
+        assertEquals("The cancelled calls should leave the queue", 0, bulkhead.getQueued());
+        CompletableFuture<Void> third = bulkhead.acquire();
+        assertFalse("A new call should wait rather than be refused", third.isCompletedExceptionally());
+
+        bulkhead.release();
+        assertTrue("The slot should go to the call still waiting", third.isDone() && !third.isCompletedExceptionally());
+        assertEquals(1, bulkhead.getActive());
+    }
+}
@@ -0,0 +1,82 @@
+package test.com.workday.http;
+
+import com.workday.http.CircuitBreaker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests the state changes of the CircuitBreaker on failed and slow calls
+ */
+public class CircuitBreakerTest {
+
+    private long now;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        this.now = 1000;
+        Clock clock = new Clock() {
+            public ZoneOffset getZone() { return ZoneOffset.UTC; }
+            public Clock withZone(java.time.ZoneId zone) { return this; }
+            public long millis() { return now; }
+            public Instant instant() { return Instant.ofEpochMilli(now); }
+        };
+        // window of 4 calls, opens at 50% failures or 75% slow calls (>= 100ms), 2 trial calls after 5s open
+        this.circuitBreaker = new CircuitBreaker("test", 4, 4, 50, 75, 100, 5000, 2, clock);
+    }
+
+    @Test
+    public void opensOnFailureRateTest() {
+        call(false, 10);
+        call(true, 10);
+        call(false, 10);
+        assertEquals("Circuit should wait for the minimum calls", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        call(true, 10);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse("Calls should be refused while the circuit is open", circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void opensOnSlowCallRateTest() {
+        call(false, 200);
+        call(false, 200);
+        call(false, 10);
+        call(false, 200);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void halfOpenTrialCallsTest() {
+        for (int i = 0; i < 4; i++) {
+            call(true, 10);
+        }
+        now += 5000;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse("Only the trial calls should be let through", circuitBreaker.tryAcquire());
+        circuitBreaker.onResult(false, 10);
+        circuitBreaker.onResult(false, 10);
+        assertEquals("Successful trial calls should close the circuit", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        for (int i = 0; i < 4; i++) {
+            call(true, 10);
+        }
+        now += 5000;
+        call(true, 10);
+        assertEquals("A failed trial call should open the circuit again", CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    private void call(boolean failed, long durationMs) {
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onResult(failed, durationMs);
+    }
+}
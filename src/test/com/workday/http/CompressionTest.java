@@ -0,0 +1,130 @@
+package test.com.workday.http;
+
+import com.workday.http.Compression;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests the gzip and deflate streams of Compression against the ones of the JDK, and the negotiation of the encoding
+ */
+public class CompressionTest {
+
+    /**
+     * Test that what is encoded is decoded back, by Compression and by the JDK, and that the JDK gzip is decoded
+     * @throws Exception
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        byte[] json = Files.readAllBytes(Paths.get("resources/stub/git-search.json"));
+        for (int i = 0; i < 3; i++) {
+            // the second and third rounds use the pooled Inflaters and Deflaters
+            assertArrayEquals(json, decode(encode(json, Compression.GZIP), Compression.GZIP));
+            assertArrayEquals(json, decode(encode(json, Compression.DEFLATE), Compression.DEFLATE));
+        }
+        assertArrayEquals("JDK should read our gzip", json, new GZIPInputStream(new ByteArrayInputStream(encode(json, Compression.GZIP))).readAllBytes());
+
+        ByteArrayOutputStream jdkGzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(jdkGzip)) {
+            out.write(json);
+        }
+        assertArrayEquals("JDK gzip should be read", json, decode(jdkGzip.toByteArray(), Compression.GZIP));
+
+        ByteArrayOutputStream rawDeflate = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(rawDeflate, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            out.write(json);
+        }
+        assertArrayEquals("Raw deflate should be read", json, decode(rawDeflate.toByteArray(), Compression.DEFLATE));
+        assertArrayEquals("No encoding should pass through", json, decode(json, null));
+    }
+
+    /**
+     * Test that a corrupt gzip body is refused
+     * @throws Exception
+     */
+    @Test
+    public void corruptGzipTest() throws Exception {
+        byte[] gzip = encode("{\"items\":[]}".getBytes(StandardCharsets.UTF_8), Compression.GZIP);
+        gzip[gzip.length - 8] ^= 1;
+        try {
+            decode(gzip, Compression.GZIP);
+            fail("A wrong CRC should be refused");
+        } catch (ZipException e) {
+            assertEquals("Corrupt GZIP trailer", e.getMessage());
+        }
+        try {
+            decode("{}".getBytes(StandardCharsets.UTF_8), Compression.GZIP);
+            fail("A body that is not gzip should be refused");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that an aborted stream writes nothing more, and that its Deflater is given back ready for the next stream
+     * @throws Exception
+     */
+    @Test
+    public void abortTest() throws Exception {
+        byte[] json = "{\"items\":[{\"name\":\"RxJava\"}]}".getBytes(StandardCharsets.UTF_8);
+        for (String encoding : new String[]{Compression.GZIP, Compression.DEFLATE}) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            OutputStream out = Compression.encode(encoded, encoding);
+            out.write(json);
+            out.flush();
+            int written = encoded.size();
+            Compression.abort(out);
+            out.close();
+            assertEquals("An aborted stream should not be ended", written, encoded.size());
+            assertArrayEquals(json, decode(encode(json, encoding), encoding));
+        }
+    }
+
+    /**
+     * Test that gzip is picked over deflate, and that q=0 refuses an encoding
+     */
+    @Test
+    public void negotiateTest() {
+        assertEquals(Compression.GZIP, Compression.negotiate("gzip, deflate, br"));
+        assertEquals(Compression.GZIP, Compression.negotiate("deflate;q=1.0, GZIP;q=0.5"));
+        assertEquals(Compression.DEFLATE, Compression.negotiate("gzip;q=0, deflate"));
+        assertEquals(Compression.GZIP, Compression.negotiate("*"));
+        assertEquals(Compression.DEFLATE, Compression.negotiate("gzip;q=0, *"));
+        assertNull(Compression.negotiate("identity"));
+        assertNull(Compression.negotiate("br, *;q=0"));
+        assertNull(Compression.negotiate(null));
+    }
+
+    private static byte[] encode(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = Compression.encode(encoded, encoding)) {
+            out.write(bytes, 0, bytes.length / 2);
+            out.flush();
+            out.write(bytes, bytes.length / 2, bytes.length - bytes.length / 2);
+        }
+        return encoded.toByteArray();
+    }
+
+    private static byte[] decode(byte[] bytes, String encoding) throws IOException {
+        try (InputStream in = Compression.decode(new ByteArrayInputStream(bytes), encoding)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package test.com.workday.http;
+
+import com.sun.net.httpserver.HttpServer;
+import com.workday.http.CircuitBreaker;
+import com.workday.http.Deadline;
+import com.workday.http.HttpTransport;
+import com.workday.http.RetryClock;
+import com.workday.http.RetryPolicy;
+import com.workday.http.Upstream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests the retry paths of the HttpTransport against a local http server
+ * The retry delays go through a recording clock that completes them right away, so the tests run in milliseconds.
+ */
+public class HttpTransportRetryTest {
+
+    private HttpServer server;
+    private RecordingClock clock;
+    private HttpTransport transport;
+    private AtomicInteger calls;
+
+    @Before
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.start();
+        this.clock = new RecordingClock();
+        this.transport = new HttpTransport(new Properties(), new RetryPolicy(3, 30000, 120000, 0.2, 10, clock));
+        this.calls = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test that server errors are retried with a growing backoff until the call succeeds
+     * @throws Exception
+     */
+    @Test
+    public void retriesServerErrorsWithBackoffTest() throws Exception {
+        respond(503, 503, 200);
+        String body = transport.sendAsync(new Upstream("test"), request()).get();
+
+        assertEquals("ok", body);
+        assertEquals("Two retries should be made", 3, calls.get());
+        assertEquals(2, clock.delays.size());
+        assertTrue("First retry should wait about the base delay", clock.delays.get(0) >= 15000 && clock.delays.get(0) <= 30000);
+        assertTrue("Second retry should wait about twice the base delay", clock.delays.get(1) >= 30000 && clock.delays.get(1) <= 60000);
+    }
+
+    /**
+     * Test that the Retry-After header is used as the delay of the retry
+     * @throws Exception
+     */
+    @Test
+    public void honorsRetryAfterTest() throws Exception {
+        server.createContext("/", exchange -> {
+            int call = calls.incrementAndGet();
+            if (call == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "7");
+            }
+            send(exchange, call == 1 ? 429 : 200);
+        });
+        transport.sendAsync(new Upstream("test"), request()).get();
+
+        assertEquals(1, clock.delays.size());
+        assertEquals("Retry-After should be the delay", 7000L, (long) clock.delays.get(0));
+    }
+
+    /**
+     * Test that a call asked to wait longer than the max delay is not retried, and that a rate limited response with no
+     * Retry-After and no rate limit headers is retried after the backoff
+     * @throws Exception
+     */
+    @Test
+    public void rateLimitedRetryDelayTest() throws Exception {
+        server.createContext("/", exchange -> {
+            calls.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "600");
+            send(exchange, 429);
+        });
+        try {
+            transport.sendAsync(new Upstream("test"), request()).get();
+            fail("Call should fail without the retry");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("A retry before the Retry-After should not be made", 1, calls.get());
+        assertTrue(clock.delays.isEmpty());
+
+        server.removeContext("/");
+        calls.set(0);
+        respond(429, 200);
+        transport.sendAsync(new Upstream("test"), request()).get();
+        assertEquals(2, calls.get());
+        assertTrue("The retry should wait about the base delay", clock.delays.get(0) >= 15000 && clock.delays.get(0) <= 30000);
+    }
+
+    /**
+     * Test that a call fails once the retries are used up, and that client errors are not retried
+     * @throws Exception
+     */
+    @Test
+    public void stopsRetryingTest() throws Exception {
+        respond(500, 500, 500, 500, 500);
+        try {
+            transport.sendAsync(new Upstream("test"), request()).get();
+            fail("Call should fail after the retries");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("The first call and three retries should be made", 4, calls.get());
+
+        server.removeContext("/");
+        calls.set(0);
+        respond(404);
+        try {
+            transport.sendAsync(new Upstream("test"), request()).get();
+            fail("Call should fail on a client error");
+        } catch (ExecutionException e) {
+            assertEquals("Client errors should not be retried", 1, calls.get());
+        }
+    }
+
+    /**
+     * Test that a retry whose backoff ends after the deadline is not made, and that a call still in flight at the deadline fails
+     * @throws Exception
+     */
+    @Test
+    public void deadlineTest() throws Exception {
+        respond(503, 200);
+        try {
+            transport.sendAsync(new Upstream("test"), request(), HttpResponse.BodyHandlers.ofString(), Deadline.after(5000)).get();
+            fail("Call should fail without the retry");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("The retry should not be made", 1, calls.get());
+        assertTrue("No retry should be scheduled", clock.delays.isEmpty());
+
+        server.removeContext("/");
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, 200);
+        });
+        long start = System.nanoTime();
+        try {
+            transport.sendAsync(new Upstream("test"), request(), HttpResponse.BodyHandlers.ofString(), Deadline.after(200)).get();
+            fail("Call should fail at the deadline");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Deadline.DeadlineExceededException);
+        }
+        assertTrue("Call should not wait for the response", (System.nanoTime() - start) / 1000000 < 1500);
+    }
+
+    /**
+     * Test that the calls cut short by their deadline and the rate limited responses do not count against the circuit breaker
+     * @throws Exception
+     */
+    @Test
+    public void circuitBreakerIgnoresCancelledCallsTest() throws Exception {
+        Upstream upstream = new Upstream("test");
+        respond(429);
+        for (int i = 0; i < 3; i++) {
+            try {
+                transport.sendAsync(upstream, request(), HttpResponse.BodyHandlers.ofString(), Deadline.none()).get();
+                fail("Call should fail once the retries are used up");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals("Rate limited responses should not be failures", 0, upstream.getCircuitBreaker().getFailureRatePercent());
+
+        server.removeContext("/");
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, 200);
+        });
+        List<CompletableFuture<HttpResponse<String>>> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(transport.sendAsync(upstream, request(), HttpResponse.BodyHandlers.ofString(), Deadline.after(50)));
+        }
+        for (CompletableFuture<HttpResponse<String>> call : calls) {
+            try {
+                call.get();
+                fail("Call should fail at the deadline");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof Deadline.DeadlineExceededException);
+            }
+        }
+        // the cancelled sends are completed after the results
+        Thread.sleep(200);
+        assertEquals(CircuitBreaker.State.CLOSED, upstream.getCircuitBreaker().getState());
+        assertEquals("Cancelled calls should not be failures", 0, upstream.getCircuitBreaker().getFailureRatePercent());
+        assertEquals("Cancelled calls should not be network errors", 0, upstream.getMetrics().getNetworkErrors());
+    }
+
+    // answers the calls with the given status codes in order
+    private void respond(int... statusCodes) {
+        server.createContext("/", exchange -> send(exchange, statusCodes[Math.min(calls.getAndIncrement(), statusCodes.length - 1)]));
+    }
+
+    private static void send(com.sun.net.httpserver.HttpExchange exchange, int statusCode) throws IOException {
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private java.net.http.HttpRequest request() {
+        return transport.newRequest(URI.create("http://localhost:" + server.getAddress().getPort() + "/search")).GET().build();
+    }
+
+    private static final class RecordingClock implements RetryClock {
+        private final List<Long> delays = new CopyOnWriteArrayList<>();
+
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public CompletableFuture<Void> delay(long delayMs) {
+            delays.add(delayMs);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
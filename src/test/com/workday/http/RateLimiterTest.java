@@ -0,0 +1,117 @@
+package test.com.workday.http;
+
+import com.workday.http.RateLimiter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This tests the RateLimiter token bucket, driven by the rate limit headers of mocked responses
+ */
+public class RateLimiterTest {
+
+    private volatile long now;
+    private RateLimiter rateLimiter;
+
+    @Before
+    public void setup() {
+        this.now = 1000500;
+        Clock clock = new Clock() {
+            public ZoneOffset getZone() { return ZoneOffset.UTC; }
+            public Clock withZone(java.time.ZoneId zone) { return this; }
+            public long millis() { return now; }
+            public Instant instant() { return Instant.ofEpochMilli(now); }
+        };
+        this.rateLimiter = new RateLimiter("test", clock);
+    }
+
+    @Test
+    public void headerParsingTest() throws Exception {
+        assertEquals("The limit should be unknown before the first response", -1, rateLimiter.getLimit());
+        rateLimiter.acquire().get();
+        rateLimiter.onResponse(response(200, "X-RateLimit-Limit", "60", "X-RateLimit-Remaining", "10", "X-RateLimit-Reset", "1060"));
+        assertEquals(60, rateLimiter.getLimit());
+        assertEquals(10, rateLimiter.getRemaining());
+
+        rateLimiter.acquire().get();
+        rateLimiter.onResponse(response(200, "x-rate-limit-limit", "450", "x-rate-limit-remaining", "449", "x-rate-limit-reset", "1900"));
+        assertEquals(450, rateLimiter.getLimit());
+        assertEquals(449, rateLimiter.getRemaining());
+
+        assertTrue(RateLimiter.isRateLimited(response(429)));
+        assertTrue(RateLimiter.isRateLimited(response(403, "X-RateLimit-Remaining", "0")));
+        assertFalse("A 403 with calls left is not a rate limit", RateLimiter.isRateLimited(response(403, "X-RateLimit-Remaining", "5")));
+    }
+
+    @Test
+    public void queueUntilResetTest() throws Exception {
+        rateLimiter.acquire().get();
+        // no calls left until 1001s, half a second away
+        rateLimiter.onResponse(response(200, "X-RateLimit-Limit", "2", "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "1001"));
+
+        CompletableFuture<Void> queued = rateLimiter.acquire();
+        assertFalse("The request should wait for the reset", queued.isDone());
+        assertEquals(1, rateLimiter.getWaiting());
+
+        now = 1001000;
+        queued.get(5, TimeUnit.SECONDS);
+        assertEquals(0, rateLimiter.getWaiting());
+        assertEquals(1, rateLimiter.getQueued());
+    }
+
+    @Test
+    public void cancelledWaiterTest() throws Exception {
+        rateLimiter.acquire().get();
+        rateLimiter.onResponse(response(200, "X-RateLimit-Limit", "2", "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "1001"));
+
+        CompletableFuture<Void> first = rateLimiter.acquire();
+        CompletableFuture<Void> second = rateLimiter.acquire();
+        // the second request is cancelled by its deadline after it was given a token, while the first one is being sent
+        first.thenRun(() -> second.cancel(false));
+
+        now = 1001000;
+        first.get(5, TimeUnit.SECONDS);
+        assertTrue(second.isCancelled());
+        // the token is given back on the reset thread once it has completed the waiters
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (rateLimiter.getRemaining() != 1 && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertEquals("The token of the cancelled request should be given back", 1, rateLimiter.getRemaining());
+
+        CompletableFuture<Void> next = rateLimiter.acquire();
+        assertTrue("The token given back should be used right away", next.isDone());
+        rateLimiter.onResponse(null);
+        rateLimiter.onResponse(null);
+        assertEquals(0, rateLimiter.getWaiting());
+    }
+
+    // a response with the status and the header names and values
+    private static HttpResponse<?> response(int status, String... headers) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], Arrays.asList(headers[i + 1]));
+        }
+        HttpResponse<?> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.headers()).thenReturn(HttpHeaders.of(map, (name, value) -> true));
+        return response;
+    }
+}
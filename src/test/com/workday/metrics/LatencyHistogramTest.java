@@ -0,0 +1,62 @@
+package test.com.workday.metrics;
+
+import com.workday.metrics.LatencyHistogram;
+import com.workday.metrics.MetricsRegistry;
+import com.workday.metrics.UpstreamMetrics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests the percentiles of the latency histogram and the counters of the upstream metrics
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test that the percentiles are within the bucket precision of 1/16 of their value
+     */
+    @Test
+    public void percentilesTest() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals("empty histogram should report 0", 0, histogram.getPercentileMicros(99));
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.recordMicros(micros);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertWithin(50000, histogram.getPercentileMicros(50));
+        assertWithin(99000, histogram.getPercentileMicros(99));
+        assertWithin(99900, histogram.getPercentileMicros(99.9));
+        assertEquals("max should be exact", 100.0, histogram.getMaxMillis(), 0.0);
+        assertEquals(50.0005, histogram.getMeanMillis(), 0.0001);
+    }
+
+    /**
+     * Test that the upstream counters are counted by status code and rendered for Prometheus
+     * @throws Exception
+     */
+    @Test
+    public void upstreamCountersTest() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry(null);
+        UpstreamMetrics metrics = registry.upstream("github");
+        metrics.onResponse(200);
+        metrics.onResponse(200);
+        metrics.onResponse(503);
+        metrics.onRetry();
+        metrics.onBytesReceived(1024);
+        metrics.getFirstByte().recordMicros(12000);
+
+        assertEquals(Long.valueOf(2), metrics.getStatusCounts().get("200"));
+        assertEquals(Long.valueOf(1), metrics.getStatusCounts().get("503"));
+        StringBuilder text = new StringBuilder();
+        registry.writePrometheus(text);
+        assertTrue(text.toString().contains("mashup_upstream_responses_total{upstream=\"github\",code=\"503\"} 1\n"));
+        assertTrue(text.toString().contains("mashup_upstream_retries_total{upstream=\"github\"} 1\n"));
+        assertTrue(text.toString().contains("mashup_upstream_received_bytes_total{upstream=\"github\"} 1024\n"));
+        assertTrue(text.toString().contains("mashup_upstream_latency_seconds_count{upstream=\"github\",stage=\"first_byte\"} 1\n"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 16);
+    }
+}
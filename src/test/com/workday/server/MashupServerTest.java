@@ -0,0 +1,177 @@
+package test.com.workday.server;
+
+import com.google.gson.Gson;
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.utils.AppUtilities;
+import com.workday.git.GitAPILib;
+import com.workday.http.Compression;
+import com.workday.http.Deadline;
+import com.workday.server.MashupServer;
+import com.workday.twitter.TwitterAPILib;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This tests the http endpoints of the mashup server on localhost
+ * The github api service and the twitter api service are mocked using mockito
+ */
+public class MashupServerTest {
+
+    // Json for two projects returned from GitHub Search API, trimmed down to the fields the app reads
+    private static final String gitSearchJson = "{\"total_count\":2,\"incomplete_results\":false,\"items\":[" +
+            "{\"id\":7508411,\"name\":\"RxJava\",\"full_name\":\"ReactiveX/RxJava\",\"description\":\"Reactive Extensions for the JVM\"}," +
+            "{\"id\":3606624,\"name\":\"ReactiveCocoa\",\"full_name\":\"ReactiveCocoa/ReactiveCocoa\",\"description\":\"Streams of values over time\"}]}";
+
+    // Json for one tweet returned from Twitter Search API
+    private static final String tweetsSearchJson = "{\"statuses\":[{\"created_at\":\"Thu Apr 05 17:47:07 +0000 2018\",\"text\":\"Reactive streams\"," +
+            "\"user\":{\"name\":\"dev\",\"screen_name\":\"dev\"}}]}";
+
+    private final Gson gson = AppUtilities.gsonBuilder().create();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private MashupServer server;
+
+    @Before
+    public void setup() throws IOException {
+        GitAPILib gitLib = mock(GitAPILib.class);
+        TwitterAPILib twitterLib = mock(TwitterAPILib.class);
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(gitSearchJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+
+        Properties properties = AppUtilities.readProperties();
+        properties.setProperty("SERVER_SHUTDOWN_GRACE_S", "1");
+        properties.setProperty("SERVER_COMPRESSION_MIN_BYTES", "200");
+        properties.setProperty("SUMMARY_TIME_BUDGET_MS", "10000");
+        this.server = new MashupServer(new GitTwitterMashupApp(gitLib, twitterLib, properties, gson), properties);
+        this.server.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Test that the summary is served as compact json by default and as one line per project for ndjson
+     * @throws Exception
+     */
+    @Test
+    public void summaryTest() throws Exception {
+        HttpResponse<String> json = get("/summary?q=reactive");
+        assertEquals(200, json.statusCode());
+        assertTrue(json.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        GitSearchResultModel result = gson.fromJson(json.body(), GitSearchResultModel.class);
+        assertEquals("Two projects should be returned", 2, result.getItems().size());
+        assertEquals("tweets should be returned", 1, result.getItems().get(0).getTweets().size());
+
+        HttpResponse<String> ndjson = get("/summary?q=reactive&format=ndjson");
+        assertEquals(200, ndjson.statusCode());
+        String[] lines = ndjson.body().split("\n");
+        assertEquals("One line per project should be returned", 2, lines.length);
+        assertEquals("ReactiveCocoa", gson.fromJson(lines[1], GitProjectModel.class).getName());
+    }
+
+    /**
+     * Test that bad requests are refused and that the health endpoint answers
+     * @throws Exception
+     */
+    @Test
+    public void badRequestAndHealthTest() throws Exception {
+        assertEquals("Missing search term should be refused", 400, get("/summary").statusCode());
+        assertEquals("Unknown format should be refused", 400, get("/summary?q=reactive&format=xml").statusCode());
+        assertEquals("A budget of 0 should be refused", 400, get("/summary?q=reactive&budget_ms=0").statusCode());
+        assertEquals("A negative budget should be refused", 400, get("/summary?q=reactive&budget_ms=-5").statusCode());
+        assertEquals("A budget over the server budget should be refused", 400, get("/summary?q=reactive&budget_ms=10001").statusCode());
+        assertEquals("A shorter budget should be served", 200, get("/summary?q=reactive&budget_ms=5000").statusCode());
+        assertEquals("Only GET should be served", 405, client.send(HttpRequest.newBuilder(uri("/summary?q=reactive"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> health = get("/health");
+        assertEquals(200, health.statusCode());
+        assertEquals("{\"status\":\"UP\"}", health.body());
+    }
+
+    /**
+     * Test that the metrics endpoint returns the summary latencies in the Prometheus text format
+     * @throws Exception
+     */
+    @Test
+    public void metricsTest() throws Exception {
+        get("/summary?q=reactive");
+        HttpResponse<String> metrics = get("/metrics");
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        assertTrue("summary latency should be exposed", metrics.body().contains("mashup_summary_latency_seconds_count{stage=\"total\"}"));
+        assertTrue("quantiles should be exposed", metrics.body().contains("stage=\"total\",quantile=\"0.99\""));
+    }
+
+    /**
+     * Test that the correlation id of the client is returned with the summary, and that a new one is made when it is missing or unsafe
+     * @throws Exception
+     */
+    @Test
+    public void requestIdTest() throws Exception {
+        HttpResponse<String> tagged = client.send(HttpRequest.newBuilder(uri("/summary?q=reactive")).header("X-Request-Id", "client-42").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals("client-42", tagged.headers().firstValue("X-Request-Id").orElse(""));
+
+        String generated = get("/summary?q=reactive").headers().firstValue("X-Request-Id").orElse("");
+        assertEquals("A new id should be returned", 16, generated.length());
+
+        HttpResponse<String> unsafe = client.send(HttpRequest.newBuilder(uri("/summary?q=reactive")).header("X-Request-Id", "a b{c}").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals("An unsafe id should be replaced", 16, unsafe.headers().firstValue("X-Request-Id").orElse("").length());
+    }
+
+    /**
+     * Test that the summary is gzip encoded for a client that accepts it, and that small responses are not
+     * @throws Exception
+     */
+    @Test
+    public void compressionTest() throws Exception {
+        for (String format : new String[]{"json", "ndjson"}) {
+            HttpResponse<byte[]> gzip = client.send(HttpRequest.newBuilder(uri("/summary?q=reactive&format=" + format))
+                    .header("Accept-Encoding", "gzip").GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, gzip.statusCode());
+            assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(""));
+            try (InputStream in = Compression.decode(new ByteArrayInputStream(gzip.body()), "gzip")) {
+                assertEquals("The inflated summary should be the plain one", get("/summary?q=reactive&format=" + format).body(),
+                        new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        HttpResponse<String> health = client.send(HttpRequest.newBuilder(uri("/health")).header("Accept-Encoding", "gzip").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue("Small responses should not be encoded", health.headers().firstValue("Content-Encoding").isEmpty());
+        assertEquals("{\"status\":\"UP\"}", health.body());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
@@ -0,0 +1,155 @@
+package test.com.workday.stub;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.model.GitProjectModel;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.utils.AppUtilities;
+import com.workday.git.GitAPILib;
+import com.workday.http.HttpStatusException;
+import com.workday.http.HttpTransport;
+import com.workday.http.RetryClock;
+import com.workday.http.RetryPolicy;
+import com.workday.stub.StubUpstreamServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests the app against the stub GitHub and Twitter server, fully offline
+ */
+public class StubUpstreamServerTest {
+
+    @Rule
+    public TemporaryFolder recordDir = new TemporaryFolder();
+
+    private StubUpstreamServer stub;
+
+    @After
+    public void tearDown() {
+        if (stub != null) {
+            stub.stop();
+        }
+    }
+
+    /**
+     * Test that a summary is built from the recorded fixtures and that the simulated rate limit reaches the rate limiter
+     * @throws Exception
+     */
+    @Test
+    public void summaryFromFixturesTest() throws Exception {
+        Properties properties = startStub("STUB_RATE_LIMIT", "100");
+        GitTwitterMashupApp app = new GitTwitterMashupApp(properties);
+        try {
+            GitSearchResultModel result = new Gson().fromJson(app.getGitProjectsSummary("reactive"), GitSearchResultModel.class);
+            assertEquals("The configured number of projects should be returned", 10, result.getItems().size());
+            for (GitProjectModel project : result.getItems()) {
+                assertEquals("Every project should get the recorded tweets", 5, project.getTweets().size());
+            }
+        } finally {
+            app.close();
+        }
+
+        GitAPILib gitLib = new GitAPILib(new HttpTransport(properties), new Gson(), stub.getBaseUrl());
+        gitLib.searchResultAsync("reactive").get();
+        assertEquals("The rate limit headers should be sent", 100, gitLib.getUpstream().getRateLimiter().getLimit());
+    }
+
+    /**
+     * Test that injected server errors reach the caller
+     * @throws Exception
+     */
+    @Test
+    public void injectedErrorsTest() throws Exception {
+        Properties properties = startStub("STUB_ERROR_PERCENT", "100");
+        HttpTransport transport = new HttpTransport(properties, new RetryPolicy(0, 1, 1, 0, 0, RetryClock.system()));
+        GitAPILib gitLib = new GitAPILib(transport, new Gson(), stub.getBaseUrl());
+        try {
+            gitLib.searchResultAsync("reactive").get();
+            fail("The injected error should fail the search");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpStatusException);
+            assertEquals(503, ((HttpStatusException) e.getCause()).getStatusCode());
+        }
+    }
+
+    /**
+     * Test that record mode saves the search responses but not the token response, which holds a real bearer token
+     * @throws Exception
+     */
+    @Test
+    public void recordSkipsTokenTest() throws Exception {
+        HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/oauth2/token", exchange -> respond(exchange, "{\"token_type\":\"bearer\",\"access_token\":\"real-token\"}"));
+        upstream.createContext("/1.1/search/tweets.json", exchange -> respond(exchange, "{\"statuses\":[]}"));
+        upstream.start();
+        try {
+            Properties properties = AppUtilities.readProperties();
+            properties.setProperty("STUB_MODE", "record");
+            properties.setProperty("STUB_RECORD_DIR", recordDir.getRoot().toString());
+            properties.setProperty("STUB_TWITTER_UPSTREAM", "http://localhost:" + upstream.getAddress().getPort());
+            stub = new StubUpstreamServer(properties);
+            stub.start(0);
+
+            HttpClient client = HttpClient.newHttpClient();
+            HttpResponse<String> token = client.send(HttpRequest.newBuilder(URI.create(stub.getBaseUrl() + "/oauth2/token"))
+                    .POST(HttpRequest.BodyPublishers.ofString("grant_type=client_credentials")).build(), HttpResponse.BodyHandlers.ofString());
+            assertTrue("The token should still be forwarded", token.body().contains("real-token"));
+            client.send(HttpRequest.newBuilder(URI.create(stub.getBaseUrl() + "/1.1/search/tweets.json?q=RxJava")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            List<Path> recordings;
+            try (Stream<Path> files = Files.list(recordDir.getRoot().toPath())) {
+                recordings = files.collect(Collectors.toList());
+            }
+            assertEquals("Only the search should be recorded", 1, recordings.size());
+            assertTrue(recordings.get(0).getFileName().toString().startsWith("tweets-search-"));
+            assertFalse(new String(Files.readAllBytes(recordings.get(0)), StandardCharsets.UTF_8).contains("real-token"));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    private Properties startStub(String key, String value) throws IOException {
+        Properties properties = AppUtilities.readProperties();
+        properties.setProperty(key, value);
+        stub = new StubUpstreamServer(properties);
+        stub.start(0);
+        properties.setProperty("GITHUB_BASE_URL", stub.getBaseUrl());
+        properties.setProperty("TWITTER_BASE_URL", stub.getBaseUrl());
+        properties.setProperty("TWITTER_TOKEN_CACHE_FILE", "");
+        return properties;
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
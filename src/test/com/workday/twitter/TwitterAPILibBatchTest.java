@@ -0,0 +1,142 @@
+package test.com.workday.twitter;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.app.model.TweetsModel;
+import com.workday.http.HttpTransport;
+import com.workday.twitter.TwitterAPILib;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests the batched Twitter searches against a local http server standing in for the token and search endpoints
+ */
+public class TwitterAPILibBatchTest {
+
+    private HttpServer server;
+    private TwitterAPILib twitterLib;
+    private List<String> queries;
+
+    @Before
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/oauth2/token", exchange -> respond(exchange, "{\"token_type\":\"bearer\",\"access_token\":\"token\"}"));
+        this.server.start();
+        this.twitterLib = new TwitterAPILib("key", "secret", new Gson(), new HttpTransport(new Properties()), null,
+                "http://localhost:" + server.getAddress().getPort());
+        this.queries = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test that the names are searched with one OR query and that the tweets are given back by their text or user, at most
+     * 5 per name, with no search of its own for a name when the batch search was not full
+     * @throws Exception
+     */
+    @Test
+    public void searchTweetsBatchDemultiplexesTest() throws Exception {
+        server.createContext("/1.1/search/tweets.json", exchange -> {
+            queries.add(URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8));
+            // the last tweet is matched by its user, not its text
+            respond(exchange, statusesJson(tweetsJson(7, "Trying RxJava today"), tweetsJson(2, "ReactiveCocoa and rxjava"),
+                    "{\"text\":\"Release notes are out\",\"user\":{\"screen_name\":\"ReactiveCocoa\"}}"));
+        });
+
+        Map<String, CompletableFuture<List<TweetsModel>>> tweets = twitterLib.searchTweetsBatchAsync(Arrays.asList("RxJava", "ReactiveCocoa", "reactor-core", "RxJava"));
+
+        assertEquals("Each distinct name should get its tweets", 3, tweets.size());
+        assertEquals("At most 5 tweets per name should be kept", 5, tweets.get("RxJava").get().size());
+        assertEquals("The tweets of the user of the name should be kept", 3, tweets.get("ReactiveCocoa").get().size());
+        assertTrue(tweets.get("reactor-core").get().isEmpty());
+        assertEquals("One search should be made for all the names", 1, queries.size());
+        assertTrue(queries.get(0).contains("count=100&q=RxJava OR ReactiveCocoa OR reactor-core"));
+    }
+
+    /**
+     * Test that a name is only found in the text of a tweet as a whole word
+     * @throws Exception
+     */
+    @Test
+    public void searchTweetsBatchMatchesWholeWordsTest() throws Exception {
+        server.createContext("/1.1/search/tweets.json", exchange -> {
+            queries.add(URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8));
+            respond(exchange, statusesJson(tweetsJson(5, "Going good with RxJava2"), tweetsJson(5, "Learning go and #RxJava")));
+        });
+
+        Map<String, CompletableFuture<List<TweetsModel>>> tweets = twitterLib.searchTweetsBatchAsync(Arrays.asList("go", "RxJava"));
+
+        for (String projectName : Arrays.asList("go", "RxJava")) {
+            List<TweetsModel> projectTweets = tweets.get(projectName).get();
+            assertEquals(5, projectTweets.size());
+            for (TweetsModel tweet : projectTweets) {
+                assertTrue(projectName + " should not be found in " + tweet.getText(), tweet.getText().startsWith("Learning go and #RxJava"));
+            }
+        }
+        assertEquals(1, queries.size());
+    }
+
+    /**
+     * Test that a name crowded out of a full batch search gets a search of its own
+     * @throws Exception
+     */
+    @Test
+    public void searchTweetsBatchFollowsUpCrowdedNamesTest() throws Exception {
+        server.createContext("/1.1/search/tweets.json", exchange -> {
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+            queries.add(query);
+            if (query.contains(" OR ")) {
+                respond(exchange, statusesJson(tweetsJson(99, "RxJava everywhere"), tweetsJson(1, "ReactiveCocoa once")));
+            } else {
+                respond(exchange, statusesJson(tweetsJson(5, "ReactiveCocoa again")));
+            }
+        });
+
+        Map<String, CompletableFuture<List<TweetsModel>>> tweets = twitterLib.searchTweetsBatchAsync(Arrays.asList("RxJava", "ReactiveCocoa"));
+
+        assertEquals(5, tweets.get("RxJava").get().size());
+        assertEquals("The follow up search should give the crowded name its tweets", 5, tweets.get("ReactiveCocoa").get().size());
+        assertEquals("Only the crowded name should be searched again", 2, queries.size());
+        assertTrue(queries.get(1).contains("count=5&q=ReactiveCocoa"));
+    }
+
+    private static String tweetsJson(int count, String text) {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            json.append(json.length() > 0 ? "," : "").append("{\"text\":\"").append(text).append(" ").append(i).append("\"}");
+        }
+        return json.toString();
+    }
+
+    private static String statusesJson(String... tweets) {
+        return "{\"statuses\":[" + String.join(",", tweets) + "]}";
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package test.com.workday.twitter;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.workday.http.HttpTransport;
+import com.workday.twitter.TwitterAPILib;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests how the bearer token is fetched, refreshed and cached in its encrypted file, against a local http server
+ * standing in for the token and search endpoints
+ */
+public class TwitterAPILibTokenTest {
+
+    @Rule
+    public TemporaryFolder tokenDir = new TemporaryFolder();
+
+    private HttpServer server;
+    private HttpTransport transport;
+    private AtomicInteger tokenRequests;
+    private List<String> authorizations;
+    private volatile String acceptedToken;
+
+    @Before
+    public void setup() throws IOException {
+        this.tokenRequests = new AtomicInteger();
+        this.authorizations = new CopyOnWriteArrayList<>();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/oauth2/token", exchange -> respond(exchange, 200,
+                "{\"token_type\":\"bearer\",\"access_token\":\"token-" + tokenRequests.incrementAndGet() + "\"}"));
+        this.server.createContext("/1.1/search/tweets.json", exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            authorizations.add(authorization);
+            boolean accepted = acceptedToken == null || ("Bearer " + acceptedToken).equals(authorization);
+            respond(exchange, accepted ? 200 : 401, accepted ? "{\"statuses\":[]}" : "{\"errors\":[{\"code\":89}]}");
+        });
+        this.server.start();
+        this.transport = new HttpTransport(new Properties());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test that the token is only fetched by the first search, and shared by the searches after it
+     * @throws Exception
+     */
+    @Test
+    public void lazyFetchTest() throws Exception {
+        TwitterAPILib twitterLib = newTwitterLib("secret", null);
+        Thread.sleep(100);
+        assertEquals("Creating the library should not fetch the token", 0, tokenRequests.get());
+
+        twitterLib.searchTweetsResultAsync("RxJava").get(5, TimeUnit.SECONDS);
+        twitterLib.searchTweetsResultAsync("ReactiveCocoa").get(5, TimeUnit.SECONDS);
+        assertEquals(1, tokenRequests.get());
+        assertEquals("Bearer token-1", authorizations.get(1));
+    }
+
+    /**
+     * Test that the searches refused with the same token share a single refresh of the token
+     * @throws Exception
+     */
+    @Test
+    public void refreshOnceOn401Test() throws Exception {
+        acceptedToken = "token-2";
+        TwitterAPILib twitterLib = newTwitterLib("secret", null);
+
+        List<CompletableFuture<?>> searches = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            searches.add(twitterLib.searchTweetsResultAsync("RxJava " + i));
+        }
+        CompletableFuture.allOf(searches.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals("The refused token should be refreshed once", 2, tokenRequests.get());
+        assertEquals("Bearer token-2", authorizations.get(authorizations.size() - 1));
+    }
+
+    /**
+     * Test that the token is read back from its file with the same credentials, and fetched again when the file was
+     * encrypted with other credentials, was tampered with or is not a token file
+     * @throws Exception
+     */
+    @Test
+    public void tokenFileTest() throws Exception {
+        Path tokenFile = tokenDir.getRoot().toPath().resolve("bearer.token");
+        newTwitterLib("secret", tokenFile).searchTweetsResultAsync("RxJava").get(5, TimeUnit.SECONDS);
+        assertEquals(1, tokenRequests.get());
+        // the file is written on a thread of its own once the token is fetched
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.isRegularFile(tokenFile) && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        String content = new String(Files.readAllBytes(tokenFile), StandardCharsets.US_ASCII).trim();
+        assertTrue("The token should not be written in clear", !content.contains("token-1"));
+
+        newTwitterLib("secret", tokenFile).searchTweetsResultAsync("RxJava").get(5, TimeUnit.SECONDS);
+        assertEquals("The token should be read back from the file", 1, tokenRequests.get());
+        assertEquals("Bearer token-1", authorizations.get(1));
+
+        Path otherCredentials = Files.write(tokenDir.getRoot().toPath().resolve("other.token"), content.getBytes(StandardCharsets.US_ASCII));
+        newTwitterLib("other secret", otherCredentials).searchTweetsResultAsync("RxJava").get(5, TimeUnit.SECONDS);
+        assertEquals("Other credentials should not decrypt the file", 2, tokenRequests.get());
+
+        // the first character of the cipher text is changed, which the GCM tag does not allow
+        int first = content.lastIndexOf(':') + 1;
+        String tamperedContent = content.substring(0, first) + (content.charAt(first) == 'A' ? 'B' : 'A') + content.substring(first + 1);
+        Path tampered = Files.write(tokenDir.getRoot().toPath().resolve("tampered.token"), tamperedContent.getBytes(StandardCharsets.US_ASCII));
+        newTwitterLib("secret", tampered).searchTweetsResultAsync("RxJava").get(5, TimeUnit.SECONDS);
+        assertEquals("A tampered file should not be used", 3, tokenRequests.get());
+
+        Path corrupt = Files.write(tokenDir.getRoot().toPath().resolve("corrupt.token"), "not a token file".getBytes(StandardCharsets.US_ASCII));
+        newTwitterLib("secret", corrupt).searchTweetsResultAsync("RxJava").get(5, TimeUnit.SECONDS);
+        assertEquals("A corrupt file should not be used", 4, tokenRequests.get());
+    }
+
+    private TwitterAPILib newTwitterLib(String consumerSecret, Path tokenFile) {
+        return new TwitterAPILib("key", consumerSecret, new Gson(), transport, tokenFile, "http://localhost:" + server.getAddress().getPort());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package test.com.workday.watch;
+
+import com.google.gson.Gson;
+import com.workday.app.GitTwitterMashupApp;
+import com.workday.app.model.GitSearchResultModel;
+import com.workday.app.model.TweetsSearchResultModel;
+import com.workday.app.utils.AppUtilities;
+import com.workday.git.GitAPILib;
+import com.workday.http.Deadline;
+import com.workday.twitter.TwitterAPILib;
+import com.workday.watch.SummaryWatcher;
+import com.workday.watch.WatchEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This tests the watch mode, with the github api service and the twitter api service mocked using mockito
+ */
+public class SummaryWatcherTest {
+
+    // Json for two projects returned from GitHub Search API, trimmed down to the fields the app reads
+    private static final String gitSearchJson = "{\"total_count\":2,\"incomplete_results\":false,\"items\":[" +
+            "{\"id\":7508411,\"name\":\"RxJava\",\"full_name\":\"ReactiveX/RxJava\",\"description\":\"Reactive Extensions for the JVM\"}," +
+            "{\"id\":3606624,\"name\":\"ReactiveCocoa\",\"full_name\":\"ReactiveCocoa/ReactiveCocoa\",\"description\":\"Streams of values over time\"}]}";
+
+    // Json for one tweet returned from Twitter Search API
+    private static final String tweetsSearchJson = "{\"statuses\":[{\"id\":100,\"id_str\":\"100\",\"text\":\"Reactive streams\"," +
+            "\"user\":{\"name\":\"dev\",\"screen_name\":\"dev\"}}]}";
+
+    // Json for a new tweet and the tweet already seen, returned from Twitter Search API with a since_id
+    private static final String newTweetsSearchJson = "{\"statuses\":[{\"id\":101,\"id_str\":\"101\",\"text\":\"RxJava 3 is out\"," +
+            "\"user\":{\"name\":\"dev\",\"screen_name\":\"dev\"}},{\"id\":100,\"id_str\":\"100\",\"text\":\"Reactive streams\"," +
+            "\"user\":{\"name\":\"dev\",\"screen_name\":\"dev\"}}]}";
+
+    private final Gson gson = new Gson();
+    private GitAPILib gitLib;
+    private TwitterAPILib twitterLib;
+    private GitTwitterMashupApp app;
+    private Properties properties;
+    private SummaryWatcher watcher;
+
+    @Before
+    public void setup() {
+        this.gitLib = mock(GitAPILib.class);
+        this.twitterLib = mock(TwitterAPILib.class);
+        when(gitLib.searchResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(gitSearchJson, GitSearchResultModel.class)));
+        when(twitterLib.searchTweetsResultAsync(anyString(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(tweetsSearchJson, TweetsSearchResultModel.class)));
+        when(twitterLib.searchTweetsSinceAsync(anyString(), anyLong(), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(new TweetsSearchResultModel()));
+
+        this.properties = AppUtilities.readProperties();
+        // only the refreshes made by the tests
+        properties.setProperty("WATCH_REFRESH_S", "3600");
+        properties.setProperty("WATCH_MAX_CALLS_PER_MIN", "0");
+        this.app = new GitTwitterMashupApp(gitLib, twitterLib, properties, gson);
+    }
+
+    @After
+    public void tearDown() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        app.close();
+    }
+
+    @Test
+    public void refreshTest() throws Exception {
+        watcher = new SummaryWatcher(app, properties);
+        BlockingQueue<WatchEvent> events = new LinkedBlockingQueue<>();
+        watcher.subscribe("Reactive", events::add);
+
+        WatchEvent first = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull("The first refresh should send the projects", first);
+        assertEquals(2, first.getChanges().size());
+        assertEquals(WatchEvent.ChangeType.ADDED, first.getChanges().get(0).getType());
+        assertEquals("RxJava", first.getChanges().get(0).getProject().getName());
+        assertEquals(1, first.getChanges().get(0).getNewTweets().size());
+        // the event is sent before the refresh is done, so this waits for it (or refreshes once more, finding nothing new)
+        watcher.refresh("reactive").get(5, TimeUnit.SECONDS);
+
+        // only RxJava has a tweet newer than the one seen, and the search says it again with the new one
+        when(twitterLib.searchTweetsSinceAsync(eq("RxJava"), eq(100L), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(gson.fromJson(newTweetsSearchJson, TweetsSearchResultModel.class)));
+        watcher.refresh("reactive").get(5, TimeUnit.SECONDS);
+
+        WatchEvent update = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull("The new tweet should be sent", update);
+        assertEquals(1, update.getChanges().size());
+        WatchEvent.ProjectChange change = update.getChanges().get(0);
+        assertEquals(WatchEvent.ChangeType.UPDATED, change.getType());
+        assertEquals("RxJava", change.getProject().getName());
+        assertEquals(1, change.getNewTweets().size());
+        assertEquals(101L, change.getNewTweets().get(0).getId());
+        assertEquals(2, change.getProject().getTweets().size());
+        assertEquals(101L, change.getProject().getTweets().get(0).getId());
+
+        // nothing new since 101
+        when(twitterLib.searchTweetsSinceAsync(eq("RxJava"), eq(101L), any(Deadline.class))).thenAnswer(invocation -> CompletableFuture.completedFuture(new TweetsSearchResultModel()));
+        watcher.refresh("reactive").get(5, TimeUnit.SECONDS);
+        assertNull("A refresh without changes should send nothing", events.poll(200, TimeUnit.MILLISECONDS));
+
+        BlockingQueue<WatchEvent> lateEvents = new LinkedBlockingQueue<>();
+        watcher.subscribe("reactive", lateEvents::add);
+        WatchEvent snapshot = lateEvents.poll(5, TimeUnit.SECONDS);
+        assertNotNull("A new subscriber should get the projects as they are", snapshot);
+        assertEquals(2, snapshot.getChanges().size());
+        assertEquals(2, snapshot.getChanges().get(0).getProject().getTweets().size());
+        assertEquals(1, watcher.getTermCount());
+    }
+
+    @Test
+    public void pacingTest() throws Exception {
+        // a call every 100ms, so the GitHub search and the two tweet lookups take 200ms at least
+        properties.setProperty("WATCH_MAX_CALLS_PER_MIN", "600");
+        watcher = new SummaryWatcher(app, properties);
+        BlockingQueue<WatchEvent> events = new LinkedBlockingQueue<>();
+        long start = System.nanoTime();
+        watcher.subscribe("Reactive", events::add);
+
+        assertNotNull(events.poll(5, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("The refresh calls should be paced, took " + elapsedMs + "ms", elapsedMs >= 190);
+
+        watcher.unsubscribe("reactive", events::add);
+        assertEquals("A listener that was not subscribed should not stop the term", 1, watcher.getTermCount());
+    }
+}